@@ -30,6 +30,11 @@ android {
         targetCompatibility = JavaVersion.VERSION_11
     }
 
+    testOptions {
+        // Las pruebas JVM ejercitan clases que registran con android.util.Log
+        unitTests.isReturnDefaultValues = true
+    }
+
 }
 
 dependencies {
@@ -39,6 +44,7 @@ dependencies {
     
     // NanoHTTPD para el servidor HTTP
     implementation("org.nanohttpd:nanohttpd:2.3.1")
+    implementation("org.nanohttpd:nanohttpd-websocket:2.3.1")
     
     // 🎯 SDK 3nStar para impresoras térmicas profesionales
     implementation(files("libs/printer-lib-2.2.4.aar"))
@@ -0,0 +1,219 @@
+package com.gridpos.puenteimpresora;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 📣 Anuncio del puente en la red local por mDNS/DNS-SD (_gridpos-print._tcp)
+ * Los POS descubren el puente sin copiar la IP a mano y, con los registros TXT
+ * (capacidades, carga de la cola, impresoras), eligen el menos cargado.
+ * Se vuelve a registrar al cambiar la red o cuando cambia lo anunciado; los cambios
+ * que llegan dentro del intervalo mínimo se juntan en un solo re-registro al final.
+ */
+public class BridgeAdvertiser {
+    private static final String TAG = "BridgeAdvertiser";
+
+    public static final String SERVICE_TYPE = "_gridpos-print._tcp";
+
+    // mDNS no actualiza TXT en el lugar: cada cambio es un re-registro, así que se espacian
+    private static final long MIN_REREGISTER_MS = 10000;
+
+    /**
+     * 📋 Registros TXT actuales (clave → valor corto, máx. 255 bytes por par)
+     */
+    public interface TxtProvider {
+        Map<String, String> getTxtRecords();
+    }
+
+    private final NsdManager nsdManager;
+    private final String serviceName;
+    private final int port;
+    private final TxtProvider txtProvider;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable deferredRefresh = this::runDeferredRefresh;
+
+    private NsdManager.RegistrationListener activeListener;
+    private Map<String, String> advertised = new HashMap<>();
+    private boolean registered;
+    private boolean busy;          // Registro o baja en curso (esperando callback)
+    private boolean refreshPending;
+    private boolean running;
+    private boolean refreshScheduled; // Ya hay un refreshTxt diferido en el handler
+    private long lastRegisteredAt;
+
+    public BridgeAdvertiser(Context context, int port, TxtProvider txtProvider) {
+        this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+        this.serviceName = "GridPOS Puente " + Build.MODEL;
+        this.port = port;
+        this.txtProvider = txtProvider;
+    }
+
+    public synchronized void start() {
+        running = true;
+        register();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        refreshPending = false;
+        refreshScheduled = false;
+        handler.removeCallbacks(deferredRefresh);
+        unregister();
+    }
+
+    /**
+     * 🌐 La red cambió (nueva IP, otra Wi-Fi): volver a anunciar de inmediato
+     */
+    public synchronized void onNetworkChanged() {
+        if (!running) {
+            return;
+        }
+        Log.d(TAG, "🌐 Red cambiada, se vuelve a anunciar " + serviceName);
+        refreshPending = true;
+        if (registered && !busy) {
+            unregister();
+        } else if (!registered && !busy) {
+            register();
+        }
+    }
+
+    /**
+     * 🔄 Re-registrar si cambió lo anunciado; dentro del intervalo mínimo (o con un
+     * registro en curso) se posterga a un único re-registro al final de la ventana
+     */
+    public synchronized void refreshTxt() {
+        if (!running) {
+            return;
+        }
+        if (busy) {
+            scheduleRefresh(MIN_REREGISTER_MS);
+            return;
+        }
+        if (!registered || txtProvider.getTxtRecords().equals(advertised)) {
+            return;
+        }
+        long wait = lastRegisteredAt + MIN_REREGISTER_MS - System.currentTimeMillis();
+        if (wait > 0) {
+            scheduleRefresh(wait);
+            return;
+        }
+        refreshPending = true;
+        unregister();
+    }
+
+    /**
+     * ⏳ Programar un refreshTxt diferido; las solicitudes repetidas se suman a la misma
+     */
+    private void scheduleRefresh(long delayMs) {
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        handler.postDelayed(deferredRefresh, delayMs);
+        Log.d(TAG, "⏳ Cambio en TXT postergado " + delayMs + " ms");
+    }
+
+    private void runDeferredRefresh() {
+        synchronized (this) {
+            refreshScheduled = false;
+        }
+        refreshTxt();
+    }
+
+    private void register() {
+        if (nsdManager == null || busy || registered) {
+            return;
+        }
+        NsdServiceInfo info = new NsdServiceInfo();
+        info.setServiceName(serviceName);
+        info.setServiceType(SERVICE_TYPE);
+        info.setPort(port);
+        Map<String, String> records = txtProvider.getTxtRecords();
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            info.setAttribute(record.getKey(), record.getValue());
+        }
+
+        busy = true;
+        refreshPending = false;
+        advertised = records;
+        activeListener = new Listener();
+        try {
+            nsdManager.registerService(info, NsdManager.PROTOCOL_DNS_SD, activeListener);
+        } catch (Exception e) {
+            busy = false;
+            Log.e(TAG, "❌ No se pudo anunciar el puente", e);
+        }
+    }
+
+    private void unregister() {
+        if (nsdManager == null || activeListener == null || !registered || busy) {
+            return;
+        }
+        busy = true;
+        try {
+            nsdManager.unregisterService(activeListener);
+        } catch (Exception e) {
+            busy = false;
+            registered = false;
+            activeListener = null;
+            Log.w(TAG, "⚠️ Error retirando el anuncio", e);
+        }
+    }
+
+    /**
+     * 📡 Callbacks de NsdManager (hilo del sistema); un listener por registro
+     */
+    private class Listener implements NsdManager.RegistrationListener {
+        @Override
+        public void onServiceRegistered(NsdServiceInfo info) {
+            synchronized (BridgeAdvertiser.this) {
+                busy = false;
+                registered = true;
+                lastRegisteredAt = System.currentTimeMillis();
+                // El sistema puede renombrar el servicio si ya existe otro igual en la red
+                Log.i(TAG, "📣 Anunciado como \"" + info.getServiceName() + "\" (" + SERVICE_TYPE + ":" + port + ")");
+                if (!running || refreshPending) {
+                    unregister();
+                }
+            }
+        }
+
+        @Override
+        public void onRegistrationFailed(NsdServiceInfo info, int errorCode) {
+            synchronized (BridgeAdvertiser.this) {
+                busy = false;
+                registered = false;
+                activeListener = null;
+                Log.e(TAG, "❌ Registro mDNS fallido (código " + errorCode + ")");
+            }
+        }
+
+        @Override
+        public void onServiceUnregistered(NsdServiceInfo info) {
+            synchronized (BridgeAdvertiser.this) {
+                busy = false;
+                registered = false;
+                activeListener = null;
+                if (running) {
+                    register();
+                }
+            }
+        }
+
+        @Override
+        public void onUnregistrationFailed(NsdServiceInfo info, int errorCode) {
+            synchronized (BridgeAdvertiser.this) {
+                busy = false;
+                Log.w(TAG, "⚠️ No se pudo retirar el anuncio (código " + errorCode + ")");
+            }
+        }
+    }
+}
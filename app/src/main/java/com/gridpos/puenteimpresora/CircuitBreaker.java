@@ -0,0 +1,110 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+/**
+ * 🔌 Cortacircuito de conexión por impresora (cerrado / abierto / semiabierto)
+ * Tras varios fallos seguidos se abre: los trabajos fallan (o pasan a otra impresora
+ * del grupo) al instante en lugar de pagar la reconexión completa cada vez. Pasado
+ * el tiempo de espera se permite un único intento de prueba; si falla, la espera se
+ * duplica hasta el máximo.
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    public enum State {
+        CLOSED,     // ✅ Normal
+        OPEN,       // ⛔ Falla rápido hasta que venza la espera
+        HALF_OPEN   // 🧪 Un intento de prueba en curso
+    }
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long INITIAL_OPEN_MS = 5000;
+    private static final long MAX_OPEN_MS = 60000;
+
+    private final String name;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMs = INITIAL_OPEN_MS;
+    private long openedAt;
+    private long openCount;
+
+    public CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 🚦 ¿Se puede intentar conectar ahora? Al vencer la espera deja pasar un solo intento
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openMs) {
+                    state = State.HALF_OPEN;
+                    Log.d(TAG, "🧪 " + name + ": circuito semiabierto, intento de prueba");
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            Log.i(TAG, "✅ " + name + ": circuito cerrado, impresora recuperada");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMs = INITIAL_OPEN_MS;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            // La prueba falló: volver a abrir con el doble de espera
+            openMs = Math.min(openMs * 2, MAX_OPEN_MS);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount++;
+        Log.w(TAG, "⛔ " + name + ": circuito abierto tras " + consecutiveFailures
+            + " fallos, próxima prueba en " + openMs + " ms");
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 🧪 La espera venció y toca probar la conexión (lo revisa el monitor en segundo plano)
+     */
+    public synchronized boolean isProbeDue() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs;
+    }
+
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("state", state.name().toLowerCase());
+            json.put("consecutive_failures", consecutiveFailures);
+            json.put("opened", openCount);
+            if (state == State.OPEN) {
+                json.put("retry_in_ms", Math.max(0, openMs - (System.currentTimeMillis() - openedAt)));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando circuito de " + name, e);
+        }
+        return json;
+    }
+}
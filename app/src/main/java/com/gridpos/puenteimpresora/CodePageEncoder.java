@@ -0,0 +1,274 @@
+package com.gridpos.puenteimpresora;
+
+import java.text.Normalizer;
+
+/**
+ * 🔤 Codificador por tabla para las páginas de códigos de las impresoras térmicas
+ * Cada página tiene su tabla fija de la mitad alta (0x80-0xFF), sin depender de que
+ * Android incluya el Charset. La búsqueda inversa char → byte es un arreglo de dos
+ * niveles precalculado y encode() escribe directo en el buffer de salida, sin crear objetos.
+ * Los caracteres sin equivalente se transliteran (á → a, € → EUR, “ → ") o salen como '?'.
+ */
+public enum CodePageEncoder {
+
+    // Estados Unidos (IBM437)
+    CP437(0,
+        "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5" + // 0x80
+        "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00A2\u00A3\u00A5\u20A7\u0192" + // 0x90
+        "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u2310\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB" + // 0xA0
+        "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255D\u255C\u255B\u2510" + // 0xB0
+        "\u2514\u2534\u252C\u251C\u2500\u253C\u255E\u255F\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u2567" + // 0xC0
+        "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256B\u256A\u2518\u250C\u2588\u2584\u258C\u2590\u2580" + // 0xD0
+        "\u03B1\u00DF\u0393\u03C0\u03A3\u03C3\u00B5\u03C4\u03A6\u0398\u03A9\u03B4\u221E\u03C6\u03B5\u2229" + // 0xE0
+        "\u2261\u00B1\u2265\u2264\u2320\u2321\u00F7\u2248\u00B0\u2219\u00B7\u221A\u207F\u00B2\u25A0\u00A0"), // 0xF0
+
+    // Europa occidental / Latinoamérica (IBM850)
+    CP850(2,
+        "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5" + // 0x80
+        "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00F8\u00A3\u00D8\u00D7\u0192" + // 0x90
+        "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u00AE\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB" + // 0xA0
+        "\u2591\u2592\u2593\u2502\u2524\u00C1\u00C2\u00C0\u00A9\u2563\u2551\u2557\u255D\u00A2\u00A5\u2510" + // 0xB0
+        "\u2514\u2534\u252C\u251C\u2500\u253C\u00E3\u00C3\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u00A4" + // 0xC0
+        "\u00F0\u00D0\u00CA\u00CB\u00C8\u0131\u00CD\u00CE\u00CF\u2518\u250C\u2588\u2584\u00A6\u00CC\u2580" + // 0xD0
+        "\u00D3\u00DF\u00D4\u00D2\u00F5\u00D5\u00B5\u00FE\u00DE\u00DA\u00DB\u00D9\u00FD\u00DD\u00AF\u00B4" + // 0xE0
+        "\u00AD\u00B1\u2017\u00BE\u00B6\u00A7\u00F7\u00B8\u00B0\u00A8\u00B7\u00B9\u00B3\u00B2\u25A0\u00A0"), // 0xF0
+
+    // CP850 con € en 0xD5 (IBM00858)
+    CP858(19,
+        "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5" + // 0x80
+        "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00F8\u00A3\u00D8\u00D7\u0192" + // 0x90
+        "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u00AE\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB" + // 0xA0
+        "\u2591\u2592\u2593\u2502\u2524\u00C1\u00C2\u00C0\u00A9\u2563\u2551\u2557\u255D\u00A2\u00A5\u2510" + // 0xB0
+        "\u2514\u2534\u252C\u251C\u2500\u253C\u00E3\u00C3\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u00A4" + // 0xC0
+        "\u00F0\u00D0\u00CA\u00CB\u00C8\u20AC\u00CD\u00CE\u00CF\u2518\u250C\u2588\u2584\u00A6\u00CC\u2580" + // 0xD0
+        "\u00D3\u00DF\u00D4\u00D2\u00F5\u00D5\u00B5\u00FE\u00DE\u00DA\u00DB\u00D9\u00FD\u00DD\u00AF\u00B4" + // 0xE0
+        "\u00AD\u00B1\u2017\u00BE\u00B6\u00A7\u00F7\u00B8\u00B0\u00A8\u00B7\u00B9\u00B3\u00B2\u25A0\u00A0"), // 0xF0
+
+    // Windows Latin-1 (windows-1252)
+    WPC1252(16,
+        "\u20AC\uFFFD\u201A\u0192\u201E\u2026\u2020\u2021\u02C6\u2030\u0160\u2039\u0152\uFFFD\u017D\uFFFD" + // 0x80
+        "\uFFFD\u2018\u2019\u201C\u201D\u2022\u2013\u2014\u02DC\u2122\u0161\u203A\u0153\uFFFD\u017E\u0178" + // 0x90
+        "\u00A0\u00A1\u00A2\u00A3\u00A4\u00A5\u00A6\u00A7\u00A8\u00A9\u00AA\u00AB\u00AC\u00AD\u00AE\u00AF" + // 0xA0
+        "\u00B0\u00B1\u00B2\u00B3\u00B4\u00B5\u00B6\u00B7\u00B8\u00B9\u00BA\u00BB\u00BC\u00BD\u00BE\u00BF" + // 0xB0
+        "\u00C0\u00C1\u00C2\u00C3\u00C4\u00C5\u00C6\u00C7\u00C8\u00C9\u00CA\u00CB\u00CC\u00CD\u00CE\u00CF" + // 0xC0
+        "\u00D0\u00D1\u00D2\u00D3\u00D4\u00D5\u00D6\u00D7\u00D8\u00D9\u00DA\u00DB\u00DC\u00DD\u00DE\u00DF" + // 0xD0
+        "\u00E0\u00E1\u00E2\u00E3\u00E4\u00E5\u00E6\u00E7\u00E8\u00E9\u00EA\u00EB\u00EC\u00ED\u00EE\u00EF" + // 0xE0
+        "\u00F0\u00F1\u00F2\u00F3\u00F4\u00F5\u00F6\u00F7\u00F8\u00F9\u00FA\u00FB\u00FC\u00FD\u00FE\u00FF"), // 0xF0
+
+    // Cirílico (IBM866)
+    CP866(17,
+        "\u0410\u0411\u0412\u0413\u0414\u0415\u0416\u0417\u0418\u0419\u041A\u041B\u041C\u041D\u041E\u041F" + // 0x80
+        "\u0420\u0421\u0422\u0423\u0424\u0425\u0426\u0427\u0428\u0429\u042A\u042B\u042C\u042D\u042E\u042F" + // 0x90
+        "\u0430\u0431\u0432\u0433\u0434\u0435\u0436\u0437\u0438\u0439\u043A\u043B\u043C\u043D\u043E\u043F" + // 0xA0
+        "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255D\u255C\u255B\u2510" + // 0xB0
+        "\u2514\u2534\u252C\u251C\u2500\u253C\u255E\u255F\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u2567" + // 0xC0
+        "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256B\u256A\u2518\u250C\u2588\u2584\u258C\u2590\u2580" + // 0xD0
+        "\u0440\u0441\u0442\u0443\u0444\u0445\u0446\u0447\u0448\u0449\u044A\u044B\u044C\u044D\u044E\u044F" + // 0xE0
+        "\u0401\u0451\u0404\u0454\u0407\u0457\u040E\u045E\u00B0\u2219\u00B7\u221A\u2116\u00A4\u25A0\u00A0"); // 0xF0
+
+    // Máximo de bytes que puede producir un carácter (transliteraciones como "EUR" o "...")
+    public static final int MAX_BYTES_PER_CHAR = 3;
+
+    private static final byte UNMAPPABLE = '?';
+
+    private final int escPosNumber;
+    private final String upperHalf;
+
+    // Búsqueda inversa: reverse[c >> 8][c & 0xFF], 0 = sin equivalente
+    private final byte[][] reverse = new byte[256][];
+
+    CodePageEncoder(int escPosNumber, String upperHalf) {
+        this.escPosNumber = escPosNumber;
+        this.upperHalf = upperHalf;
+        for (int i = 0; i < upperHalf.length(); i++) {
+            char c = upperHalf.charAt(i);
+            if (c == '\uFFFD') {
+                continue;
+            }
+            byte[] page = reverse[c >> 8];
+            if (page == null) {
+                page = new byte[256];
+                reverse[c >> 8] = page;
+            }
+            page[c & 0xFF] = (byte) (0x80 + i);
+        }
+    }
+
+    /**
+     * 🔢 Número n de ESC t n para seleccionar esta página
+     */
+    public int getEscPosNumber() {
+        return escPosNumber;
+    }
+
+    /**
+     * 🖨️ Comando ESC t n
+     */
+    public byte[] selectCommand() {
+        return new byte[] {0x1B, 0x74, (byte) escPosNumber};
+    }
+
+    /**
+     * 🔍 El carácter existe tal cual en esta página
+     */
+    public boolean canEncode(char c) {
+        return c < 0x80 || lookup(c) != 0;
+    }
+
+    /**
+     * 🔍 Todo el texto existe tal cual en esta página (sin transliterar)
+     */
+    public boolean canEncode(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!canEncode(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 🔄 Existe un reemplazo legible para el carácter (á → a, € → EUR)
+     */
+    public static boolean canTransliterate(char c) {
+        return Transliteration.of(c) != null;
+    }
+
+    /**
+     * 🎯 Codificar text[start, end) en out desde offset; retorna el nuevo offset
+     * out debe tener al menos (end - start) * MAX_BYTES_PER_CHAR bytes libres
+     */
+    public int encode(CharSequence text, int start, int end, byte[] out, int offset) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[offset++] = (byte) c;
+                continue;
+            }
+            byte mapped = lookup(c);
+            if (mapped != 0) {
+                out[offset++] = mapped;
+                continue;
+            }
+            if (Character.isHighSurrogate(c)) {
+                // Emoji y otros fuera del plano básico: un solo '?' por símbolo
+                if (i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    i++;
+                }
+                out[offset++] = UNMAPPABLE;
+                continue;
+            }
+            offset = transliterate(c, out, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * 🎯 Codificar un texto completo (crea el arreglo resultado)
+     */
+    public byte[] encode(String text) {
+        byte[] out = new byte[text.length() * MAX_BYTES_PER_CHAR];
+        int length = encode(text, 0, text.length(), out, 0);
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * 🔄 Decodificar un byte de esta página (para pruebas y depuración)
+     */
+    public char decode(byte b) {
+        int value = b & 0xFF;
+        return value < 0x80 ? (char) value : upperHalf.charAt(value - 0x80);
+    }
+
+    private byte lookup(char c) {
+        byte[] page = reverse[c >> 8];
+        return page != null ? page[c & 0xFF] : 0;
+    }
+
+    private int transliterate(char c, byte[] out, int offset) {
+        String replacement = Transliteration.of(c);
+        if (replacement == null) {
+            out[offset++] = UNMAPPABLE;
+            return offset;
+        }
+        for (int i = 0; i < replacement.length(); i++) {
+            char r = replacement.charAt(i);
+            byte mapped = r < 0x80 ? (byte) r : lookup(r);
+            out[offset++] = mapped != 0 ? mapped : UNMAPPABLE;
+        }
+        return offset;
+    }
+
+    /**
+     * 🔄 Tabla de transliteración compartida (se arma una sola vez)
+     */
+    private static class Transliteration {
+        private static final int LIMIT = 0x2500;
+        private static final String[] TABLE = new String[LIMIT];
+
+        static {
+            // Letras latinas con diacríticos → letra base (á → a, Ç → C, ő → o)
+            for (char c = 0xC0; c < 0x250; c++) {
+                String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "");
+                if (base.length() == 1 && base.charAt(0) < 0x80) {
+                    TABLE[c] = base;
+                }
+            }
+            put('\u00A0', " ");
+            put('\u00A1', "!");
+            put('\u00A2', "c");
+            put('\u00A3', "L");
+            put('\u00A5', "Y");
+            put('\u00A9', "(C)");
+            put('\u00AB', "<<");
+            put('\u00AE', "(R)");
+            put('\u00B0', "o");
+            put('\u00B2', "2");
+            put('\u00B3', "3");
+            put('\u00B4', "'");
+            put('\u00B7', ".");
+            put('\u00B9', "1");
+            put('\u00BB', ">>");
+            put('\u00BC', "1/4");
+            put('\u00BD', "1/2");
+            put('\u00BE', "3/4");
+            put('\u00BF', "?");
+            put('\u00C6', "AE");
+            put('\u00D0', "D");
+            put('\u00D7', "x");
+            put('\u00D8', "O");
+            put('\u00DE', "Th");
+            put('\u00DF', "ss");
+            put('\u00E6', "ae");
+            put('\u00F0', "d");
+            put('\u00F7', "/");
+            put('\u00F8', "o");
+            put('\u00FE', "th");
+            put('\u0141', "L");
+            put('\u0142', "l");
+            put('\u2013', "-");
+            put('\u2014', "-");
+            put('\u2018', "'");
+            put('\u2019', "'");
+            put('\u201A', "'");
+            put('\u201C', "\"");
+            put('\u201D', "\"");
+            put('\u201E', "\"");
+            put('\u2022', "*");
+            put('\u2026', "...");
+            put('\u20AC', "EUR");
+            put('\u2122', "TM");
+        }
+
+        private static void put(char c, String replacement) {
+            TABLE[c] = replacement;
+        }
+
+        static String of(char c) {
+            return c < LIMIT ? TABLE[c] : null;
+        }
+    }
+}
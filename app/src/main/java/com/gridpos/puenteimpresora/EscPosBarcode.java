@@ -0,0 +1,227 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.common.BitMatrix;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 📊 Códigos de barras 1D (CODE128, EAN13, ITF)
+ * Nativo con GS k (~30 bytes) o, si la impresora no lo soporta, raster GS v 0 con ZXing.
+ *
+ * Campo JSON "barcode":
+ *   true                               → CODE128 con el ID de la orden/venta
+ *   {"type":"EAN13","data":"7701234567890","height":80,"width":2,"hri":"below"}
+ */
+public class EscPosBarcode {
+    private static final String TAG = "EscPosBarcode";
+
+    private static final int DEFAULT_HEIGHT = 80;      // puntos (~10 mm)
+    private static final int DEFAULT_MODULE_WIDTH = 2; // puntos por módulo
+
+    /**
+     * 🏷️ Simbologías soportadas (m de GS k formato B)
+     */
+    public enum Symbology {
+        CODE128(73, BarcodeFormat.CODE_128),
+        EAN13(67, BarcodeFormat.EAN_13),
+        ITF(70, BarcodeFormat.ITF);
+
+        final int escPosType;
+        final BarcodeFormat zxingFormat;
+
+        Symbology(int escPosType, BarcodeFormat zxingFormat) {
+            this.escPosType = escPosType;
+            this.zxingFormat = zxingFormat;
+        }
+
+        public static Symbology fromString(String name) {
+            if (name != null) {
+                String normalized = name.trim().toUpperCase().replace("-", "").replace("_", "");
+                for (Symbology symbology : values()) {
+                    if (symbology.name().equals(normalized)) {
+                        return symbology;
+                    }
+                }
+            }
+            return CODE128;
+        }
+    }
+
+    /**
+     * 🔤 Posición del texto legible (HRI) - valor n de GS H
+     */
+    public enum Hri {
+        NONE, ABOVE, BELOW, BOTH;
+
+        public static Hri fromString(String name) {
+            if (name != null) {
+                for (Hri hri : values()) {
+                    if (hri.name().equalsIgnoreCase(name.trim())) {
+                        return hri;
+                    }
+                }
+            }
+            return BELOW;
+        }
+    }
+
+    private final Symbology symbology;
+    private final String data;
+    private final int height;
+    private final int moduleWidth;
+    private final Hri hri;
+
+    public EscPosBarcode(Symbology symbology, String data, int height, int moduleWidth, Hri hri) {
+        this.symbology = symbology;
+        this.data = data;
+        this.height = Math.max(1, Math.min(255, height));
+        this.moduleWidth = Math.max(1, Math.min(6, moduleWidth));
+        this.hri = hri;
+        validate();
+    }
+
+    /**
+     * 🎯 Leer el campo "barcode" del JSON (null si no se pidió código de barras)
+     *
+     * @param value       valor del campo (true o un objeto)
+     * @param defaultData dato a codificar si el objeto no trae "data" (ID de orden o venta)
+     */
+    public static EscPosBarcode fromJson(Object value, String defaultData) {
+        try {
+            if (value instanceof Boolean) {
+                if (!(Boolean) value || defaultData == null || defaultData.isEmpty()) {
+                    return null;
+                }
+                return new EscPosBarcode(Symbology.CODE128, defaultData, DEFAULT_HEIGHT, DEFAULT_MODULE_WIDTH, Hri.BELOW);
+            }
+            if (value instanceof JSONObject) {
+                JSONObject spec = (JSONObject) value;
+                String data = spec.optString("data", defaultData);
+                if (data == null || data.isEmpty()) {
+                    return null;
+                }
+                return new EscPosBarcode(
+                    Symbology.fromString(spec.optString("type", "CODE128")),
+                    data,
+                    spec.optInt("height", DEFAULT_HEIGHT),
+                    spec.optInt("width", DEFAULT_MODULE_WIDTH),
+                    Hri.fromString(spec.optString("hri", "below")));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "⚠️ Código de barras inválido: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void validate() {
+        switch (symbology) {
+            case EAN13:
+                if (!data.matches("\\d{12,13}")) {
+                    throw new IllegalArgumentException("EAN13 requiere 12 o 13 dígitos: " + data);
+                }
+                break;
+            case ITF:
+                if (!data.matches("\\d+") || data.length() % 2 != 0) {
+                    throw new IllegalArgumentException("ITF requiere una cantidad par de dígitos: " + data);
+                }
+                break;
+            default:
+                if (data.length() > 253 || !data.matches("[\\x20-\\x7E]+")) {
+                    throw new IllegalArgumentException("CODE128 requiere ASCII imprimible (máx. 253): " + data);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 🖨️ Comandos según capacidades: nativo o raster como respaldo
+     */
+    public byte[] build(PrinterCapabilities capabilities, int paperWidth) {
+        if (capabilities.supportsNativeBarcode()) {
+            return toNative();
+        }
+        try {
+            return toRaster(capabilities.getDotWidth(paperWidth));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ No se pudo rasterizar el código de barras, se envía nativo", e);
+            return toNative();
+        }
+    }
+
+    /**
+     * 📊 GS H (HRI) + GS h (alto) + GS w (ancho) + GS k m n datos
+     */
+    public byte[] toNative() {
+        byte[] payload = (symbology == Symbology.CODE128 ? "{B" + data : data)
+            .getBytes(StandardCharsets.US_ASCII);
+
+        byte[] out = new byte[3 + 3 + 3 + 4 + payload.length];
+        int i = 0;
+        out[i++] = 0x1D; out[i++] = 0x48; out[i++] = (byte) hri.ordinal();
+        out[i++] = 0x1D; out[i++] = 0x68; out[i++] = (byte) height;
+        out[i++] = 0x1D; out[i++] = 0x77; out[i++] = (byte) moduleWidth;
+        out[i++] = 0x1D; out[i++] = 0x6B; out[i++] = (byte) symbology.escPosType; out[i++] = (byte) payload.length;
+        System.arraycopy(payload, 0, out, i, payload.length);
+        return out;
+    }
+
+    /**
+     * ⚫⚪ Raster GS v 0 generado con ZXing (el texto HRI se imprime como texto)
+     */
+    public byte[] toRaster(int maxDots) throws Exception {
+        BitMatrix matrix = new MultiFormatWriter().encode(data, symbology.zxingFormat, 0, 1);
+        int modules = matrix.getWidth();
+        int scale = Math.min(moduleWidth, maxDots / modules);
+        if (scale < 1) {
+            throw new IllegalArgumentException("Código de barras demasiado ancho: " + modules + " módulos");
+        }
+
+        int widthDots = modules * scale;
+        int widthBytes = (widthDots + 7) / 8;
+        byte[] row = new byte[widthBytes];
+        for (int x = 0; x < modules; x++) {
+            if (!matrix.get(x, 0)) {
+                continue;
+            }
+            for (int dot = x * scale; dot < (x + 1) * scale; dot++) {
+                row[dot >> 3] |= (byte) (0x80 >>> (dot & 7));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + widthBytes * height + data.length() * 2 + 4);
+        byte[] text = (data + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (hri == Hri.ABOVE || hri == Hri.BOTH) {
+            out.write(text, 0, text.length);
+        }
+        out.write(0x1D);
+        out.write(0x76);
+        out.write(0x30);
+        out.write(0x00);
+        out.write(widthBytes & 0xFF);
+        out.write((widthBytes >> 8) & 0xFF);
+        out.write(height & 0xFF);
+        out.write((height >> 8) & 0xFF);
+        for (int y = 0; y < height; y++) {
+            out.write(row, 0, widthBytes);
+        }
+        if (hri == Hri.BELOW || hri == Hri.BOTH) {
+            out.write(text, 0, text.length);
+        }
+        return out.toByteArray();
+    }
+
+    public Symbology getSymbology() {
+        return symbology;
+    }
+
+    public String getData() {
+        return data;
+    }
+}
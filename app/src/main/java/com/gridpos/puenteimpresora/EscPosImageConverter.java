@@ -19,6 +19,13 @@ public class EscPosImageConverter {
     private static final byte[] CUT_PAPER = {0x1D, 0x56, 0x00}; // GS V 0
 
     public static byte[] bitmapToEscPos(Bitmap bitmap) {
+        return bitmapToEscPos(bitmap, 384, CUT_PAPER);
+    }
+
+    /**
+     * 🖼️ Convertir imagen usando el ancho en puntos y el corte del perfil de la impresora
+     */
+    public static byte[] bitmapToEscPos(Bitmap bitmap, int maxWidth, byte[] cutCommand) {
         try {
             Log.d(TAG, "🖼️ Iniciando conversión de imagen: " + bitmap.getWidth() + "x" + bitmap.getHeight());
             
@@ -28,12 +35,14 @@ public class EscPosImageConverter {
             outputStream.write(INIT_PRINTER);
             outputStream.write(CENTER_ALIGN); // Centrar imagen
             
-            // Redimensionar para impresora de 80mm (384 pixels de ancho óptimo)
-            Bitmap processedBitmap = resizeBitmapOptimal(bitmap, 384);
+            // Redimensionar al ancho imprimible de la impresora
+            Bitmap processedBitmap = resizeBitmapOptimal(bitmap, maxWidth);
             Log.d(TAG, "🔧 Imagen redimensionada a: " + processedBitmap.getWidth() + "x" + processedBitmap.getHeight());
             
             // Convertir a monocromo con dithering mejorado
+            long ditherStart = System.nanoTime();
             Bitmap monoBitmap = convertToMonochromeWithDithering(processedBitmap);
+            PipelineMetrics.record(PipelineMetrics.DITHER, ditherStart);
             
             // Usar método raster más efectivo
             byte[] imageData = convertBitmapToRasterData(monoBitmap);
@@ -43,7 +52,7 @@ public class EscPosImageConverter {
             outputStream.write(LEFT_ALIGN);
             outputStream.write(LINE_FEED);
             outputStream.write(LINE_FEED);
-            outputStream.write(CUT_PAPER);
+            outputStream.write(cutCommand);
             
             Log.d(TAG, "✅ Conversión completada, " + outputStream.size() + " bytes totales");
             return outputStream.toByteArray();
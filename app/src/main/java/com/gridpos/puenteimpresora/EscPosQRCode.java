@@ -0,0 +1,73 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 🔗 Código QR nativo de la impresora (GS ( k, modelo 2)
+ * La impresora genera el QR: se envían ~100 bytes en vez de varios KB de imagen
+ * y no se usa ZXing ni Bitmap en la ruta de la factura.
+ */
+public class EscPosQRCode {
+    private static final String TAG = "EscPosQRCode";
+
+    // 🛡️ Niveles de corrección de errores (función 169)
+    public static final int ECC_L = 48;
+    public static final int ECC_M = 49;
+    public static final int ECC_Q = 50;
+    public static final int ECC_H = 51;
+
+    private static final int MIN_MODULE_SIZE = 1;
+    private static final int MAX_MODULE_SIZE = 16;
+    private static final int MAX_DATA_BYTES = 7089 - 3;
+
+    /**
+     * 🎯 Generar la secuencia completa: modelo → tamaño → ECC → almacenar → imprimir
+     *
+     * @param content    texto o URL del QR
+     * @param moduleSize tamaño de cada módulo en puntos (1-16)
+     * @param ecc        nivel de corrección (ECC_L, ECC_M, ECC_Q, ECC_H)
+     */
+    public static byte[] build(String content, int moduleSize, int ecc) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        if (data.length == 0 || data.length > MAX_DATA_BYTES) {
+            throw new IllegalArgumentException("Contenido QR inválido: " + data.length + " bytes");
+        }
+        int size = Math.max(MIN_MODULE_SIZE, Math.min(MAX_MODULE_SIZE, moduleSize));
+        int storeLength = data.length + 3;
+
+        byte[] out = new byte[9 + 8 + 8 + 8 + data.length + 8];
+        int i = 0;
+
+        // Función 165: seleccionar modelo 2
+        i = put(out, i, 0x1D, 0x28, 0x6B, 4, 0, 0x31, 0x41, 0x32, 0x00);
+        // Función 167: tamaño del módulo
+        i = put(out, i, 0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x43, size);
+        // Función 169: nivel de corrección
+        i = put(out, i, 0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x45, ecc);
+        // Función 180: almacenar datos
+        i = put(out, i, 0x1D, 0x28, 0x6B, storeLength & 0xFF, (storeLength >> 8) & 0xFF, 0x31, 0x50, 0x30);
+        System.arraycopy(data, 0, out, i, data.length);
+        i += data.length;
+        // Función 181: imprimir el símbolo almacenado
+        i = put(out, i, 0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x51, 0x30);
+
+        Log.d(TAG, "🔗 QR nativo: " + data.length + " bytes de datos, " + i + " bytes de comando");
+        return out;
+    }
+
+    /**
+     * 📐 Tamaño de módulo recomendado según el ancho del papel
+     */
+    public static int moduleSizeForPaper(int paperWidth) {
+        return paperWidth == 58 ? 3 : 4;
+    }
+
+    private static int put(byte[] out, int offset, int... values) {
+        for (int value : values) {
+            out[offset++] = (byte) value;
+        }
+        return offset;
+    }
+}
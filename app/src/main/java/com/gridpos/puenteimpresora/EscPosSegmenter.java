@@ -0,0 +1,355 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ✂️ Divide un flujo ESC/POS en segmentos que se pueden reanudar
+ * Los cortes solo caen en fronteras seguras: después de un salto de línea de texto
+ * o entre bandas de raster (los GS v 0 altos se reescriben en bandas de hasta
+ * getMaxRasterRows() filas del perfil de la impresora).
+ * Nunca se corta dentro de los argumentos binarios de un comando.
+ * El preámbulo (comandos de configuración antes del primer texto) se reenvía al reanudar,
+ * seguido del estado de modo vigente en la frontera (ESC t, ESC a, ESC E, GS !): el
+ * ESC @ del preámbulo lo borra y esos comandos suelen ir a mitad del flujo.
+ */
+public class EscPosSegmenter {
+    private static final String TAG = "EscPosSegmenter";
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final byte FS = 0x1C;
+    private static final byte DLE = 0x10;
+    private static final byte LF = 0x0A;
+
+    private static final byte[] NO_COMMANDS = new byte[0];
+
+    // 🎯 Valores por defecto: tamaño objetivo de un segmento de texto y alto de cada banda
+    static final int TARGET_SEGMENT_BYTES = 4096;
+    static final int BAND_ROWS = 64;
+
+    /**
+     * 📦 Resultado: datos (posiblemente reescritos) y fronteras de segmentos
+     * boundaries[0] = 0 y boundaries[n] = data.length; el segmento i es [boundaries[i], boundaries[i+1])
+     * resumeCommands[i] restaura, después del preámbulo, el modo vigente al empezar el segmento i
+     */
+    public static class Result {
+        public final byte[] data;
+        public final int[] boundaries;
+        public final int preambleLength;
+        public final byte[][] resumeCommands;
+
+        Result(byte[] data, int[] boundaries, int preambleLength, byte[][] resumeCommands) {
+            this.data = data;
+            this.boundaries = boundaries;
+            this.preambleLength = preambleLength;
+            this.resumeCommands = resumeCommands;
+        }
+
+        public int getSegmentCount() {
+            return boundaries.length - 1;
+        }
+    }
+
+    /**
+     * ✂️ Segmentar comandos ESC/POS
+     */
+    public static Result segment(byte[] data) {
+        return segment(data, BAND_ROWS, TARGET_SEGMENT_BYTES);
+    }
+
+    /**
+     * ✂️ Segmentar según el perfil: bandas del alto máximo del modelo y segmentos
+     * del tamaño de su buffer de recepción
+     */
+    public static Result segment(byte[] data, PrinterCapabilities capabilities) {
+        return segment(data, capabilities.getMaxRasterRows(), capabilities.getBufferSize());
+    }
+
+    static Result segment(byte[] data, int bandRowsMax, int targetSegmentBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 64);
+        IntList boundaries = new IntList();
+        boundaries.add(0);
+        ModeState mode = new ModeState();
+        List<byte[]> resumeCommands = new ArrayList<>();
+        resumeCommands.add(NO_COMMANDS);
+
+        int preambleLength = -1;
+        int segmentStart = 0;
+        int i = 0;
+
+        while (i < data.length) {
+            int b = data[i] & 0xFF;
+
+            // ⚫⚪ GS v 0: reescribir en bandas, cada banda es un segmento propio
+            if (b == GS && i + 7 < data.length && data[i + 1] == 'v' && data[i + 2] == '0') {
+                if (preambleLength < 0) {
+                    preambleLength = out.size();
+                }
+                int bytesPerRow = (data[i + 4] & 0xFF) | ((data[i + 5] & 0xFF) << 8);
+                int rows = (data[i + 6] & 0xFF) | ((data[i + 7] & 0xFF) << 8);
+                int imageLength = bytesPerRow * rows;
+                if (i + 8 + imageLength > data.length) {
+                    // Comando truncado: copiar el resto sin tocar
+                    out.write(data, i, data.length - i);
+                    i = data.length;
+                    break;
+                }
+
+                closeSegment(out, boundaries, resumeCommands, mode, segmentStart);
+                int rasterMode = data[i + 3] & 0xFF;
+                for (int row = 0; row < rows; row += bandRowsMax) {
+                    int bandRows = Math.min(bandRowsMax, rows - row);
+                    out.write(GS);
+                    out.write('v');
+                    out.write('0');
+                    out.write(rasterMode);
+                    out.write(bytesPerRow & 0xFF);
+                    out.write((bytesPerRow >> 8) & 0xFF);
+                    out.write(bandRows & 0xFF);
+                    out.write((bandRows >> 8) & 0xFF);
+                    out.write(data, i + 8 + row * bytesPerRow, bandRows * bytesPerRow);
+                    boundaries.add(out.size());
+                    resumeCommands.add(mode.toCommands());
+                }
+                segmentStart = out.size();
+                i += 8 + imageLength;
+                continue;
+            }
+
+            int length = commandLength(data, i);
+            if (length > 0 && preambleLength < 0 && hasSideEffect(data, i)) {
+                // El preámbulo se repite al reanudar: no debe abrir caja, cortar ni consultar
+                preambleLength = out.size();
+            }
+            if (length > 0) {
+                mode.apply(data, i, length);
+                out.write(data, i, Math.min(length, data.length - i));
+                i += length;
+                continue;
+            }
+
+            // Texto: frontera después de cada salto de línea si el segmento ya es grande
+            if (preambleLength < 0) {
+                preambleLength = out.size();
+            }
+            out.write(b);
+            i++;
+            if (b == LF && out.size() - segmentStart >= targetSegmentBytes) {
+                boundaries.add(out.size());
+                resumeCommands.add(mode.toCommands());
+                segmentStart = out.size();
+            }
+        }
+
+        if (out.size() > segmentStart || boundaries.size() == 1) {
+            boundaries.add(out.size());
+            resumeCommands.add(mode.toCommands());
+        }
+
+        Result result = new Result(out.toByteArray(), boundaries.toArray(),
+            Math.max(preambleLength, 0), resumeCommands.toArray(new byte[0][]));
+        Log.d(TAG, "✂️ " + data.length + " bytes → " + result.getSegmentCount() + " segmentos");
+        return result;
+    }
+
+    private static void closeSegment(ByteArrayOutputStream out, IntList boundaries,
+                                     List<byte[]> resumeCommands, ModeState mode, int segmentStart) {
+        if (out.size() > segmentStart) {
+            boundaries.add(out.size());
+            resumeCommands.add(mode.toCommands());
+        }
+    }
+
+    /**
+     * 🔤 Modo vigente: página de códigos (ESC t), alineación (ESC a), negrita (ESC E)
+     * y tamaño (GS !); -1 mientras siga el valor por defecto del ESC @
+     */
+    private static class ModeState {
+        private int codePage = -1;
+        private int align = -1;
+        private int emphasis = -1;
+        private int size = -1;
+        private byte[] commands = NO_COMMANDS;
+
+        void apply(byte[] data, int offset, int length) {
+            if (length < 2) {
+                return;
+            }
+            int b = data[offset] & 0xFF;
+            int cmd = data[offset + 1] & 0xFF;
+            if (b == ESC && cmd == '@') {
+                codePage = align = emphasis = size = -1;
+            } else if (length == 3 && b == ESC && cmd == 't') {
+                codePage = data[offset + 2] & 0xFF;
+            } else if (length == 3 && b == ESC && cmd == 'a') {
+                align = data[offset + 2] & 0xFF;
+            } else if (length == 3 && b == ESC && cmd == 'E') {
+                emphasis = data[offset + 2] & 0xFF;
+            } else if (length == 3 && b == GS && cmd == '!') {
+                size = data[offset + 2] & 0xFF;
+            } else {
+                return;
+            }
+            commands = null;
+        }
+
+        /**
+         * 📋 Comandos que reproducen el modo (el mismo arreglo mientras no cambie)
+         */
+        byte[] toCommands() {
+            if (commands == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(12);
+                writeIfSet(out, ESC, 't', codePage);
+                writeIfSet(out, ESC, 'a', align);
+                writeIfSet(out, ESC, 'E', emphasis);
+                writeIfSet(out, GS, '!', size);
+                commands = out.size() > 0 ? out.toByteArray() : NO_COMMANDS;
+            }
+            return commands;
+        }
+
+        private static void writeIfSet(ByteArrayOutputStream out, byte prefix, char cmd, int value) {
+            if (value >= 0) {
+                out.write(prefix);
+                out.write(cmd);
+                out.write(value);
+            }
+        }
+    }
+
+    /**
+     * 📏 Largo del comando que empieza en offset (0 si es texto imprimible)
+     * Tabla de los comandos que generan los formateadores y los más comunes de ESC/POS
+     */
+    static int commandLength(byte[] data, int offset) {
+        int b = data[offset] & 0xFF;
+        int remaining = data.length - offset;
+        if (remaining < 2) {
+            return b == ESC || b == GS || b == FS || b == DLE ? remaining : 0;
+        }
+        int cmd = data[offset + 1] & 0xFF;
+
+        switch (b) {
+            case ESC:
+                switch (cmd) {
+                    case '@': case '2': case '<':
+                        return 2;
+                    case 'p':
+                        return 5;
+                    case '$': case '\\':
+                        return 4;
+                    case 'c':
+                        return 4;
+                    case '*':
+                        if (remaining < 5) {
+                            return remaining;
+                        }
+                        int m = data[offset + 2] & 0xFF;
+                        int dots = (data[offset + 3] & 0xFF) | ((data[offset + 4] & 0xFF) << 8);
+                        return 5 + dots * (m >= 32 ? 3 : 1);
+                    case 'D':
+                        return untilNul(data, offset + 2) - offset;
+                    default:
+                        return 3; // ESC x n
+                }
+
+            case GS:
+                switch (cmd) {
+                    case '(':
+                        if (remaining < 5) {
+                            return remaining;
+                        }
+                        return 5 + ((data[offset + 3] & 0xFF) | ((data[offset + 4] & 0xFF) << 8));
+                    case 'k':
+                        if (remaining < 3) {
+                            return remaining;
+                        }
+                        int type = data[offset + 2] & 0xFF;
+                        if (type <= 6) {
+                            return untilNul(data, offset + 3) - offset;
+                        }
+                        return remaining < 4 ? remaining : 4 + (data[offset + 3] & 0xFF);
+                    case 'V':
+                        if (remaining < 3) {
+                            return remaining;
+                        }
+                        int mode = data[offset + 2] & 0xFF;
+                        return mode >= 65 ? 4 : 3;
+                    case '*':
+                        if (remaining < 4) {
+                            return remaining;
+                        }
+                        return 4 + (data[offset + 2] & 0xFF) * (data[offset + 3] & 0xFF) * 8;
+                    case 'L': case 'W': case 'P': case '$': case '\\':
+                        return 4;
+                    case 'v':
+                        // GS v 0 truncado (el completo se procesa antes)
+                        return remaining;
+                    default:
+                        return 3; // GS x n
+                }
+
+            case FS:
+                switch (cmd) {
+                    case '.': case '&':
+                        return 2;
+                    case 'p':
+                        return 4;
+                    default:
+                        return 3;
+                }
+
+            case DLE:
+                return cmd == 0x14 ? 5 : 3;
+
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 💰 Comandos que no se deben repetir al reanudar (caja, corte, tiempo real)
+     */
+    private static boolean hasSideEffect(byte[] data, int offset) {
+        int b = data[offset] & 0xFF;
+        int cmd = offset + 1 < data.length ? data[offset + 1] & 0xFF : 0;
+        return (b == ESC && cmd == 'p') || (b == GS && cmd == 'V') || b == DLE;
+    }
+
+    private static int untilNul(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == 0) {
+                return i + 1;
+            }
+        }
+        return data.length;
+    }
+
+    /**
+     * Lista de enteros sin autoboxing
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
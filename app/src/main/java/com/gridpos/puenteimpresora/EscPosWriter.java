@@ -0,0 +1,225 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ✍️ Buffer de comandos ESC/POS con sesión de página de códigos
+ * El texto se codifica una sola vez por tabla (CodePageEncoder) y ESC t n solo se
+ * envía cuando un fragmento necesita una página distinta de la activa. Los
+ * fragmentos ASCII no fuerzan ninguna selección.
+ */
+public class EscPosWriter {
+    private static final String TAG = "EscPosWriter";
+
+    // ESC @ (inicializar) + FS . (cancelar modo Kanji en clones asiáticos)
+    private static final byte[] INITIALIZE = {0x1B, 0x40, 0x1C, 0x2E};
+
+    private final PrinterCapabilities capabilities;
+    private final List<CodePageEncoder> codePages;
+    private final boolean rasterText;
+    private int maxDots = 576;
+    private byte[] buffer;
+    private int size;
+
+    // Página activa en la impresora (null = desconocida, se selecciona al primer texto no ASCII)
+    private CodePageEncoder activePage;
+    private int pageSwitches;
+
+    public EscPosWriter(PrinterCapabilities capabilities) {
+        this(capabilities, 4096);
+    }
+
+    public EscPosWriter(PrinterCapabilities capabilities, int initialCapacity) {
+        this.capabilities = capabilities;
+        this.codePages = capabilities.getCodePages();
+        this.rasterText = capabilities.rendersUnsupportedText();
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    /**
+     * 🔄 ESC @ + FS .: la impresora vuelve a su página por defecto, la sesión se reinicia
+     */
+    public EscPosWriter initialize() {
+        write(INITIALIZE);
+        activePage = null;
+        return this;
+    }
+
+    /**
+     * 📏 Ancho del papel (mm) para el texto dibujado como imagen
+     */
+    public EscPosWriter setPaperWidth(int paperWidth) {
+        this.maxDots = capabilities.getDotWidth(paperWidth);
+        return this;
+    }
+
+    /**
+     * 🔧 Agregar bytes tal cual (comandos, imágenes, QR)
+     */
+    public EscPosWriter write(byte[] data) {
+        return write(data, 0, data.length);
+    }
+
+    public EscPosWriter write(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    public EscPosWriter write(int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * 📝 Agregar texto en la página de códigos más adecuada
+     */
+    public EscPosWriter text(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return this;
+        }
+        if (activePage == null && isAscii(text)) {
+            // ASCII es igual en todas las páginas: no hace falta seleccionar ninguna todavía
+            ensureCapacity(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer[size++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+        if (rasterText && hasUnsupportedChars(text) && writeRasterText(text)) {
+            return this;
+        }
+        CodePageEncoder page = selectPage(text);
+        if (page != activePage) {
+            write(page.selectCommand());
+            activePage = page;
+            pageSwitches++;
+        }
+        ensureCapacity(text.length() * CodePageEncoder.MAX_BYTES_PER_CHAR);
+        size = page.encode(text, 0, text.length(), buffer, size);
+        return this;
+    }
+
+    /**
+     * 🔍 Mantener la página activa si alcanza; si no, la primera declarada que cubra todo
+     * el fragmento; si ninguna lo cubre, la de mayor cobertura (el resto se translitera)
+     */
+    private CodePageEncoder selectPage(CharSequence text) {
+        if (activePage != null && activePage.canEncode(text)) {
+            return activePage;
+        }
+        CodePageEncoder best = null;
+        int bestCoverage = -1;
+        for (CodePageEncoder page : codePages) {
+            int coverage = coverage(page, text);
+            if (coverage == text.length()) {
+                return page;
+            }
+            if (coverage > bestCoverage) {
+                best = page;
+                bestCoverage = coverage;
+            }
+        }
+        if (activePage != null && coverage(activePage, text) >= bestCoverage) {
+            return activePage;
+        }
+        Log.d(TAG, "🔤 Sin página completa para el texto, usando " + best);
+        return best;
+    }
+
+    /**
+     * 🔣 Dibujar el texto línea por línea como imagen (ESC/POS no mezcla raster y
+     * texto en la misma línea). Retorna false si no se pudo y hay que codificarlo.
+     */
+    private boolean writeRasterText(CharSequence text) {
+        try {
+            GlyphRasterizer rasterizer = GlyphRasterizer.getInstance();
+            int start = 0;
+            while (start < text.length()) {
+                int end = start;
+                while (end < text.length() && text.charAt(end) != '\n') {
+                    end++;
+                }
+                if (end > start) {
+                    // La banda raster ya avanza el papel: el '\n' de la línea se consume
+                    write(rasterizer.renderLine(text.subSequence(start, end), GlyphRasterizer.DEFAULT_TEXT_SIZE, maxDots));
+                } else {
+                    write('\n');
+                }
+                start = end + 1;
+            }
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ No se pudo dibujar el texto, se codifica con '?': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 🔍 Hay caracteres sin equivalente en ninguna página ni transliteración
+     */
+    private boolean hasUnsupportedChars(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 || CodePageEncoder.canTransliterate(c)) {
+                continue;
+            }
+            boolean supported = false;
+            for (CodePageEncoder page : codePages) {
+                if (page.canEncode(c)) {
+                    supported = true;
+                    break;
+                }
+            }
+            if (!supported) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAscii(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int coverage(CodePageEncoder page, CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (page.canEncode(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 📊 Cantidad de ESC t n emitidos en la sesión
+     */
+    public int getPageSwitches() {
+        return pageSwitches;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+}
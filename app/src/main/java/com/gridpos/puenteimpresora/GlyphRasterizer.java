@@ -0,0 +1,201 @@
+package com.gridpos.puenteimpresora;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 🔣 Texto como imagen para caracteres que ninguna página de códigos tiene (emoji, CJK)
+ * Cada carácter se dibuja una sola vez con Paint y se guarda como glifo de 1 bit
+ * (caché por carácter + tamaño de fuente); las líneas se arman copiando glifos en
+ * bandas GS v 0, así los tickets con texto mixto no vuelven a tocar Canvas.
+ */
+public class GlyphRasterizer {
+    private static final String TAG = "GlyphRasterizer";
+
+    // Tamaño por defecto: alto aproximado de la fuente A de la impresora (12x24)
+    public static final int DEFAULT_TEXT_SIZE = 24;
+
+    private static final int MAX_GLYPHS = 512;
+    private static final int BLACK_THRESHOLD = 128;
+
+    private static final GlyphRasterizer INSTANCE = new GlyphRasterizer();
+
+    /**
+     * 📦 Glifo 1-bit: filas de widthBytes bytes, MSB = punto izquierdo
+     */
+    private static class Glyph {
+        final int width;
+        final int height;
+        final int widthBytes;
+        final byte[] rows;
+
+        Glyph(int width, int height, byte[] rows) {
+            this.width = width;
+            this.height = height;
+            this.widthBytes = (width + 7) / 8;
+            this.rows = rows;
+        }
+
+        boolean isSet(int x, int y) {
+            return (rows[y * widthBytes + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+        }
+    }
+
+    private final Paint paint = new Paint();
+    private final Paint.FontMetricsInt metrics = new Paint.FontMetricsInt();
+    private long hits;
+    private long misses;
+
+    private final LinkedHashMap<Long, Glyph> cache = new LinkedHashMap<Long, Glyph>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Glyph> eldest) {
+            return size() > MAX_GLYPHS;
+        }
+    };
+
+    private GlyphRasterizer() {
+        paint.setColor(Color.BLACK);
+        paint.setAntiAlias(false);
+    }
+
+    public static GlyphRasterizer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 🖨️ Dibujar una línea (sin '\n') como una o más bandas GS v 0
+     * Si no cabe en maxDots se parte en varias bandas.
+     */
+    public synchronized byte[] renderLine(CharSequence line, int textSize, int maxDots) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int lineHeight = lineHeight(textSize);
+
+        int start = 0;
+        while (start < line.length()) {
+            // Medir cuántos caracteres caben en la banda
+            int width = 0;
+            int end = start;
+            while (end < line.length()) {
+                int codePoint = Character.codePointAt(line, end);
+                Glyph glyph = glyph(codePoint, textSize);
+                if (width + glyph.width > maxDots && end > start) {
+                    break;
+                }
+                width += glyph.width;
+                end += Character.charCount(codePoint);
+            }
+            if (width > 0) {
+                byte[] band = composeBand(line, start, end, textSize, Math.min(width, maxDots), lineHeight);
+                out.write(band, 0, band.length);
+            }
+            start = end;
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] composeBand(CharSequence line, int start, int end, int textSize, int width, int height) {
+        int widthBytes = (width + 7) / 8;
+        byte[] rows = new byte[widthBytes * height];
+        int x = 0;
+        for (int i = start; i < end; ) {
+            int codePoint = Character.codePointAt(line, i);
+            i += Character.charCount(codePoint);
+            Glyph glyph = glyph(codePoint, textSize);
+            int visible = Math.min(glyph.width, width - x);
+            for (int y = 0; y < Math.min(glyph.height, height); y++) {
+                int rowStart = y * widthBytes;
+                for (int gx = 0; gx < visible; gx++) {
+                    if (glyph.isSet(gx, y)) {
+                        int dot = x + gx;
+                        rows[rowStart + (dot >> 3)] |= (byte) (0x80 >>> (dot & 7));
+                    }
+                }
+            }
+            x += glyph.width;
+        }
+        return new QRRasterEncoder.Raster(width, height, rows).toRasterCommand();
+    }
+
+    private int lineHeight(int textSize) {
+        paint.setTextSize(textSize);
+        paint.getFontMetricsInt(metrics);
+        return Math.max(1, metrics.descent - metrics.ascent);
+    }
+
+    private Glyph glyph(int codePoint, int textSize) {
+        long key = ((long) textSize << 32) | codePoint;
+        Glyph glyph = cache.get(key);
+        if (glyph != null) {
+            hits++;
+            return glyph;
+        }
+        misses++;
+        glyph = render(codePoint, textSize);
+        cache.put(key, glyph);
+        return glyph;
+    }
+
+    /**
+     * 🎨 Dibujar un carácter en blanco y negro (los emoji a color se umbralizan por luminancia)
+     */
+    private Glyph render(int codePoint, int textSize) {
+        String text = new String(Character.toChars(codePoint));
+        paint.setTextSize(textSize);
+        paint.getFontMetricsInt(metrics);
+        int height = Math.max(1, metrics.descent - metrics.ascent);
+        int width = (int) Math.ceil(paint.measureText(text));
+        if (width <= 0) {
+            // Marcas de ancho cero (ZWJ, selectores de variación)
+            return new Glyph(0, height, new byte[0]);
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.WHITE);
+            canvas.drawText(text, 0, -metrics.ascent, paint);
+
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+            int widthBytes = (width + 7) / 8;
+            byte[] rows = new byte[widthBytes * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[y * width + x];
+                    int luminance = (Color.red(pixel) * 299 + Color.green(pixel) * 587 + Color.blue(pixel) * 114) / 1000;
+                    if (luminance < BLACK_THRESHOLD) {
+                        rows[y * widthBytes + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                    }
+                }
+            }
+            return new Glyph(width, height, rows);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * 📊 Métricas de la caché de glifos en JSON
+     */
+    public synchronized JSONObject toStatusJson() {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("glyphs", cache.size());
+            status.put("hits", hits);
+            status.put("misses", misses);
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando métricas de glifos", e);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,155 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoWSD;
+
+/**
+ * 🔌 Canal WebSocket por terminal POS (GET /ws)
+ * Los clientes envían trabajos y reciben eventos push de estado:
+ *   → {"action":"submit","ref":"abc","data":{...JSON de orden/factura...}}
+ *   → {"action":"submit","ref":"abc","image":"<Base64 PNG>","paper_width":58}
+ *   → {"action":"submit","ref":"abc","raster":"<Base64 1-bit>","width":384,"paper_width":58}
+ *   ← {"event":"queued|rendering|sending|printed|failed|paper-out","job_id":"...","ref":"abc"}
+ */
+public class JobChannelSocket extends NanoWSD.WebSocket implements PrintJob.Listener {
+    private static final String TAG = "JobChannelSocket";
+
+    public static final String PATH = "/ws";
+
+    private final PrintScheduler scheduler;
+    private final Map<String, String> refs = new ConcurrentHashMap<>();
+
+    public JobChannelSocket(NanoHTTPD.IHTTPSession handshake, PrintScheduler scheduler) {
+        super(handshake);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void onOpen() {
+        Log.d(TAG, "🔌 Canal abierto desde " + getHandshakeRequest().getRemoteIpAddress());
+    }
+
+    @Override
+    protected void onClose(NanoWSD.WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
+        Log.d(TAG, "🔌 Canal cerrado: " + code + (reason != null ? " - " + reason : ""));
+    }
+
+    @Override
+    protected void onMessage(NanoWSD.WebSocketFrame message) {
+        long receivedNanos = System.nanoTime();
+        String ref = null;
+        try {
+            JSONObject request = new JSONObject(message.getTextPayload());
+            ref = request.optString("ref", null);
+            String action = request.optString("action", "submit");
+
+            if ("ping".equals(action)) {
+                sendEvent("pong", null, ref, null);
+                return;
+            }
+            if (!"submit".equals(action)) {
+                sendEvent("error", null, ref, "Acción desconocida: " + action);
+                return;
+            }
+
+            // La referencia del cliente viaja en cada evento del trabajo; una orden
+            // dividida por estación notifica cada parte con la misma ref
+            PrintJob job = createJob(request);
+            job.getTrace().mark(JobTrace.Stage.RECEIVE, receivedNanos);
+            job.getTrace().mark(JobTrace.Stage.BODY_READ, receivedNanos);
+            job.getTrace().mark(JobTrace.Stage.PARSE);
+            for (PrintJob part : scheduler.route(job)) {
+                if (ref != null) {
+                    refs.put(part.getId(), ref);
+                }
+                part.addListener(this);
+                scheduler.submit(part);
+            }
+
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Mensaje inválido en canal", e);
+            sendEvent("error", null, ref, e.getMessage());
+        }
+    }
+
+    /**
+     * 🎯 Crear el trabajo a partir del mensaje recibido
+     */
+    private PrintJob createJob(JSONObject request) throws Exception {
+        PrintJob job;
+
+        JSONObject data = request.optJSONObject("data");
+        if (data != null) {
+            job = PrintJob.fromJson(data.toString());
+        } else if (request.has("image")) {
+            job = PrintJob.image(decodeBase64(request.getString("image")),
+                request.optInt("paper_width", PrintJob.IMAGE_PAPER_WIDTH));
+        } else if (request.has("raster")) {
+            MonoRasterImage image = MonoRasterImage.fromPacked(
+                decodeBase64(request.getString("raster")), request.optInt("width", -1));
+            job = PrintJob.monoRaster(image,
+                request.optInt("paper_width", MonoRasterImage.paperWidthFor(image.getWidth())));
+        } else {
+            throw new IllegalArgumentException("El mensaje no contiene data, image ni raster");
+        }
+        return job;
+    }
+
+    @Override
+    public void onStateChanged(PrintJob job, PrintJob.State state, String message) {
+        String ref = state.isFinal() ? refs.remove(job.getId()) : refs.get(job.getId());
+        sendEvent(state.wireName(), job.getId(), ref, message);
+        if (state.isFinal()) {
+            job.removeListener(this);
+        }
+    }
+
+    /**
+     * 📤 Enviar evento JSON al cliente (ignorado si el canal ya se cerró)
+     */
+    private void sendEvent(String event, String jobId, String ref, String message) {
+        if (!isOpen()) {
+            return;
+        }
+        try {
+            JSONObject payload = new JSONObject();
+            payload.put("event", event);
+            if (jobId != null) {
+                payload.put("job_id", jobId);
+            }
+            if (ref != null) {
+                payload.put("ref", ref);
+            }
+            if (message != null) {
+                payload.put("message", message);
+            }
+            send(payload.toString());
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ No se pudo enviar evento " + event, e);
+        }
+    }
+
+    private static byte[] decodeBase64(String data) {
+        int comma = data.startsWith("data:") ? data.indexOf(',') : -1;
+        return Base64.decode(comma >= 0 ? data.substring(comma + 1) : data, Base64.DEFAULT);
+    }
+
+    @Override
+    protected void onPong(NanoWSD.WebSocketFrame pong) {
+        // Sin acción: el keep-alive lo maneja el cliente
+    }
+
+    @Override
+    protected void onException(IOException exception) {
+        Log.w(TAG, "⚠️ Error en canal WebSocket: " + exception.getMessage());
+    }
+}
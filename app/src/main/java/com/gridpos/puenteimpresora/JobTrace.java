@@ -0,0 +1,225 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 🕒 Línea de tiempo de un trabajo: System.nanoTime() en cada etapa, de la recepción
+ * HTTP a la confirmación final. Permite reconstruir por qué un ticket tardó (espera en
+ * cola, formato, reintentos de envío...). No guarda el contenido del trabajo.
+ */
+public class JobTrace {
+    private static final String TAG = "JobTrace";
+
+    public enum Stage {
+        RECEIVE("receive"),                  // 📥 Llegó la solicitud
+        BODY_READ("body_read"),              // 📖 Cuerpo leído
+        PARSE("parse"),                      // 🧩 JSON / imagen interpretados
+        ENQUEUE("enqueue"),                  // 📥 En la cola de la impresora
+        DEQUEUE("dequeue"),                  // ⚙️ La cola lo tomó
+        RENDER("render"),                    // 🎨 Empezó a generar ESC/POS
+        CONVERT("convert"),                  // ✂️ Bytes ESC/POS listos y segmentados
+        FIRST_BYTE_SENT("first_byte_sent"),  // 🖨️ Primer bloque entregado al transporte
+        REROUTED("rerouted"),                // 🔀 Pasó a otra impresora del grupo
+        LAST_BYTE_ACKED("last_byte_acked"),  // ✅ Último bloque aceptado por el transporte
+        STATUS_CONFIRMED("status_confirmed"); // 🏁 Estado final confirmado (impreso o fallido)
+
+        private final String wireName;
+
+        Stage(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String wireName() {
+            return wireName;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String jobId;
+    private final String type;
+    private final AtomicLongArray stamps = new AtomicLongArray(STAGES.length); // 0 = sin marcar
+    // Ancla para pasar de nanoTime a hora de reloj
+    private final long createdNanos = System.nanoTime();
+    private final long createdMillis = System.currentTimeMillis();
+    private volatile String printer;
+    private volatile String reroutedFrom;
+    private volatile String outcome;
+
+    public JobTrace(String jobId, String type) {
+        this.jobId = jobId;
+        this.type = type;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * 📍 Marcar la etapa ahora (solo la primera vez: un reintento no borra la original)
+     */
+    public void mark(Stage stage) {
+        mark(stage, System.nanoTime());
+    }
+
+    public void mark(Stage stage, long nanos) {
+        stamps.compareAndSet(stage.ordinal(), 0, nanos);
+    }
+
+    /**
+     * 📍 Marcar la etapa reemplazando la anterior (p. ej. el último byte tras reanudar)
+     */
+    public void markLatest(Stage stage) {
+        stamps.set(stage.ordinal(), System.nanoTime());
+    }
+
+    public long get(Stage stage) {
+        return stamps.get(stage.ordinal());
+    }
+
+    /**
+     * 🧬 Heredar las etapas previas de la orden original (partes por estación)
+     */
+    public void inheritFrom(JobTrace parent) {
+        for (Stage stage : STAGES) {
+            long nanos = parent.get(stage);
+            if (nanos != 0) {
+                mark(stage, nanos);
+            }
+        }
+    }
+
+    public void setPrinter(String printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * 🔀 Failover de grupo: las etapas ya marcadas se conservan y se anota de qué impresora salió
+     */
+    public void markRerouted(String fromPrinter) {
+        if (reroutedFrom == null) {
+            reroutedFrom = fromPrinter;
+        }
+        markLatest(Stage.REROUTED);
+    }
+
+    /**
+     * 🏁 Cerrar la traza con el estado final del trabajo
+     */
+    public void finish(String outcome) {
+        this.outcome = outcome;
+        mark(Stage.STATUS_CONFIRMED);
+    }
+
+    private long origin() {
+        for (Stage stage : STAGES) {
+            long nanos = get(stage);
+            if (nanos != 0) {
+                return nanos;
+            }
+        }
+        return createdNanos;
+    }
+
+    /**
+     * 📋 JSON para GET /jobs/{id}/trace: milisegundos desde la primera etapa y desde la anterior
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            long origin = origin();
+            json.put("job_id", jobId);
+            json.put("type", type);
+            json.put("printer", printer != null ? printer : JSONObject.NULL);
+            if (reroutedFrom != null) {
+                json.put("rerouted_from", reroutedFrom);
+            }
+            json.put("outcome", outcome != null ? outcome : JSONObject.NULL);
+            json.put("started_at", createdMillis + (origin - createdNanos) / 1000000);
+
+            JSONArray stages = new JSONArray();
+            long previous = origin;
+            long last = origin;
+            for (Stage stage : markedStages()) {
+                long nanos = get(stage);
+                JSONObject entry = new JSONObject();
+                entry.put("stage", stage.wireName());
+                entry.put("at_ms", toMillis(nanos - origin));
+                entry.put("delta_ms", toMillis(nanos - previous));
+                stages.put(entry);
+                previous = nanos;
+                last = Math.max(last, nanos);
+            }
+            json.put("stages", stages);
+            json.put("total_ms", toMillis(last - origin));
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando traza de " + jobId, e);
+        }
+        return json;
+    }
+
+    /**
+     * 🧵 Eventos de Chrome trace (chrome://tracing, Perfetto): un tramo "X" por etapa,
+     * desde la etapa anterior, en un hilo propio del trabajo
+     */
+    public void appendTraceEvents(JSONArray events, int tid) throws Exception {
+        JSONObject name = new JSONObject();
+        name.put("name", "thread_name");
+        name.put("ph", "M");
+        name.put("pid", 1);
+        name.put("tid", tid);
+        name.put("args", new JSONObject().put("name", type + " " + jobId
+            + (printer != null ? " @" + printer : "")));
+        events.put(name);
+
+        long previous = 0;
+        for (Stage stage : markedStages()) {
+            long nanos = get(stage);
+            if (previous != 0) {
+                JSONObject span = new JSONObject();
+                span.put("name", stage.wireName());
+                span.put("cat", "print");
+                span.put("ph", "X");
+                span.put("pid", 1);
+                span.put("tid", tid);
+                span.put("ts", previous / 1000);
+                span.put("dur", Math.max(0, (nanos - previous) / 1000));
+                events.put(span);
+            }
+            previous = nanos;
+        }
+    }
+
+    /**
+     * 📋 Etapas marcadas en orden de tiempo: tras un failover, la cola y el formato de la
+     * impresora nueva (primeras marcas) pueden quedar antes que REROUTED
+     */
+    private Stage[] markedStages() {
+        Stage[] marked = new Stage[STAGES.length];
+        int count = 0;
+        for (Stage stage : STAGES) {
+            long nanos = get(stage);
+            if (nanos == 0) {
+                continue;
+            }
+            // Inserción estable: sin failover el orden es el del enum
+            int i = count++;
+            while (i > 0 && get(marked[i - 1]) > nanos) {
+                marked[i] = marked[i - 1];
+                i--;
+            }
+            marked[i] = stage;
+        }
+        return Arrays.copyOf(marked, count);
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 🗂️ Últimas trazas de trabajos en memoria (acotado: se descartan las más viejas)
+ */
+public class JobTraceStore {
+    private static final String TAG = "JobTraceStore";
+
+    private static final int MAX_TRACES = 256;
+
+    private static final LinkedHashMap<String, JobTrace> traces = new LinkedHashMap<String, JobTrace>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JobTrace> eldest) {
+            return size() > MAX_TRACES;
+        }
+    };
+
+    private JobTraceStore() {
+    }
+
+    /**
+     * ➕ Guardar la traza al encolar el trabajo (un trabajo reencolado la conserva)
+     */
+    public static synchronized void register(JobTrace trace) {
+        if (!traces.containsKey(trace.getJobId())) {
+            traces.put(trace.getJobId(), trace);
+        }
+    }
+
+    public static synchronized JobTrace get(String jobId) {
+        return traces.get(jobId);
+    }
+
+    /**
+     * 📋 Las últimas "count" trazas, de la más vieja a la más nueva
+     */
+    public static synchronized List<JobTrace> recent(int count) {
+        List<JobTrace> all = new ArrayList<>(traces.values());
+        return all.subList(Math.max(0, all.size() - count), all.size());
+    }
+
+    /**
+     * 🧵 Exportar las últimas "count" trazas en formato Chrome trace-event
+     */
+    public static JSONObject toChromeTrace(int count) {
+        JSONObject trace = new JSONObject();
+        try {
+            JSONArray events = new JSONArray();
+            int tid = 1;
+            for (JobTrace jobTrace : recent(count)) {
+                jobTrace.appendTraceEvents(events, tid++);
+            }
+            trace.put("traceEvents", events);
+            trace.put("displayTimeUnit", "ms");
+        } catch (Exception e) {
+            Log.w(TAG, "Error exportando trazas", e);
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,112 @@
+package com.gridpos.puenteimpresora;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ⏱️ Histograma de latencias con cubetas fijas (sin bloqueos ni memoria por muestra)
+ * Cubetas exponenciales 1-2-5 de 50 µs a 30 s: registrar cuesta un recorrido corto
+ * y un incremento atómico; los percentiles se estiman interpolando dentro de la cubeta.
+ */
+public class LatencyHistogram {
+
+    // Límite superior de cada cubeta en microsegundos (la última es +Inf)
+    static final long[] BOUNDS_MICROS = {
+        50, 100, 250, 500,
+        1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+        1000000, 2500000, 5000000, 10000000, 30000000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        int index = 0;
+        while (index < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[index]) {
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Otro hilo registró un máximo a la vez: reintentar
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    /**
+     * 📊 Muestras por cubeta (copia; la última posición es +Inf)
+     */
+    public long[] snapshot() {
+        long[] copy = new long[buckets.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * 📐 Percentil estimado en milisegundos (0 si no hay muestras)
+     */
+    public double percentileMs(double percentile) {
+        return percentileMs(snapshot(), percentile);
+    }
+
+    private double percentileMs(long[] counts, double percentile) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double rank = percentile / 100.0 * total;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0 || seen + counts[i] < rank) {
+                seen += counts[i];
+                continue;
+            }
+            double lower = i == 0 ? 0 : BOUNDS_MICROS[i - 1];
+            // La cubeta +Inf se acota con el máximo observado
+            double upper = i < BOUNDS_MICROS.length
+                ? BOUNDS_MICROS[i] : Math.max(lower, maxNanos.get() / 1000.0);
+            double fraction = (rank - seen) / counts[i];
+            return (lower + (upper - lower) * fraction) / 1000.0;
+        }
+        return maxNanos.get() / 1e6;
+    }
+
+    public JSONObject toJson() throws Exception {
+        long[] counts = snapshot();
+        long samples = count.get();
+        JSONObject json = new JSONObject();
+        json.put("count", samples);
+        json.put("mean_ms", samples > 0 ? round(sumNanos.get() / 1e6 / samples) : 0);
+        json.put("p50_ms", round(percentileMs(counts, 50)));
+        json.put("p90_ms", round(percentileMs(counts, 90)));
+        json.put("p99_ms", round(percentileMs(counts, 99)));
+        json.put("max_ms", round(maxNanos.get() / 1e6));
+        return json;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
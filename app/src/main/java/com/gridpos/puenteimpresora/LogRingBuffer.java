@@ -0,0 +1,131 @@
+package com.gridpos.puenteimpresora;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 📝 Log visual en un buffer circular de capacidad fija, sin bloqueos
+ * Cualquier hilo escribe en O(1) sin reservar memoria (solo guarda la referencia
+ * al mensaje); la UI lee por lotes lo nuevo desde su último número de secuencia.
+ * Cada casilla lleva su secuencia publicada: el lector descarta las que se
+ * sobrescribieron mientras las leía.
+ */
+public class LogRingBuffer {
+
+    public static final int INFO = 0;
+    public static final int WARN = 1;
+    public static final int ERROR = 2;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray published;   // secuencia + 1 ya escrita; negativa mientras se escribe
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray levels;
+    private final AtomicReferenceArray<String> messages;
+    private final AtomicLong next = new AtomicLong();
+    private volatile long clearedBefore;
+
+    /**
+     * 📏 La capacidad se redondea a potencia de 2 (índice con máscara)
+     */
+    public LogRingBuffer(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        this.timestamps = new AtomicLongArray(size);
+        this.levels = new AtomicIntegerArray(size);
+        this.messages = new AtomicReferenceArray<>(size);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * ✍️ Agregar entrada desde cualquier hilo; retorna su número de secuencia
+     */
+    public long add(int level, String message) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        published.set(slot, -(sequence + 1));
+        timestamps.set(slot, System.currentTimeMillis());
+        levels.set(slot, level);
+        messages.set(slot, message);
+        published.set(slot, sequence + 1);
+        return sequence;
+    }
+
+    /**
+     * 🚦 Nivel de la entrada "sequence" (-1 si ya no está en el buffer)
+     */
+    public int getLevel(long sequence) {
+        int slot = (int) (sequence & mask);
+        int level = levels.get(slot);
+        return published.get(slot) == sequence + 1 ? level : -1;
+    }
+
+    /**
+     * 🔢 Secuencia de la próxima entrada (para saber si hay algo nuevo)
+     */
+    public long getNextSequence() {
+        return next.get();
+    }
+
+    /**
+     * 🗑️ Ocultar todo lo escrito hasta ahora
+     */
+    public void clear() {
+        clearedBefore = next.get();
+    }
+
+    /**
+     * 📤 Copiar como texto "HH:mm:ss mensaje" las entradas desde "from" que siguen
+     * en el buffer; retorna la secuencia desde la que continuar la próxima vez.
+     * Se detiene en la primera entrada que aún no se publica (se retoma desde ella);
+     * solo se saltan las que una secuencia posterior ya sobrescribió.
+     */
+    public long drainTo(long from, StringBuilder out) {
+        long end = next.get();
+        long start = Math.max(from, Math.max(clearedBefore, end - capacity));
+        int offsetMs = TimeZone.getDefault().getOffset(System.currentTimeMillis());
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            long state = published.get(slot);
+            if (Math.abs(state) > sequence + 1) {
+                continue; // Sobrescrita (o sobrescribiéndose) por una vuelta posterior
+            }
+            if (state != sequence + 1) {
+                return sequence; // Reservada pero sin publicar: se lee en la próxima pasada
+            }
+            long timestamp = timestamps.get(slot);
+            String message = messages.get(slot);
+            if (published.get(slot) != sequence + 1) {
+                continue; // Se sobrescribió mientras se leía
+            }
+            appendTime(out, timestamp + offsetMs);
+            out.append(message).append('\n');
+        }
+        return end;
+    }
+
+    private static void appendTime(StringBuilder out, long localMillis) {
+        int seconds = (int) ((localMillis / 1000) % 86400);
+        if (seconds < 0) {
+            seconds += 86400;
+        }
+        appendTwoDigits(out, seconds / 3600);
+        out.append(':');
+        appendTwoDigits(out, (seconds / 60) % 60);
+        out.append(':');
+        appendTwoDigits(out, seconds % 60);
+        out.append(' ');
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
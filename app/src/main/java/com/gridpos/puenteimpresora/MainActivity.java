@@ -23,30 +23,52 @@ import android.widget.AdapterView;
 import android.content.SharedPreferences;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import java.net.NetworkInterface;
 import java.net.InetAddress;
 import java.util.Enumeration;
 
 import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoWSD;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private static final int PORT = 12345;
+    private static final long JOB_RESPONSE_TIMEOUT_MS = 30000; // ⏳ Espera máxima de la respuesta HTTP
     
     private PrintServer server;
     private UsbPrinterManager usbPrinterManager; // ⚠️ Deprecado - usar pos3nStarPrinter
     private POS3nStarPrinter pos3nStarPrinter; // 🎯 SISTEMA PRINCIPAL DE IMPRESIÓN
+    private PrintScheduler printScheduler; // 🗂️ Colas por impresora con carriles de prioridad
+    private PrinterProfileStore printerProfileStore; // 🔎 Perfiles sondeados por VID/PID/serie
+    private PrintRouter printRouter; // 🧭 Reglas por estación (parrilla, bar...) → impresora
+    private PrinterStatusMonitor printerStatusMonitor; // 🚦 Papel/tapa/errores con pausa automática
+    private BridgeAdvertiser bridgeAdvertiser; // 📣 Anuncio mDNS _gridpos-print._tcp
+    private String advertisedIP; // 🌐 Última IP anunciada (para re-anunciar si cambia)
+    private NetworkWatcher networkWatcher; // 🌐 Cambios de red por callback (sin sondeo periódico)
+    private final List<NetworkPrinterTransport> networkPrinters = new CopyOnWriteArrayList<>(); // 🌐 Impresoras TCP 9100
+    private final Map<String, PrinterStatusMonitor> networkStatusMonitors = new ConcurrentHashMap<>();
     private TextView statusText;
     private TextView logText;
     private TextView ipAddressText;
     private Handler mainHandler;
-    private StringBuilder logBuffer;
+    private final LogRingBuffer logBuffer = new LogRingBuffer(128); // 📝 Log visual sin bloqueos
+    private long logShownUpTo;   // Secuencia ya pintada en logText (solo hilo principal)
+    private int logShownLines;
+    private UiUpdateCoalescer uiUpdates; // 🖼️ Estado, IP, log y toasts agrupados por frame
+    private static final long UI_FLUSH_MS = 100; // Máx. ~10 repintados por segundo
     private ScrollView logScrollView;
     
     // Botones de prueba
@@ -93,14 +115,14 @@ public class MainActivity extends AppCompatActivity {
             
             // Inicializar sistema de log
             mainHandler = new Handler(Looper.getMainLooper());
-            logBuffer = new StringBuilder();
+            uiUpdates = new UiUpdateCoalescer(this, UI_FLUSH_MS);
             initializeLogSystem();
             
             // Mostrar IP local
             updateIPAddress();
             
-            // Iniciar actualización automática de IP
-            startIPUpdateTimer();
+            // Escuchar cambios de red (Wi-Fi, DHCP, cable) para actualizar la IP al instante
+            startNetworkWatcher();
             
             // Inicializar botones de prueba
             initializeTestButtons();
@@ -130,6 +152,27 @@ public class MainActivity extends AppCompatActivity {
                 updateStatus("❌ Error inicializando USB: " + e.getMessage());
             }
             
+            // 🗂️ Inicializar planificador con la cola de la impresora USB
+            printScheduler = new PrintScheduler();
+            printScheduler.addListener(this::onPrintJobStateChanged);
+            PipelineMetrics.addSource(metricsSource);
+            printerProfileStore = new PrinterProfileStore(new File(getFilesDir(), "printer-profiles.json"));
+            printRouter = new PrintRouter(new File(getFilesDir(), "routing.json"));
+            printScheduler.setRouter(printRouter);
+            printScheduler.setPools(printRouter.getPools());
+            if (usbPrinterManager != null) {
+                PrintSpooler usbSpooler = printScheduler.registerPrinter(usbPrinterManager);
+                usbSpooler.setConnectionListener(this::onPrinterConnected);
+                printerStatusMonitor = new PrinterStatusMonitor(usbSpooler);
+                printerStatusMonitor.addListener(this::onPrinterStatusChanged);
+                printerStatusMonitor.start();
+            }
+            initializeNetworkPrinters();
+            applyPrinterCapabilities();
+            
+            // 💾 Journal de trabajos: reencolar lo que quedó pendiente antes de cerrarse
+            initializePrintJournal();
+            
             // 🎯 Inicializar SDK 3nStar 
             try {
                 pos3nStarPrinter = new POS3nStarPrinter(this);
@@ -168,6 +211,11 @@ public class MainActivity extends AppCompatActivity {
             addToLog("✅ Servidor HTTP activo en localhost:" + PORT);
             updateStatus("✅ Servicio de impresión activo en puerto " + PORT + "\n\nEsperando solicitudes de impresión...");
             Log.i(TAG, "Servidor HTTP iniciado en el puerto " + PORT);
+
+            // 📣 Anunciar el puente para que los POS lo encuentren sin escribir la IP
+            bridgeAdvertiser = new BridgeAdvertiser(this, PORT, this::buildAdvertisedTxt);
+            bridgeAdvertiser.start();
+            addToLog("📣 Anunciando " + BridgeAdvertiser.SERVICE_TYPE + " en la red local");
             
         } catch (IOException e) {
             Log.e(TAG, "Error al iniciar el servidor HTTP", e);
@@ -177,15 +225,17 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 📺 Mostrar estado: solo se pinta el último recibido en cada frame
+     */
     private void updateStatus(String message) {
         try {
-            if (mainHandler != null && statusText != null) {
-                mainHandler.post(() -> {
-                    try {
+            UiUpdateCoalescer updates = uiUpdates;
+            if (updates != null && statusText != null) {
+                updates.post("status", () -> {
+                    if (statusText != null) {
                         statusText.setText(message);
                         Log.d(TAG, "Status actualizado: " + message);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error actualizando status UI", e);
                     }
                 });
             } else {
@@ -196,17 +246,14 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 🍞 Toast agrupado: repetidos en la misma ventana se muestran una vez con su cuenta
+     */
     private void showToast(String message) {
         try {
-            if (mainHandler != null) {
-                mainHandler.post(() -> {
-                    try {
-                        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
-                        Log.d(TAG, "Toast mostrado: " + message);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error mostrando toast", e);
-                    }
-                });
+            UiUpdateCoalescer updates = uiUpdates;
+            if (updates != null) {
+                updates.toast(message);
             } else {
                 Log.w(TAG, "No se puede mostrar toast - Handler no inicializado: " + message);
             }
@@ -215,15 +262,313 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    // Clase interna para el servidor HTTP
-    private class PrintServer extends NanoHTTPD {
+    /**
+     * 🌐 Registrar las impresoras de red configuradas en "network_printers"
+     * (lista separada por comas de "host" o "host:puerto"; por defecto el 9100)
+     * Cada una tiene su propia cola y monitor: la conexión se abre al primer trabajo
+     */
+    private void initializeNetworkPrinters() {
+        String configured = prefs != null ? prefs.getString("network_printers", "") : "";
+        setNetworkPrinters(Arrays.asList(configured.split(",")));
+    }
+
+    /**
+     * 🌐 Reemplazar las impresoras de red: registra las nuevas, quita las que ya no están
+     * (sus trabajos pendientes fallan) y deja intactas las que siguen
+     *
+     * @return direcciones "host:puerto" válidas, en el orden recibido
+     */
+    private List<String> setNetworkPrinters(List<String> addresses) {
+        synchronized (networkPrinters) {
+            Map<String, NetworkPrinterTransport> wanted = new LinkedHashMap<>();
+            for (String address : addresses) {
+                NetworkPrinterTransport transport = NetworkPrinterTransport.parse(address);
+                if (transport != null) {
+                    wanted.put(transport.getId(), transport);
+                }
+            }
+
+            for (NetworkPrinterTransport transport : networkPrinters) {
+                if (!wanted.containsKey(transport.getId())) {
+                    PrinterStatusMonitor monitor = networkStatusMonitors.remove(transport.getId());
+                    if (monitor != null) {
+                        monitor.stop();
+                    }
+                    printScheduler.unregisterPrinter(transport.getId());
+                    transport.disconnect();
+                    networkPrinters.remove(transport);
+                    addToLog("🌐 Impresora de red quitada: " + transport.getId());
+                }
+            }
+
+            List<String> registered = new ArrayList<>();
+            for (NetworkPrinterTransport transport : wanted.values()) {
+                registered.add(transport.getHost() + ":" + transport.getPort());
+                if (networkStatusMonitors.containsKey(transport.getId())) {
+                    continue;
+                }
+                PrintSpooler spooler = printScheduler.registerPrinter(transport);
+                spooler.setConnectionListener(this::onPrinterConnected);
+                PrinterStatusMonitor monitor = new PrinterStatusMonitor(spooler);
+                monitor.addListener(this::onPrinterStatusChanged);
+                monitor.start();
+                networkPrinters.add(transport);
+                networkStatusMonitors.put(transport.getId(), monitor);
+                addToLog("🌐 Impresora de red registrada: " + transport.getId());
+            }
+            return registered;
+        }
+    }
+
+    /**
+     * 📋 JSON de GET /printers: impresoras de red configuradas y su conexión
+     */
+    private JSONObject buildNetworkPrintersJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONArray printers = new JSONArray();
+            for (NetworkPrinterTransport transport : networkPrinters) {
+                JSONObject printer = new JSONObject();
+                printer.put("id", transport.getId());
+                printer.put("address", transport.getHost() + ":" + transport.getPort());
+                printer.put("connected", transport.isConnected());
+                printers.put(printer);
+            }
+            json.put("network_printers", printers);
+        } catch (Exception e) {
+            Log.w(TAG, "Error armando lista de impresoras de red", e);
+        }
+        return json;
+    }
+
+    /**
+     * 📋 TXT del anuncio mDNS: rutas, capacidades de la impresora por defecto y carga
+     * (la carga va en niveles para no re-anunciar con cada trabajo)
+     */
+    private Map<String, String> buildAdvertisedTxt() {
+        Map<String, String> txt = new HashMap<>();
+        txt.put("v", "1");
+        txt.put("path", "/print");
+        txt.put("ws", JobChannelSocket.PATH);
+        PrintScheduler scheduler = printScheduler;
+        if (scheduler == null) {
+            txt.put("status", "offline");
+            return txt;
+        }
+        PrintSpooler spooler = scheduler.getSpooler(scheduler.getDefaultPrinterId());
+        if (spooler != null) {
+            PrinterCapabilities capabilities = spooler.getCapabilities();
+            List<String> caps = new ArrayList<>();
+            if (capabilities.supportsNativeQr()) {
+                caps.add("qr");
+            }
+            if (capabilities.supportsNativeBarcode()) {
+                caps.add("barcode");
+            }
+            if (capabilities.rendersUnsupportedText()) {
+                caps.add("raster_text");
+            }
+            txt.put("caps", android.text.TextUtils.join(",", caps));
+            // 📐 Papel y puntos por línea del perfil: un modelo solo de 58 mm declara el mismo
+            // ancho en puntos para ambos papeles
+            int paper = capabilities.getDotWidth(80) > capabilities.getDotWidth(58) ? 80 : 58;
+            txt.put("paper", String.valueOf(paper));
+            txt.put("dots", String.valueOf(capabilities.getDotWidth(paper)));
+            txt.put("status", spooler.isPaused() ? "paused"
+                : spooler.isHealthy() ? "ok" : "offline");
+        }
+        txt.put("printers", String.valueOf((usbPrinterManager != null ? 1 : 0) + networkPrinters.size()));
+        int depth = scheduler.getQueueDepth();
+        txt.put("load", depth == 0 ? "idle" : depth <= 3 ? "low" : "busy");
+        return txt;
+    }
+
+    /**
+     * 🧩 Aplicar las capacidades del tipo de impresora seleccionado a cada cola
+     */
+    private void applyPrinterCapabilities() {
+        if (printScheduler == null) {
+            return;
+        }
+        List<PrinterTransport> transports = new ArrayList<>(networkPrinters);
+        if (usbPrinterManager != null) {
+            transports.add(0, usbPrinterManager);
+        }
+        // 🔣 "raster_text": dibujar como imagen el texto sin página de códigos (emoji, CJK)
+        boolean rasterText = prefs != null && prefs.getBoolean("raster_text", false);
+        for (PrinterTransport transport : transports) {
+            PrintSpooler spooler = printScheduler.getSpooler(transport.getId());
+            if (spooler == null) {
+                continue;
+            }
+            PrinterCapabilities capabilities = capabilitiesFor(transport).withRasterText(rasterText);
+            spooler.setCapabilities(capabilities);
+            Log.d(TAG, "🧩 Capacidades de " + transport.getId() + " (" + currentPrinterType.getDisplayName()
+                + "): QR nativo " + (capabilities.supportsNativeQr() ? "sí" : "no")
+                + ", texto como imagen " + (rasterText ? "sí" : "no"));
+        }
+    }
+
+    /**
+     * 🔎 Perfil del tipo elegido; en AUTO, el sondeado para este equipo (si ya existe)
+     */
+    private PrinterCapabilities capabilitiesFor(PrinterTransport transport) {
+        if (currentPrinterType != PrinterType.AUTO || printerProfileStore == null || !transport.isConnected()) {
+            return PrinterCapabilities.forType(currentPrinterType);
+        }
+        PrinterProbe.Result probe = printerProfileStore.get(transport.getDeviceKey());
+        return probe != null ? probe.toCapabilities() : PrinterCapabilities.DEFAULT;
+    }
+
+    /**
+     * 🔗 Impresora conectada (hilo de la cola): en AUTO se sondea una sola vez por equipo
+     */
+    private void onPrinterConnected(PrinterTransport transport) {
+        if (currentPrinterType != PrinterType.AUTO || printerProfileStore == null) {
+            return;
+        }
+        String deviceKey = transport.getDeviceKey();
+        if (printerProfileStore.get(deviceKey) == null) {
+            PrinterProbe.Result probe = PrinterProbe.probe(transport);
+            printerProfileStore.put(deviceKey, probe);
+            addToLog("🔎 Impresora detectada: " + probe.describe());
+        }
+        applyPrinterCapabilities();
+    }
+
+    /**
+     * 🚦 Reflejar en la UI los cambios de estado físico de la impresora
+     */
+    private void onPrinterStatusChanged(PrinterStatusMonitor monitor, PrinterStatus status) {
+        if (!status.isKnown()) {
+            return;
+        }
+        String reason = status.getBlockingReason();
+        if (reason != null) {
+            updateStatus("⏸️ Impresión en pausa: " + reason);
+            addToLog("⏸️ Impresora: " + reason + " - la cola se reanudará sola");
+        } else if (status.isPaperNearEnd()) {
+            addToLog("📄 Papel por terminarse");
+        } else {
+            addToLog("▶️ Impresora lista");
+        }
+    }
+
+    /**
+     * 📈 Colas y cachés para GET /metrics (se leen solo al exportar)
+     */
+    private final PipelineMetrics.Source metricsSource = out -> {
+        PrintScheduler scheduler = printScheduler;
+        if (scheduler != null) {
+            scheduler.collectMetrics(out);
+        }
+        JSONObject qr = QRCodeCache.toStatusJson();
+        out.put("qr_cache_entries", qr.optLong("entries"));
+        out.put("qr_cache_bytes", qr.optLong("bytes"));
+        out.put("qr_cache_hits_total", qr.optLong("hits"));
+        out.put("qr_cache_misses_total", qr.optLong("misses"));
+        JSONObject glyphs = GlyphRasterizer.getInstance().toStatusJson();
+        out.put("glyph_cache_entries", glyphs.optLong("glyphs"));
+        out.put("glyph_cache_hits_total", glyphs.optLong("hits"));
+        out.put("glyph_cache_misses_total", glyphs.optLong("misses"));
+    };
+
+    /**
+     * 🚦 JSON de GET /status: estado del monitor y perfil sondeado del equipo
+     */
+    private JSONObject buildPrinterStatusJson() {
+        JSONObject status = printerStatusMonitor != null ? printerStatusMonitor.toStatusJson() : new JSONObject();
+        try {
+            status.put("printer_type", currentPrinterType.getDisplayName());
+            if (printerProfileStore != null && usbPrinterManager != null && usbPrinterManager.isConnected()) {
+                PrinterProbe.Result probe = printerProfileStore.get(usbPrinterManager.getDeviceKey());
+                status.put("probe", probe != null ? probe.toJson() : JSONObject.NULL);
+            }
+            JSONArray network = new JSONArray();
+            for (PrinterStatusMonitor monitor : networkStatusMonitors.values()) {
+                network.put(monitor.toStatusJson());
+            }
+            status.put("network_printers", network);
+        } catch (Exception e) {
+            Log.w(TAG, "Error armando estado de la impresora", e);
+        }
+        return status;
+    }
+
+    /**
+     * 💾 Abrir el journal persistente y reencolar los trabajos no terminados
+     */
+    private void initializePrintJournal() {
+        try {
+            PrintJournal.FsyncPolicy fsyncPolicy = PrintJournal.FsyncPolicy.fromString(
+                prefs != null ? prefs.getString("journal_fsync", "BATCH") : "BATCH");
+            PrintJournal journal = new PrintJournal(new File(getFilesDir(), "print-journal.bin"), fsyncPolicy);
+            List<PrintJob> pendingJobs = journal.replay();
+            printScheduler.setJournal(journal);
+
+            for (PrintJob job : pendingJobs) {
+                printScheduler.submit(job);
+            }
+            if (!pendingJobs.isEmpty()) {
+                addToLog("💾 Reencolados " + pendingJobs.size() + " trabajos pendientes del journal");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error abriendo journal de impresión", e);
+            addToLog("⚠️ Journal no disponible: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 📡 Reflejar en la UI el estado de los trabajos de la cola
+     */
+    private void onPrintJobStateChanged(PrintJob job, PrintJob.State state, String message) {
+        BridgeAdvertiser advertiser = bridgeAdvertiser;
+        if (advertiser != null && (state == PrintJob.State.QUEUED || state.isFinal()
+            || state == PrintJob.State.PAPER_OUT)) {
+            advertiser.refreshTxt();
+        }
+        switch (state) {
+            case SENDING:
+                updateStatus("🖨️ Imprimiendo...");
+                break;
+            case PRINTED:
+                updateStatus("✅ Impresión completada exitosamente!\n\nEsperando siguiente solicitud...");
+                addToLog("✅ Trabajo " + job.getId() + " impreso");
+                break;
+            case FAILED:
+                updateStatus("❌ Error de impresión: " + message);
+                addToLog("❌ Trabajo " + job.getId() + " falló: " + message);
+                showToast("Error al enviar datos a la impresora");
+                break;
+            case PAPER_OUT:
+                updateStatus("📄 Impresora sin papel");
+                addToLog("📄 Trabajo " + job.getId() + " en espera: sin papel");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Clase interna para el servidor HTTP (+ canal WebSocket en /ws)
+    private class PrintServer extends NanoWSD {
         
         public PrintServer() {
             super(PORT);
         }
 
         @Override
-        public Response serve(IHTTPSession session) {
+        protected boolean isWebsocketRequested(IHTTPSession session) {
+            return JobChannelSocket.PATH.equals(session.getUri()) && super.isWebsocketRequested(session);
+        }
+
+        @Override
+        protected WebSocket openWebSocket(IHTTPSession handshake) {
+            addToLog("🔌 Nuevo canal WebSocket desde " + handshake.getRemoteIpAddress());
+            return new JobChannelSocket(handshake, printScheduler);
+        }
+
+        @Override
+        protected Response serveHttp(IHTTPSession session) {
             Log.d(TAG, "Solicitud recibida: " + session.getMethod() + " " + session.getUri());
             
             // Configurar headers CORS para permitir peticiones desde el navegador
@@ -237,35 +582,195 @@ public class MainActivity extends AppCompatActivity {
                 // Manejar solicitud de impresión
                 response = handlePrintRequest(session);
                 
+            } else if (Method.GET.equals(session.getMethod()) && "/queue".equalsIgnoreCase(session.getUri())) {
+                // 📊 Profundidad de colas por impresora y carril
+                response = newFixedLengthResponse(Response.Status.OK, "application/json",
+                    printScheduler.toStatusJson().toString());
+                
+            } else if ("/routing".equalsIgnoreCase(session.getUri())) {
+                // 🧭 Reglas de enrutamiento por estación (GET consulta, POST reemplaza)
+                response = handleRoutingRequest(session);
+                
+            } else if ("/printers".equalsIgnoreCase(session.getUri())) {
+                // 🌐 Impresoras de red TCP 9100 (GET consulta, POST reemplaza la lista)
+                response = handlePrintersRequest(session);
+                
+            } else if (Method.GET.equals(session.getMethod()) && "/status".equalsIgnoreCase(session.getUri())) {
+                // 🚦 Estado físico de la impresora (papel, tapa, errores) y pausa de la cola
+                response = newFixedLengthResponse(Response.Status.OK, "application/json",
+                    buildPrinterStatusJson().toString());
+                
+            } else if (Method.GET.equals(session.getMethod()) && session.getUri().startsWith("/jobs/")) {
+                // 🕒 Línea de tiempo de un trabajo o de los últimos N (Chrome trace)
+                response = handleTraceRequest(session);
+                
+            } else if (Method.GET.equals(session.getMethod()) && "/metrics".equalsIgnoreCase(session.getUri())) {
+                // 📈 Latencias por etapa, contadores y colas (Prometheus; ?format=json para JSON)
+                response = handleMetricsRequest(session);
+                
             } else {
                 // Otras rutas
                 response = newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain", 
-                    "Ruta no encontrada. Use POST /print para imprimir.");
+                    "Ruta no encontrada. Use POST /print para imprimir, GET /queue para ver las colas, GET /status para el estado de la impresora, GET /metrics para las métricas, GET /jobs/{id}/trace para la traza de un trabajo o GET/POST /routing para las reglas por estación o GET/POST /printers para las impresoras de red.");
             }
             
             // Agregar headers CORS
             response.addHeader("Access-Control-Allow-Origin", "*");
-            response.addHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
-            response.addHeader("Access-Control-Allow-Headers", "Content-Type");
+            response.addHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+            response.addHeader("Access-Control-Allow-Headers", "Content-Type, Content-Encoding, X-Raster-Width, X-Paper-Width");
             
             return response;
         }
 
+        /**
+         * 🕒 GET /jobs/{id}/trace: etapas del trabajo en JSON
+         * GET /jobs/traces?last=N: últimos N trabajos en formato Chrome trace-event
+         */
+        private Response handleTraceRequest(IHTTPSession session) {
+            String[] path = session.getUri().split("/");
+            if (path.length == 3 && "traces".equals(path[2])) {
+                int last = 50;
+                try {
+                    String param = getQueryParameter(session, "last");
+                    if (param != null) {
+                        last = Math.max(1, Integer.parseInt(param));
+                    }
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Parámetro last inválido", e);
+                }
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    JobTraceStore.toChromeTrace(last).toString());
+            }
+            JobTrace trace = path.length == 4 && "trace".equals(path[3]) ? JobTraceStore.get(path[2]) : null;
+            if (trace == null) {
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain",
+                    "Traza no encontrada. Use GET /jobs/{id}/trace o GET /jobs/traces?last=N");
+            }
+            return newFixedLengthResponse(Response.Status.OK, "application/json", trace.toJson().toString());
+        }
+
+        /**
+         * 🔎 Primer valor de un parámetro de la query (null si no viene)
+         */
+        private String getQueryParameter(IHTTPSession session, String name) {
+            List<String> values = session.getParameters().get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        /**
+         * 📈 Métricas en texto de Prometheus, o en JSON con ?format=json o Accept: application/json
+         */
+        private Response handleMetricsRequest(IHTTPSession session) {
+            String format = getQueryParameter(session, "format");
+            String accept = session.getHeaders().get("accept");
+            if ("json".equalsIgnoreCase(format)
+                || (format == null && accept != null && accept.contains("application/json"))) {
+                JSONObject metrics = PipelineMetrics.toJson();
+                try {
+                    metrics.put("queues", printScheduler.toStatusJson());
+                    metrics.put("qr_cache", QRCodeCache.toStatusJson());
+                    metrics.put("glyph_cache", GlyphRasterizer.getInstance().toStatusJson());
+                } catch (Exception e) {
+                    Log.w(TAG, "Error armando métricas", e);
+                }
+                return newFixedLengthResponse(Response.Status.OK, "application/json", metrics.toString());
+            }
+            return newFixedLengthResponse(Response.Status.OK, "text/plain; version=0.0.4; charset=utf-8",
+                PipelineMetrics.toPrometheus());
+        }
+
+        /**
+         * 🧭 GET devuelve las reglas de enrutamiento y grupos, POST los reemplaza
+         */
+        private Response handleRoutingRequest(IHTTPSession session) {
+            try {
+                if (Method.POST.equals(session.getMethod())) {
+                    printRouter.setConfig(new JSONObject(RequestBodyReader.readText(session)));
+                    printScheduler.setPools(printRouter.getPools());
+                    addToLog("🧭 Reglas de enrutamiento actualizadas");
+                }
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    printRouter.toJson().toString());
+            } catch (RequestBodyReader.BodyTooLargeException e) {
+                return newBodyTooLargeResponse(e);
+            } catch (RequestBodyReader.LengthRequiredException e) {
+                return newLengthRequiredResponse(e);
+            } catch (Exception e) {
+                Log.w(TAG, "Reglas de enrutamiento inválidas", e);
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "text/plain",
+                    "Reglas de enrutamiento inválidas: " + e.getMessage());
+            }
+        }
+
+        /**
+         * 🌐 GET devuelve las impresoras de red; POST {"network_printers": ["192.168.1.50", "cocina.local:9100"]}
+         * reemplaza la lista, la guarda en preferencias y registra/quita las colas en caliente.
+         * Cada impresora queda disponible para /routing con su id "tcp:host:puerto".
+         */
+        private Response handlePrintersRequest(IHTTPSession session) {
+            try {
+                if (Method.POST.equals(session.getMethod())) {
+                    JSONArray addresses = new JSONObject(RequestBodyReader.readText(session))
+                        .getJSONArray("network_printers");
+                    List<String> requested = new ArrayList<>();
+                    for (int i = 0; i < addresses.length(); i++) {
+                        requested.add(addresses.getString(i));
+                    }
+                    List<String> registered = setNetworkPrinters(requested);
+                    if (prefs != null) {
+                        prefs.edit().putString("network_printers",
+                            android.text.TextUtils.join(",", registered)).apply();
+                    }
+                    applyPrinterCapabilities();
+                    BridgeAdvertiser advertiser = bridgeAdvertiser;
+                    if (advertiser != null) {
+                        advertiser.refreshTxt();
+                    }
+                    addToLog("🌐 Impresoras de red actualizadas (" + registered.size() + ")");
+                }
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    buildNetworkPrintersJson().toString());
+            } catch (RequestBodyReader.BodyTooLargeException e) {
+                return newBodyTooLargeResponse(e);
+            } catch (RequestBodyReader.LengthRequiredException e) {
+                return newLengthRequiredResponse(e);
+            } catch (Exception e) {
+                Log.w(TAG, "Lista de impresoras de red inválida", e);
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "text/plain",
+                    "Lista de impresoras de red inválida: " + e.getMessage());
+            }
+        }
+
         private Response handlePrintRequest(IHTTPSession session) {
             try {
+                long startNanos = System.nanoTime();
+                PipelineMetrics.increment("print_requests_total");
                 updateStatus("📄 Procesando solicitud de impresión...");
-                
+
+                // ⚫⚪ Raster 1-bit empaquetado: se envía directo sin BitmapFactory
+                if (MonoRasterImage.isMonoRaster(session.getHeaders().get("content-type"))) {
+                    return handleMonoRasterRequest(session, startNanos);
+                }
+
+                String base64Image = null;
+
+                // 📦 Cuerpo comprimido (gzip/deflate): descomprimir en streaming
+                if (RequestBodyReader.isCompressed(session)) {
+                    base64Image = RequestBodyReader.readText(session);
+                    Log.d(TAG, "Datos obtenidos desde cuerpo comprimido");
+                }
+
                 // Leer el cuerpo de la petición
                 HashMap<String, String> files = new HashMap<>();
-                
-                try {
-                    session.parseBody(files);
-                } catch (Exception e) {
-                    Log.w(TAG, "Error parseando body, intentando leer directamente", e);
+
+                if (base64Image == null) {
+                    try {
+                        session.parseBody(files);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Error parseando body, intentando leer directamente", e);
+                    }
                 }
-                
-                String base64Image = null;
-                
+
                 // Método 1: Intentar obtener desde postData
                 if (files.containsKey("postData")) {
                     base64Image = files.get("postData");
@@ -320,14 +825,21 @@ public class MainActivity extends AppCompatActivity {
 
                 // Verificar si los datos son JSON (orden) o Base64 (imagen)
                 base64Image = base64Image.trim();
+                long bodyReadNanos = System.nanoTime();
+                PipelineMetrics.stage(PipelineMetrics.BODY_READ).record(bodyReadNanos - startNanos);
                 
                 if (isJsonData(base64Image)) {
                     // 📄 DETECTAR TIPO DE JSON: ORDEN O FACTURA
-                    return handleJsonRequest(base64Image);
+                    return handleJsonRequest(base64Image, startNanos, bodyReadNanos);
                 } else {
                     // 🖼️ PROCESAR COMO IMAGEN BASE64
-                    return handleImageRequest(base64Image);
+                    return handleImageRequest(base64Image,
+                        parsePaperWidth(session, PrintJob.IMAGE_PAPER_WIDTH), startNanos, bodyReadNanos);
                 }
+            } catch (RequestBodyReader.BodyTooLargeException e) {
+                return newBodyTooLargeResponse(e);
+            } catch (RequestBodyReader.LengthRequiredException e) {
+                return newLengthRequiredResponse(e);
             } catch (Exception e) {
                 Log.e(TAG, "Error procesando solicitud de impresión", e);
                 updateStatus("❌ Error procesando solicitud: " + e.getMessage());
@@ -337,223 +849,132 @@ public class MainActivity extends AppCompatActivity {
         }
         
         /**
-         * 🎯 Procesar solicitud JSON (detectar tipo: orden o factura)
+         * 🎯 Procesar solicitud JSON (detectar tipo: orden, factura o apertura de caja)
          */
-        private Response handleJsonRequest(String jsonData) {
+        private Response handleJsonRequest(String jsonData, long receivedNanos, long bodyReadNanos) {
+            PrintJob job;
             try {
-                JSONObject data = new JSONObject(jsonData);
-                
-                // Verificar si contiene data_json
-                if (data.has("data_json")) {
-                    JSONObject dataJson = data.getJSONObject("data_json");
-                    
-                    if (dataJson.has("order_data")) {
-                        // 📦 Es una orden
-                        addToLog("📦 Detectado: Datos de orden JSON");
-                        return handleOrderRequest(jsonData);
-                    } else if (dataJson.has("sale_data") || dataJson.has("company_info")) {
-                        // 🧾 Es una factura
-                        addToLog("🧾 Detectado: Datos de factura JSON");
-                        return handleSaleRequest(jsonData);
-                    }
-                }
-                
-                // Fallback: tratar como orden
-                addToLog("📋 Fallback: Tratando como orden");
-                return handleOrderRequest(jsonData);
-                
+                long parseStart = System.nanoTime();
+                job = PrintJob.fromJson(jsonData);
+                PipelineMetrics.record(PipelineMetrics.PARSE, parseStart);
+                traceRequest(job, receivedNanos, bodyReadNanos);
             } catch (Exception e) {
+                PipelineMetrics.increment("parse_errors_total");
                 Log.e(TAG, "Error detectando tipo de JSON", e);
                 addToLog("❌ Error detectando tipo: " + e.getMessage());
-                // Fallback a orden en caso de error
-                return handleOrderRequest(jsonData);
+                updateStatus("❌ Error procesando orden: " + e.getMessage());
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", 
+                    "Error procesando orden: " + e.getMessage());
+            }
+
+            switch (job.getType()) {
+                case SALE:
+                    addToLog("🧾 Detectado: Datos de factura JSON");
+                    updateStatus("🧾 Procesando factura de venta...");
+                    return submitAndAwait(job, "Factura", "Factura impresa correctamente");
+                case DRAWER:
+                    addToLog("💰 Detectado: Apertura de caja");
+                    return submitAndAwait(job, "Apertura de caja", "Caja abierta correctamente");
+                default:
+                    addToLog("📦 Detectado: Datos de orden JSON");
+                    updateStatus("📄 Procesando orden de cocina...");
+                    return submitAndAwait(job, "Orden", "Orden impresa correctamente");
             }
         }
         
         /**
-         * 📄 Procesar solicitud de orden (JSON)
+         * ⏳ Encolar trabajo y esperar su resultado para responder al cliente HTTP
+         * (la reconexión y el reintento los hace la cola de la impresora)
          */
-        private Response handleOrderRequest(String jsonData) {
+        private Response submitAndAwait(PrintJob job, String label, String doneMessage) {
             try {
-                Log.d(TAG, "Procesando orden JSON");
-                addToLog("📄 Recibida orden JSON, procesando...");
-                updateStatus("📄 Procesando orden de cocina...");
-                
-                JSONObject orderData = new JSONObject(jsonData);
-                
-                // Obtener configuración de papel (default 80mm)
-                int paperWidth = 80;
-                try {
-                    JSONObject printSettings = orderData.optJSONObject("print_settings");
-                    if (printSettings != null) {
-                        paperWidth = printSettings.optInt("paper_width", 80);
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "No se pudo obtener paper_width, usando 80mm", e);
+                if (job.getLane() == PrintJob.Lane.BULK) {
+                    addToLog("🔁 " + label + ": encolado como reimpresión");
                 }
-                
-                // Verificar si debe abrir caja
-                boolean openCash = orderData.optBoolean("open_cash", false);
-                
-                // Formatear orden usando OrderPrintFormatter
-                byte[] orderBytes = OrderPrintFormatter.formatOrder(orderData, paperWidth, openCash);
-                
-                if (orderBytes != null && orderBytes.length > 0) {
-                    // Enviar a impresora
-                    if (usbPrinterManager != null && usbPrinterManager.isConnected()) {
-                        try {
-                            usbPrinterManager.sendRawData(orderBytes);
-                            addToLog("✅ Orden de cocina impresa exitosamente");
-                            updateStatus("✅ Orden de cocina impresa correctamente");
-                        } catch (java.io.IOException ioError) {
-                            addToLog("❌ Error imprimiendo orden: " + ioError.getMessage());
-                            updateStatus("❌ Error imprimiendo orden");
-                        }
-                        showToast("✅ Orden impresa!");
-                        
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                            "{\"success\": true, \"message\": \"Orden impresa correctamente\"}");
-                    } else {
-                        addToLog("❌ Impresora no conectada - intentando reconectar...");
-                        updateStatus("⚠️ Impresora no conectada - intentando reconectar...");
-                        
-                        // Intentar reconectar automáticamente
-                        try {
-                            if (usbPrinterManager.connectToPrinter()) {
-                                addToLog("✅ Reconexión exitosa, reintentando impresión...");
-                                
-                                // Reintentar la impresión
-                                try {
-                                    usbPrinterManager.sendRawData(orderBytes);
-                                    addToLog("✅ Orden impresa tras reconexión");
-                                    updateStatus("✅ Orden impresa correctamente");
-                                    showToast("✅ Orden impresa!");
-                                    
-                                    return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                                        "{\"success\": true, \"message\": \"Orden impresa tras reconexión\"}");
-                                } catch (java.io.IOException retryError) {
-                                    addToLog("❌ Error en reintento: " + retryError.getMessage());
-                                }
-                            }
-                        } catch (Exception reconnectError) {
-                            addToLog("❌ Error en reconexión: " + reconnectError.getMessage());
-                        }
-                        
-                        updateStatus("❌ Impresora no conectada");
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                            "{\"success\": false, \"message\": \"Impresora no conectada. Verifica la conexión USB.\"}");
-                    }
-                } else {
-                    updateStatus("❌ Error formateando orden");
-                    return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                        "{\"success\": false, \"message\": \"Error formateando orden\"}");
+                List<PrintJob> parts = printScheduler.submitRouted(job);
+                if (parts.size() > 1) {
+                    return awaitRoutedParts(parts, label, doneMessage);
                 }
-                
+                job = parts.get(0);
+
+                if (!job.awaitCompletion(JOB_RESPONSE_TIMEOUT_MS)) {
+                    // Sigue en cola: el cliente puede seguir el estado por WebSocket
+                    return newJobAcceptedResponse(job, label + " en cola de impresión");
+                }
+
+                if (job.getState() == PrintJob.State.PRINTED) {
+                    addToLog("✅ " + doneMessage);
+                    showToast("✅ " + doneMessage);
+                    return newJobAcceptedResponse(job, doneMessage);
+                }
+
+                JSONObject body = job.toStatusJson();
+                body.put("success", false);
+                body.put("message", label + ": " + job.getMessage() + ". Verifica la conexión USB.");
+                return newFixedLengthResponse(Response.Status.OK, "application/json", body.toString());
+
             } catch (Exception e) {
-                Log.e(TAG, "Error procesando orden JSON", e);
-                updateStatus("❌ Error procesando orden: " + e.getMessage());
+                Log.e(TAG, "Error procesando " + label, e);
+                updateStatus("❌ Error procesando " + label.toLowerCase() + ": " + e.getMessage());
                 return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", 
-                    "Error procesando orden: " + e.getMessage());
+                    "Error procesando " + label.toLowerCase() + ": " + e.getMessage());
             }
         }
         
         /**
-         * 🧾 Procesar solicitud de factura (JSON)
+         * 🧭 Esperar las partes de una orden repartida entre impresoras (se imprimen en
+         * paralelo) y responder con el resultado de cada una
          */
-        private Response handleSaleRequest(String jsonData) {
-            try {
-                Log.d(TAG, "Procesando factura JSON");
-                addToLog("🧾 Recibida factura JSON, procesando...");
-                updateStatus("🧾 Procesando factura de venta...");
-                
-                JSONObject saleData = new JSONObject(jsonData);
-                
-                // Obtener configuración de papel (default 80mm)
-                int paperWidth = 80;
+        private Response awaitRoutedParts(List<PrintJob> parts, String label, String doneMessage) throws Exception {
+            addToLog("🧭 " + label + " repartida en " + parts.size() + " impresoras");
+            long deadline = System.currentTimeMillis() + JOB_RESPONSE_TIMEOUT_MS;
+            boolean finished = true;
+            boolean printed = true;
+            JSONArray results = new JSONArray();
+            for (PrintJob part : parts) {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                finished &= part.awaitCompletion(remaining);
+                printed &= part.getState() == PrintJob.State.PRINTED;
+                results.put(part.toStatusJson());
+            }
+
+            JSONObject body = new JSONObject();
+            body.put("success", printed || !finished);
+            body.put("jobs", results);
+            if (printed) {
+                addToLog("✅ " + doneMessage + " en " + parts.size() + " impresoras");
+                showToast("✅ " + doneMessage);
+                body.put("message", doneMessage);
+            } else if (!finished) {
+                body.put("message", label + " en cola de impresión");
+            } else {
+                body.put("message", label + ": alguna impresora falló, revisa el estado de cada trabajo");
+            }
+            return newFixedLengthResponse(Response.Status.OK, "application/json", body.toString());
+        }
+
+        /**
+         * 📐 Papel destino en mm desde "X-Paper-Width" (58 u 80; otro valor usa el por defecto)
+         */
+        private int parsePaperWidth(IHTTPSession session, int defaultWidth) {
+            String value = session.getHeaders().get("x-paper-width");
+            if (value != null) {
                 try {
-                    paperWidth = saleData.optInt("paper_width", 80);
-                } catch (Exception e) {
-                    Log.w(TAG, "No se pudo obtener paper_width, usando 80mm", e);
-                }
-                
-                // Verificar si debe abrir caja
-                boolean openCash = saleData.optBoolean("open_cash", false);
-                
-                // Obtener datos JSON estructurados
-                String dataJsonString = "";
-                if (saleData.has("data_json")) {
-                    dataJsonString = saleData.getJSONObject("data_json").toString();
-                } else {
-                    // Fallback: usar datos completos
-                    dataJsonString = jsonData;
-                }
-                
-                // Formatear factura usando SalePrintFormatter
-                byte[] saleBytes = SalePrintFormatter.formatSale(dataJsonString, paperWidth, openCash);
-                
-                if (saleBytes != null && saleBytes.length > 0) {
-                    // Enviar a impresora
-                    if (usbPrinterManager != null && usbPrinterManager.isConnected()) {
-                        try {
-                            usbPrinterManager.sendRawData(saleBytes);
-                            addToLog("✅ Factura impresa exitosamente");
-                            updateStatus("✅ Factura impresa correctamente");
-                        } catch (java.io.IOException ioError) {
-                            addToLog("❌ Error imprimiendo factura: " + ioError.getMessage());
-                            updateStatus("❌ Error imprimiendo factura");
-                        }
-                        showToast("✅ Factura impresa!");
-                        
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                            "{\"success\": true, \"message\": \"Factura impresa correctamente\"}");
-                    } else {
-                        addToLog("❌ Impresora no conectada - intentando reconectar...");
-                        updateStatus("⚠️ Impresora no conectada - intentando reconectar...");
-                        
-                        // Intentar reconectar automáticamente
-                        try {
-                            if (usbPrinterManager.connectToPrinter()) {
-                                addToLog("✅ Reconexión exitosa, reintentando impresión...");
-                                
-                                // Reintentar la impresión
-                                try {
-                                    usbPrinterManager.sendRawData(saleBytes);
-                                    addToLog("✅ Factura impresa tras reconexión");
-                                    updateStatus("✅ Factura impresa correctamente");
-                                    showToast("✅ Factura impresa!");
-                                    
-                                    return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                                        "{\"success\": true, \"message\": \"Factura impresa tras reconexión\"}");
-                                } catch (java.io.IOException retryError) {
-                                    addToLog("❌ Error en reintento: " + retryError.getMessage());
-                                }
-                            }
-                        } catch (Exception reconnectError) {
-                            addToLog("❌ Error en reconexión: " + reconnectError.getMessage());
-                        }
-                        
-                        updateStatus("❌ Impresora no conectada");
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                            "{\"success\": false, \"message\": \"Impresora no conectada. Verifica la conexión USB.\"}");
+                    int paperWidth = Integer.parseInt(value.trim());
+                    if (paperWidth == 58 || paperWidth == 80) {
+                        return paperWidth;
                     }
-                } else {
-                    updateStatus("❌ Error formateando factura");
-                    return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                        "{\"success\": false, \"message\": \"Error formateando factura\"}");
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "X-Paper-Width inválido: " + value);
                 }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error procesando factura JSON", e);
-                updateStatus("❌ Error procesando factura: " + e.getMessage());
-                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", 
-                    "Error procesando factura: " + e.getMessage());
             }
+            return defaultWidth;
         }
-        
+
         /**
-         * 🖼️ Procesar solicitud de imagen (Base64)
+         * 🖼️ Procesar solicitud de imagen (Base64) escalada al papel indicado
          */
-        private Response handleImageRequest(String base64Image) {
+        private Response handleImageRequest(String base64Image, int paperWidth, long receivedNanos, long bodyReadNanos) {
             try {
                 Log.d(TAG, "Procesando imagen Base64");
                 addToLog("🖼️ Recibida imagen Base64, procesando...");
@@ -567,39 +988,117 @@ public class MainActivity extends AppCompatActivity {
                 // Decodificar la imagen
                 byte[] decodedBytes;
                 try {
+                    long parseStart = System.nanoTime();
                     decodedBytes = Base64.decode(base64Image, Base64.DEFAULT);
+                    PipelineMetrics.record(PipelineMetrics.PARSE, parseStart);
                 } catch (IllegalArgumentException e) {
+                    PipelineMetrics.increment("parse_errors_total");
                     Log.e(TAG, "Error decodificando Base64", e);
                     updateStatus("❌ Error: Datos Base64 inválidos");
                     return newFixedLengthResponse(Response.Status.BAD_REQUEST, "text/plain", 
                         "Error: Los datos Base64 no son válidos.");
                 }
 
-                Bitmap bitmap = BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+                // Encolar: la decodificación y conversión se hacen en el hilo de la cola
+                PrintJob job = PrintJob.image(decodedBytes, paperWidth);
+                traceRequest(job, receivedNanos, bodyReadNanos);
 
-                if (bitmap != null) {
-                    // Procesar la impresión en un hilo separado
-                    new Thread(() -> printImageAsync(bitmap)).start();
-                    
-                    updateStatus("✅ Imagen recibida y enviada a impresora\n\nEsperando siguiente solicitud...");
-                    return newFixedLengthResponse(Response.Status.OK, "application/json", 
-                        "{\"success\": true, \"message\": \"Imagen enviada a la impresora exitosamente\"}");
-                    
-                } else {
-                    Log.e(TAG, "No se pudo decodificar la imagen");
-                    updateStatus("❌ Error: No se pudo procesar la imagen");
-                    return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", 
-                        "Error: No se pudo procesar la imagen recibida.");
-                }
+                updateStatus("✅ Imagen recibida y encolada\n\nEsperando siguiente solicitud...");
+                return submitAndAwait(job, "Imagen", "Imagen impresa correctamente");
 
             } catch (Exception e) {
                 Log.e(TAG, "Error procesando la petición de impresión", e);
                 updateStatus("❌ Error interno: " + e.getMessage());
-                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", 
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain",
                     "Error interno del servidor: " + e.getMessage());
             }
         }
 
+        /**
+         * ⚫⚪ Procesar imagen raster 1-bit empaquetada (image/x-mono-raster)
+         */
+        private Response handleMonoRasterRequest(IHTTPSession session, long receivedNanos) {
+            try {
+                long startNanos = System.nanoTime();
+                int width = MonoRasterImage.parseWidth(session.getHeaders());
+                byte[] packed = RequestBodyReader.readBytes(session);
+                long bodyReadNanos = System.nanoTime();
+                PipelineMetrics.stage(PipelineMetrics.BODY_READ).record(bodyReadNanos - startNanos);
+                addToLog("⚫⚪ Recibido raster 1-bit: " + packed.length + " bytes, ancho " + width);
+
+                MonoRasterImage image;
+                try {
+                    image = MonoRasterImage.fromPacked(packed, width);
+                } catch (IllegalArgumentException e) {
+                    Log.e(TAG, "Raster inválido", e);
+                    updateStatus("❌ Error: Raster inválido");
+                    return newFixedLengthResponse(Response.Status.BAD_REQUEST, "text/plain",
+                        "Error: " + e.getMessage());
+                }
+
+                // El GS v 0 se arma en la cola con el ancho y el corte del perfil de la impresora
+                PrintJob job = PrintJob.monoRaster(image,
+                    parsePaperWidth(session, MonoRasterImage.paperWidthFor(image.getWidth())));
+                traceRequest(job, receivedNanos, bodyReadNanos);
+
+                updateStatus("✅ Raster recibido y encolado\n\nEsperando siguiente solicitud...");
+                return submitAndAwait(job, "Raster", "Raster impreso correctamente");
+
+            } catch (RequestBodyReader.BodyTooLargeException e) {
+                return newBodyTooLargeResponse(e);
+            } catch (RequestBodyReader.LengthRequiredException e) {
+                return newLengthRequiredResponse(e);
+            } catch (Exception e) {
+                Log.e(TAG, "Error procesando raster", e);
+                updateStatus("❌ Error interno: " + e.getMessage());
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain",
+                    "Error interno del servidor: " + e.getMessage());
+            }
+        }
+
+        /**
+         * 🚫 413: cuerpo (descomprimido) demasiado grande
+         */
+        private Response newBodyTooLargeResponse(RequestBodyReader.BodyTooLargeException e) {
+            Log.w(TAG, "Cuerpo rechazado: " + e.getMessage());
+            addToLog("🚫 Solicitud rechazada: " + e.getMessage());
+            updateStatus("❌ " + e.getMessage());
+            return newFixedLengthResponse(Response.Status.PAYLOAD_TOO_LARGE, "text/plain", e.getMessage());
+        }
+
+        /**
+         * 📏 411: cuerpo comprimido sin Content-Length
+         */
+        private Response newLengthRequiredResponse(RequestBodyReader.LengthRequiredException e) {
+            Log.w(TAG, "Cuerpo rechazado: " + e.getMessage());
+            addToLog("🚫 Solicitud rechazada: " + e.getMessage());
+            return newFixedLengthResponse(Response.Status.LENGTH_REQUIRED, "text/plain", e.getMessage());
+        }
+
+        /**
+         * 🕒 Etapas HTTP en la traza del trabajo (el parseo termina al crearlo)
+         */
+        private void traceRequest(PrintJob job, long receivedNanos, long bodyReadNanos) {
+            JobTrace trace = job.getTrace();
+            trace.mark(JobTrace.Stage.RECEIVE, receivedNanos);
+            trace.mark(JobTrace.Stage.BODY_READ, bodyReadNanos);
+            trace.mark(JobTrace.Stage.PARSE);
+        }
+
+        /**
+         * 📋 Respuesta para trabajo encolado (incluye job_id para seguimiento)
+         */
+        private Response newJobAcceptedResponse(PrintJob job, String message) {
+            JSONObject body = job.toStatusJson();
+            try {
+                body.put("success", true);
+                body.put("message", message);
+            } catch (Exception e) {
+                Log.w(TAG, "Error armando respuesta del trabajo", e);
+            }
+            return newFixedLengthResponse(Response.Status.OK, "application/json", body.toString());
+        }
+
         /**
          * 🔍 Verificar si los datos son JSON o Base64
          */
@@ -638,50 +1137,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void printImageAsync(Bitmap bitmap) {
-        try {
-            updateStatus("🔌 Conectando con la impresora...");
-            
-            if (!usbPrinterManager.connectToPrinter()) {
-                updateStatus("❌ Error: Impresora no conectada\n\nVerifica:\n• Cable USB OTG conectado\n• Impresora encendida\n• Permisos USB otorgados");
-                showToast("Error: Impresora no conectada");
-                return;
-            }
-            
-            updateStatus("🖨️ Imprimiendo...");
-            
-            // Convertir imagen a formato ESC/POS
-            byte[] printData = EscPosImageConverter.bitmapToEscPos(bitmap);
-            
-            if (printData.length == 0) {
-                updateStatus("❌ Error al convertir imagen para impresión");
-                showToast("Error al procesar la imagen");
-                return;
-            }
-            
-            // Enviar datos a la impresora
-            usbPrinterManager.printBytes(printData);
-            
-            updateStatus("✅ Impresión completada exitosamente!\n\nEsperando siguiente solicitud...");
-            showToast("Impresión enviada correctamente");
-            
-            Log.i(TAG, "Impresión completada exitosamente");
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Error al imprimir", e);
-            updateStatus("❌ Error de impresión: " + e.getMessage());
-            showToast("Error al enviar datos a la impresora");
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error inesperado durante la impresión", e);
-            updateStatus("❌ Error inesperado: " + e.getMessage());
-            showToast("Error inesperado durante la impresión");
-            
-        } finally {
-            usbPrinterManager.disconnect();
-        }
-    }
-
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -696,6 +1151,32 @@ public class MainActivity extends AppCompatActivity {
         } catch (Exception e) {
             Log.e(TAG, "Error deteniendo servidor", e);
         }
+
+        if (bridgeAdvertiser != null) {
+            bridgeAdvertiser.stop();
+            bridgeAdvertiser = null;
+        }
+
+        if (networkWatcher != null) {
+            networkWatcher.stop();
+            networkWatcher = null;
+        }
+        
+        if (printerStatusMonitor != null) {
+            printerStatusMonitor.stop();
+            printerStatusMonitor = null;
+        }
+        for (PrinterStatusMonitor monitor : networkStatusMonitors.values()) {
+            monitor.stop();
+        }
+        networkStatusMonitors.clear();
+        
+        // Detener las colas de impresión
+        PipelineMetrics.removeSource(metricsSource);
+        if (printScheduler != null) {
+            printScheduler.shutdown();
+            printScheduler = null;
+        }
         
         try {
             // Limpiar recursos USB
@@ -708,6 +1189,10 @@ public class MainActivity extends AppCompatActivity {
         }
         
         // Limpiar handler
+        if (uiUpdates != null) {
+            uiUpdates.stop();
+            uiUpdates = null;
+        }
         mainHandler = null;
         statusText = null;
         
@@ -929,48 +1414,67 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * 📝 Agregar mensaje al log visual
+     * 📝 Agregar mensaje al log visual (desde cualquier hilo, sin bloqueos)
+     * La UI repinta por lotes: solo las líneas nuevas, como mucho cada UI_FLUSH_MS
      */
     private void addToLog(String message) {
         try {
-            String timestamp = new java.text.SimpleDateFormat("HH:mm:ss", java.util.Locale.getDefault()).format(new java.util.Date());
-            String logEntry = timestamp + " " + message + "\n";
-            
-            // Agregar al buffer
-            logBuffer.append(logEntry);
-            
-            // Mantener solo las últimas 100 líneas
-            String[] lines = logBuffer.toString().split("\n");
-            if (lines.length > 100) {
-                logBuffer = new StringBuilder();
-                for (int i = lines.length - 100; i < lines.length; i++) {
-                    logBuffer.append(lines[i]).append("\n");
-                }
-            }
-            
-            // Actualizar UI en el hilo principal
-            if (mainHandler != null && logText != null) {
-                mainHandler.post(() -> {
-                    try {
-                        logText.setText(logBuffer.toString());
-                        // Scroll automático hacia abajo
-                        logScrollView = (ScrollView) logText.getParent();
-                        if (logScrollView != null) {
-                            logScrollView.post(() -> logScrollView.fullScroll(ScrollView.FOCUS_DOWN));
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error actualizando log visual", e);
-                    }
-                });
-            }
-            
+            int level = message.startsWith("❌") ? LogRingBuffer.ERROR
+                : message.startsWith("⚠️") ? LogRingBuffer.WARN : LogRingBuffer.INFO;
+            logBuffer.add(level, message);
+            scheduleLogFlush();
+
             // También enviar al logcat para debug
             Log.d(TAG, "LOG: " + message);
-            
         } catch (Exception e) {
             Log.e(TAG, "Error agregando al log", e);
         }
     }
+
+    private void scheduleLogFlush() {
+        UiUpdateCoalescer updates = uiUpdates;
+        if (updates != null) {
+            updates.post("log", flushLogTask);
+        }
+    }
+
+    /**
+     * 🖼️ Pintar en logText lo nuevo del buffer (hilo principal)
+     */
+    private final Runnable flushLogTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                if (logText == null) {
+                    return;
+                }
+                StringBuilder delta = new StringBuilder();
+                long from = logShownUpTo;
+                logShownUpTo = logBuffer.drainTo(from, delta);
+                int added = (int) Math.min(logShownUpTo - from, logBuffer.getCapacity());
+                if (added <= 0) {
+                    return;
+                }
+                if (logShownLines + added > logBuffer.getCapacity() * 2) {
+                    // Recortar: repintar solo lo que conserva el buffer
+                    StringBuilder snapshot = new StringBuilder();
+                    logBuffer.drainTo(0, snapshot);
+                    logText.setText(snapshot);
+                    logShownLines = logBuffer.getCapacity();
+                } else {
+                    logText.append(delta);
+                    logShownLines += added;
+                }
+                // Scroll automático hacia abajo (una vez por lote)
+                logScrollView = (ScrollView) logText.getParent();
+                if (logScrollView != null) {
+                    logScrollView.post(() -> logScrollView.fullScroll(ScrollView.FOCUS_DOWN));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error actualizando log visual", e);
+            }
+        }
+    };
     
     /**
      * 📱 Prueba de impresión de código QR
@@ -1133,6 +1637,12 @@ public class MainActivity extends AppCompatActivity {
                     mainHandler.post(() -> {
                         try {
                             if (usbPrinterManager != null && usbPrinterManager.connectToPrinter()) {
+                                PrintSpooler spooler = printScheduler != null
+                                    ? printScheduler.getSpooler(usbPrinterManager.getId()) : null;
+                                if (spooler != null) {
+                                    // Reconexión manual: cerrar el circuito sin esperar la prueba
+                                    spooler.getCircuitBreaker().recordSuccess();
+                                }
                                 addToLog("✅ Impresora reconectada exitosamente");
                                 updateStatus("✅ Impresora USB conectada");
                                 showToast("✅ Impresora conectada!");
@@ -1167,7 +1677,15 @@ public class MainActivity extends AppCompatActivity {
     
     private void clearLog() {
         try {
-            logBuffer = new StringBuilder();
+            logBuffer.clear();
+            if (mainHandler != null) {
+                mainHandler.post(() -> {
+                    if (logText != null) {
+                        logText.setText("");
+                    }
+                    logShownLines = 0;
+                });
+            }
             addToLog("🗑️ Log limpiado");
             addToLog("📱 GridPOS - Puente Impresora v1.0");
             addToLog("💡 Toca el ESTADO para refrescar conexión");
@@ -1185,7 +1703,7 @@ public class MainActivity extends AppCompatActivity {
     private void setupIPClickListener() {
         if (ipAddressText != null) {
             ipAddressText.setOnClickListener(v -> {
-                String currentIP = getLocalIPAddress();
+                String currentIP = getCurrentIPAddress();
                 if (currentIP != null) {
                     // Copiar IP al portapapeles
                     ClipboardManager clipboard = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
@@ -1215,37 +1733,45 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * 🌐 Actualizar dirección IP mostrada
+     * 🌐 Actualizar dirección IP mostrada (el log y el anuncio solo cambian si cambió la IP)
      */
     private void updateIPAddress() {
         try {
-            String localIP = getLocalIPAddress();
+            String localIP = getCurrentIPAddress();
             if (localIP != null) {
                 String displayText = "IP: " + localIP;
-                if (ipAddressText != null) {
+                if (ipAddressText != null && uiUpdates != null) {
                     // Actualizar en el hilo principal
-                    mainHandler.post(() -> {
+                    uiUpdates.post("ip", () -> {
                         ipAddressText.setText(displayText);
                         ipAddressText.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
                     });
                 }
-                addToLog("🌐 IP local detectada: " + localIP);
-                addToLog("📡 URL de impresión: http://" + localIP + ":" + PORT + "/print");
-                addToLog("💡 Usa esta IP en tu configuración POS");
+                if (!localIP.equals(advertisedIP)) {
+                    // La red cambió (DHCP, otra Wi-Fi): volver a anunciar con la nueva IP
+                    if (advertisedIP != null && bridgeAdvertiser != null) {
+                        bridgeAdvertiser.onNetworkChanged();
+                    }
+                    advertisedIP = localIP;
+                    addToLog("🌐 IP local detectada: " + localIP);
+                    addToLog("📡 URL de impresión: http://" + localIP + ":" + PORT + "/print");
+                    addToLog("💡 Usa esta IP en tu configuración POS");
+                }
             } else {
-                if (ipAddressText != null) {
-                    mainHandler.post(() -> {
+                if (ipAddressText != null && uiUpdates != null) {
+                    uiUpdates.post("ip", () -> {
                         ipAddressText.setText("IP: Conectando...");
                         ipAddressText.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
                     });
                 }
+                advertisedIP = null;
                 addToLog("⚠️ No se pudo obtener IP local - Verificando conexión...");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error actualizando IP", e);
             addToLog("❌ Error obteniendo IP: " + e.getMessage());
-            if (ipAddressText != null) {
-                mainHandler.post(() -> {
+            if (ipAddressText != null && uiUpdates != null) {
+                uiUpdates.post("ip", () -> {
                     ipAddressText.setText("IP: Error");
                     ipAddressText.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
                 });
@@ -1254,18 +1780,45 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * 🔄 Actualizar IP automáticamente cada 15 segundos
+     * 🌐 Escuchar cambios de red con ConnectivityManager en lugar de consultar cada 15 segundos
      */
-    private void startIPUpdateTimer() {
-        Handler ipHandler = new Handler(Looper.getMainLooper());
-        Runnable ipUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                updateIPAddress();
-                ipHandler.postDelayed(this, 15000); // Actualizar cada 15 segundos
-            }
-        };
-        ipHandler.post(ipUpdateRunnable);
+    private void startNetworkWatcher() {
+        networkWatcher = new NetworkWatcher(this, address -> {
+            if (mainHandler != null) {
+                mainHandler.post(() -> {
+                    updateIPAddress();
+                    if (address != null) {
+                        ensureServerBound();
+                    }
+                });
+            }
+        });
+        networkWatcher.start();
+    }
+
+    /**
+     * 🔁 Volver a levantar el servidor si dejó de escuchar tras el cambio de interfaz
+     * (NanoHTTPD escucha en todas las interfaces, así que normalmente sigue activo)
+     */
+    private void ensureServerBound() {
+        if (server == null || server.isAlive()) {
+            return;
+        }
+        addToLog("🔁 Servidor HTTP caído tras cambio de red, reiniciando...");
+        server.stop();
+        if (bridgeAdvertiser != null) {
+            bridgeAdvertiser.stop();
+            bridgeAdvertiser = null;
+        }
+        startHttpServer();
+    }
+
+    /**
+     * 🌐 IP actual: la del callback de red, o recorriendo las interfaces si aún no llegó
+     */
+    private String getCurrentIPAddress() {
+        String cached = networkWatcher != null ? networkWatcher.getCurrentAddress() : null;
+        return cached != null ? cached : getLocalIPAddress();
     }
     
     /**
@@ -1410,6 +1963,7 @@ public class MainActivity extends AppCompatActivity {
             
             // Actualizar sistema de impresión
             updatePrintingSystem();
+            applyPrinterCapabilities();
             
             // Actualizar UI
             updateSelectedPrinterText();
@@ -1424,27 +1978,11 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    // Add this method to your MainActivity.java
+    /**
+     * 📝 Igual que addToLog (va al mismo buffer y se pinta por lotes)
+     */
     private void updateLog(String message) {
-        // Implement the logic for updating your log here.
-        // This might be similar to addToLog or have different behavior.
-        // For example:
-        if (mainHandler != null && logText != null) {
-            mainHandler.post(() -> {
-                try {
-                    logBuffer.append(message).append("\n");
-                    logText.setText(logBuffer.toString());
-                    if (logScrollView != null) {
-                        logScrollView.fullScroll(View.FOCUS_DOWN);
-                    }
-                    Log.d(TAG, "Log actualizado: " + message);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error actualizando log UI", e);
-                }
-            });
-        } else {
-            Log.w(TAG, "No se puede actualizar log - UI no inicializada: " + message);
-        }
+        addToLog(message);
     }
 
     /**
@@ -0,0 +1,180 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.util.Map;
+
+/**
+ * ⚫⚪ Imagen monocromática empaquetada a 1 bit (image/x-mono-raster)
+ * Formato: filas de ceil(ancho/8) bytes, MSB = píxel izquierdo, bit 1 = negro.
+ * Se envía tal cual con GS v 0, sin pasar por BitmapFactory ni dithering; el ancho
+ * máximo y el corte salen del perfil de la impresora al renderizar en la cola.
+ */
+public class MonoRasterImage {
+    private static final String TAG = "MonoRasterImage";
+
+    public static final String CONTENT_TYPE = "image/x-mono-raster";
+
+    // Comandos ESC/POS (mismos que EscPosImageConverter)
+    private static final byte[] INIT_PRINTER = {0x1B, 0x40}; // ESC @
+    private static final byte[] CENTER_ALIGN = {0x1B, 0x61, 0x01}; // ESC a 1
+    private static final byte[] LEFT_ALIGN = {0x1B, 0x61, 0x00}; // ESC a 0
+
+    // Tope al recibir (80mm a 203 dpi); el límite real es el del perfil al imprimir
+    private static final int MAX_WIDTH_DOTS = 576;
+
+    private final int width;
+    private final int height;
+    private final byte[] rows;
+
+    private MonoRasterImage(int width, int height, byte[] rows) {
+        this.width = width;
+        this.height = height;
+        this.rows = rows;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidthBytes() {
+        return (width + 7) / 8;
+    }
+
+    /**
+     * 🔍 Verificar si el Content-Type corresponde al formato raster empaquetado
+     */
+    public static boolean isMonoRaster(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase().startsWith(CONTENT_TYPE);
+    }
+
+    /**
+     * 📐 Obtener el ancho en puntos desde "X-Raster-Width" o el parámetro width= del Content-Type
+     */
+    public static int parseWidth(Map<String, String> headers) {
+        String width = headers.get("x-raster-width");
+        if (width == null) {
+            String contentType = headers.get("content-type");
+            if (contentType != null) {
+                for (String param : contentType.split(";")) {
+                    String trimmed = param.trim();
+                    if (trimmed.toLowerCase().startsWith("width=")) {
+                        width = trimmed.substring(6);
+                        break;
+                    }
+                }
+            }
+        }
+        if (width == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(width.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "⚠️ Ancho raster inválido: " + width);
+            return -1;
+        }
+    }
+
+    /**
+     * 📐 Papel que se asume si la solicitud no lo indica: hasta 384 puntos cabe en 58 mm
+     */
+    public static int paperWidthFor(int widthDots) {
+        return widthDots <= 384 ? 58 : 80;
+    }
+
+    /**
+     * 🎯 Construir imagen desde los bytes recibidos (la altura se deriva de la longitud)
+     */
+    public static MonoRasterImage fromPacked(byte[] data, int width) {
+        if (data == null || width <= 0) {
+            throw new IllegalArgumentException("Ancho raster no especificado");
+        }
+        if (width > MAX_WIDTH_DOTS) {
+            throw new IllegalArgumentException("Ancho raster excede " + MAX_WIDTH_DOTS + " puntos: " + width);
+        }
+
+        int widthBytes = (width + 7) / 8;
+        if (data.length == 0 || data.length % widthBytes != 0) {
+            throw new IllegalArgumentException("Longitud " + data.length
+                + " no es múltiplo de " + widthBytes + " bytes por fila");
+        }
+
+        int height = data.length / widthBytes;
+        Log.d(TAG, "⚫⚪ Raster recibido: " + width + "x" + height + " (" + data.length + " bytes)");
+        return new MonoRasterImage(width, height, data);
+    }
+
+    /**
+     * 💾 Carga útil del trabajo: ancho en puntos (2 bytes, little-endian) + filas
+     */
+    public byte[] toPayload() {
+        byte[] payload = new byte[2 + rows.length];
+        payload[0] = (byte) (width & 0xFF);
+        payload[1] = (byte) ((width >> 8) & 0xFF);
+        System.arraycopy(rows, 0, payload, 2, rows.length);
+        return payload;
+    }
+
+    /**
+     * 💾 Reconstruir desde toPayload() (trabajo en cola o restaurado del journal)
+     */
+    public static MonoRasterImage fromPayload(byte[] payload) {
+        if (payload == null || payload.length < 2) {
+            throw new IllegalArgumentException("Raster sin datos");
+        }
+        int width = (payload[0] & 0xFF) | ((payload[1] & 0xFF) << 8);
+        byte[] rows = new byte[payload.length - 2];
+        System.arraycopy(payload, 2, rows, 0, rows.length);
+        return fromPacked(rows, width);
+    }
+
+    /**
+     * 🖨️ Generar comandos ESC/POS (GS v 0) con el ancho y el corte del perfil de la impresora
+     *
+     * @param maxWidthDots puntos imprimibles del papel (capabilities.getDotWidth)
+     * @param cutCommand   corte del modelo (capabilities.getCutCommand)
+     */
+    public byte[] toEscPos(int maxWidthDots, byte[] cutCommand) {
+        if (width > maxWidthDots) {
+            throw new IllegalArgumentException("Ancho raster " + width
+                + " excede los " + maxWidthDots + " puntos imprimibles del papel");
+        }
+        int widthBytes = getWidthBytes();
+        byte[] output = new byte[INIT_PRINTER.length + CENTER_ALIGN.length + 8 + rows.length
+            + LEFT_ALIGN.length + 2 + cutCommand.length];
+        int pos = 0;
+
+        pos = put(output, pos, INIT_PRINTER);
+        pos = put(output, pos, CENTER_ALIGN);
+
+        // GS v 0 m xL xH yL yH
+        output[pos++] = 0x1D;
+        output[pos++] = 0x76;
+        output[pos++] = 0x30;
+        output[pos++] = 0x00;
+        output[pos++] = (byte) (widthBytes & 0xFF);
+        output[pos++] = (byte) ((widthBytes >> 8) & 0xFF);
+        output[pos++] = (byte) (height & 0xFF);
+        output[pos++] = (byte) ((height >> 8) & 0xFF);
+
+        System.arraycopy(rows, 0, output, pos, rows.length);
+        pos += rows.length;
+
+        pos = put(output, pos, LEFT_ALIGN);
+        output[pos++] = 0x0A;
+        output[pos++] = 0x0A;
+        put(output, pos, cutCommand);
+
+        return output;
+    }
+
+    private static int put(byte[] output, int pos, byte[] command) {
+        System.arraycopy(command, 0, output, pos, command.length);
+        return pos + command.length;
+    }
+}
@@ -0,0 +1,262 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 🌐 Impresora de red por TCP crudo (puerto 9100, "RAW"/"JetDirect")
+ * Socket NIO no bloqueante con tiempos límite de conexión, escritura y lectura,
+ * y envío por bloques desde un buffer directo: una tablet puede alimentar varias
+ * impresoras de cocina además de la USB. Los reintentos y la espera entre ellos son
+ * de la cola (RetryPolicy + CircuitBreaker en PrintSpooler), no del transporte.
+ * El socket es bidireccional, así que DLE EOT / GS I funcionan igual que por USB.
+ */
+public class NetworkPrinterTransport implements PrinterTransport {
+    private static final String TAG = "NetworkPrinter";
+
+    public static final int DEFAULT_PORT = 9100;
+
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int WRITE_TIMEOUT_MS = 5000; // Igual que el bulkTransfer USB
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final String host;
+    private final int port;
+    private final String id;
+
+    private volatile SocketChannel channel;
+    private Selector selector;
+    private ByteBuffer sendBuffer = ByteBuffer.allocateDirect(DEFAULT_CHUNK_SIZE);
+    private volatile boolean tcpNoDelay = true;
+
+    public NetworkPrinterTransport(String host, int port) {
+        this.host = host;
+        this.port = port > 0 ? port : DEFAULT_PORT;
+        this.id = "tcp:" + host + ":" + this.port;
+    }
+
+    /**
+     * 🔍 Crear desde "host" o "host:puerto" (null si el texto está vacío)
+     */
+    public static NetworkPrinterTransport parse(String address) {
+        if (address == null || address.trim().isEmpty()) {
+            return null;
+        }
+        String value = address.trim();
+        int colon = value.lastIndexOf(':');
+        if (colon > 0 && value.indexOf(':') == colon) {
+            try {
+                return new NetworkPrinterTransport(value.substring(0, colon),
+                    Integer.parseInt(value.substring(colon + 1)));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "⚠️ Puerto inválido en " + value + ", se usa " + DEFAULT_PORT);
+                return new NetworkPrinterTransport(value.substring(0, colon), DEFAULT_PORT);
+            }
+        }
+        return new NetworkPrinterTransport(value, DEFAULT_PORT);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * ⚡ TCP_NODELAY (por defecto activo): los bloques ya salen agrupados desde el buffer,
+     * así que Nagle solo agregaría demora al último paquete de cada segmento
+     */
+    public synchronized void setTcpNoDelay(boolean enabled) {
+        this.tcpNoDelay = enabled;
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.socket().setTcpNoDelay(enabled);
+            } catch (IOException e) {
+                Log.w(TAG, "No se pudo cambiar TCP_NODELAY en " + id, e);
+            }
+        }
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * 🔗 Un solo intento de conexión con tiempo límite; la cola decide cuándo reintentar
+     */
+    @Override
+    public synchronized boolean connect() {
+        if (isConnected()) {
+            return true;
+        }
+        try {
+            open();
+            Log.i(TAG, "✅ Conectado a " + id);
+            return true;
+        } catch (IOException e) {
+            close();
+            Log.w(TAG, "⚠️ No se pudo conectar a " + id + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 🔌 Abrir el socket no bloqueante y esperar el handshake con tiempo límite
+     */
+    private void open() throws IOException {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        // socket() en lugar de setOption: SocketChannel.setOption requiere API 24
+        channel.socket().setTcpNoDelay(tcpNoDelay);
+        channel.socket().setKeepAlive(true);
+        selector = Selector.open();
+
+        if (!channel.connect(new InetSocketAddress(host, port))) {
+            SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+            if (selector.select(CONNECT_TIMEOUT_MS) == 0) {
+                throw new IOException("Tiempo de conexión agotado (" + CONNECT_TIMEOUT_MS + " ms)");
+            }
+            selector.selectedKeys().clear();
+            channel.finishConnect();
+            key.interestOps(0);
+        } else {
+            channel.register(selector, 0);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        SocketChannel current = channel;
+        return current != null && current.isOpen() && current.isConnected();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    /**
+     * ✂️ Enviar un segmento en bloques del buffer directo; retorna cuando el socket aceptó
+     * todos los bytes. Si la impresora deja de recibir se cierra la conexión para que la
+     * cola reconecte y reanude desde el segmento pendiente.
+     */
+    @Override
+    public synchronized void write(byte[] data, int offset, int length) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Impresora de red no conectada: " + id);
+        }
+        try {
+            int end = offset + length;
+            while (offset < end) {
+                int chunk = Math.min(sendBuffer.capacity(), end - offset);
+                sendBuffer.clear();
+                sendBuffer.put(data, offset, chunk);
+                sendBuffer.flip();
+                drain(sendBuffer);
+                offset += chunk;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 📤 Vaciar el buffer esperando OP_WRITE cuando el socket está lleno
+     */
+    private void drain(ByteBuffer buffer) throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) > 0) {
+                continue;
+            }
+            key.interestOps(SelectionKey.OP_WRITE);
+            int ready = selector.select(WRITE_TIMEOUT_MS);
+            selector.selectedKeys().clear();
+            key.interestOps(0);
+            if (ready == 0) {
+                throw new IOException("La impresora no recibe datos (faltan " + buffer.remaining() + " bytes)");
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsRead() {
+        return isConnected();
+    }
+
+    /**
+     * 📥 Leer la respuesta de la impresora (0 si no llegó nada a tiempo)
+     */
+    @Override
+    public synchronized int read(byte[] buffer, int timeoutMs) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Impresora de red no conectada: " + id);
+        }
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        try {
+            int received = channel.read(target);
+            if (received == 0) {
+                SelectionKey key = channel.keyFor(selector);
+                key.interestOps(SelectionKey.OP_READ);
+                int ready = selector.select(Math.max(1, timeoutMs));
+                selector.selectedKeys().clear();
+                key.interestOps(0);
+                received = ready > 0 ? channel.read(target) : 0;
+            }
+            if (received < 0) {
+                throw new IOException("La impresora cerró la conexión: " + id);
+            }
+            return received;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void setMaxChunkSize(int bytes) {
+        int size = Math.max(64, bytes);
+        if (size != sendBuffer.capacity()) {
+            sendBuffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        close();
+        Log.d(TAG, "Conexión de red cerrada: " + id);
+    }
+
+    private void close() {
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error cerrando selector de " + id, e);
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error cerrando socket de " + id, e);
+        }
+        selector = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,133 @@
+package com.gridpos.puenteimpresora;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Log;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 🌐 Seguimiento de la red local con ConnectivityManager.NetworkCallback
+ * Guarda la IP actual y avisa solo cuando cambia (roaming de Wi-Fi, DHCP, cable):
+ * sin trabajo periódico mientras la red no cambia.
+ */
+public class NetworkWatcher {
+    private static final String TAG = "NetworkWatcher";
+
+    /**
+     * 📡 Cambio de dirección (null = sin red local); en el hilo de conectividad
+     */
+    public interface Listener {
+        void onAddressChanged(String address);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    // IPv4 privada de cada red Wi-Fi/Ethernet activa, en orden de llegada
+    private final Map<Network, String> addresses = new LinkedHashMap<>();
+    private volatile String currentAddress;
+    private ConnectivityManager.NetworkCallback callback;
+
+    public NetworkWatcher(Context context, Listener listener) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    /**
+     * ▶️ Registrar el callback; las redes ya conectadas se notifican enseguida
+     * (registerDefaultNetworkCallback requiere API 24, por eso se pide Wi-Fi/Ethernet)
+     */
+    public void start() {
+        if (connectivityManager == null || callback != null) {
+            return;
+        }
+        NetworkRequest request = new NetworkRequest.Builder()
+            .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+            .addTransportType(NetworkCapabilities.TRANSPORT_ETHERNET)
+            .build();
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                update(network, findPrivateIPv4(connectivityManager.getLinkProperties(network)));
+            }
+
+            @Override
+            public void onLinkPropertiesChanged(Network network, LinkProperties properties) {
+                update(network, findPrivateIPv4(properties));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                update(network, null);
+            }
+        };
+        try {
+            connectivityManager.registerNetworkCallback(request, callback);
+            Log.d(TAG, "🌐 Escuchando cambios de red");
+        } catch (Exception e) {
+            callback = null;
+            Log.e(TAG, "❌ No se pudo registrar el callback de red", e);
+        }
+    }
+
+    public void stop() {
+        if (connectivityManager != null && callback != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(callback);
+            } catch (Exception e) {
+                Log.w(TAG, "Error retirando el callback de red", e);
+            }
+        }
+        callback = null;
+    }
+
+    /**
+     * 🌐 IP local actual (sin recorrer las interfaces)
+     */
+    public String getCurrentAddress() {
+        return currentAddress;
+    }
+
+    private void update(Network network, String address) {
+        String next;
+        synchronized (addresses) {
+            if (address != null) {
+                addresses.put(network, address);
+            } else {
+                addresses.remove(network);
+            }
+            next = addresses.isEmpty() ? null : addresses.values().iterator().next();
+        }
+        String previous = currentAddress;
+        if (next == null ? previous == null : next.equals(previous)) {
+            return;
+        }
+        currentAddress = next;
+        Log.i(TAG, "🌐 Dirección local: " + previous + " → " + next);
+        listener.onAddressChanged(next);
+    }
+
+    /**
+     * 🔍 Primera IPv4 privada (10/8, 172.16/12, 192.168/16) de la red
+     */
+    private static String findPrivateIPv4(LinkProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        for (LinkAddress linkAddress : properties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                return address.getHostAddress();
+            }
+        }
+        return null;
+    }
+}
@@ -18,7 +18,6 @@ public class OrderPrintFormatter {
     private static final String TAG = "OrderPrintFormatter";
     
     // Comandos ESC/POS
-    private static final byte[] INITIALIZE = {0x1B, 0x40};
     private static final byte[] JUSTIFY_CENTER = {0x1B, 0x61, 0x01};
     private static final byte[] JUSTIFY_LEFT = {0x1B, 0x61, 0x00};
     private static final byte[] MODE_EMPHASIZED = {0x1B, 0x45, 0x01};
@@ -26,41 +25,37 @@ public class OrderPrintFormatter {
     private static final byte[] MODE_DOUBLE_WIDTH = {0x1B, 0x21, 0x20};
     private static final byte[] MODE_DOUBLE_WIDTH_EMPHASIZED = {0x1B, 0x21, 0x28};
     private static final byte[] FEED_LINE = {0x0A};
-    private static final byte[] CUT_PAPER = {0x1D, 0x56, 0x00};
-    private static final byte[] OPEN_CASH = {0x1B, 0x70, 0x00, 0x19, (byte)0xFA};
-    
-    // 🌍 Configuración para caracteres especiales (ñ, tildes, etc.)
-    private static final byte[] SET_CHARSET_SPAIN = {0x1B, 0x52, 0x0A}; // Página de códigos España
-    private static final byte[] SET_CHARSET_LATIN1 = {0x1C, 0x2E}; // ISO-8859-1 Latin-1
-    
-    // Codificación para caracteres especiales
-    private static final String CHARSET_ENCODING = "ISO-8859-1"; // Latin-1 para caracteres especiales
     
     /**
      * 🎯 Formatear orden completa para impresión - RÉPLICA EXACTA de PrinterController.php
      */
     public static byte[] formatOrder(JSONObject orderData, int paperWidth, boolean openCash) {
+        return formatOrder(orderData, paperWidth, openCash, PrinterCapabilities.DEFAULT);
+    }
+
+    /**
+     * 🎯 Formatear orden según las capacidades de la impresora destino
+     */
+    public static byte[] formatOrder(JSONObject orderData, int paperWidth, boolean openCash,
+                                     PrinterCapabilities capabilities) {
         try {
-            List<Byte> commandList = new ArrayList<>();
+            EscPosWriter writer = new EscPosWriter(capabilities).setPaperWidth(paperWidth);
             boolean isSmallPaper = paperWidth == 58;
             
             Log.d(TAG, "Formateando orden para papel " + paperWidth + "mm (réplica PHP)");
             
             // === INICIALIZAR ===
-            addBytes(commandList, INITIALIZE);
-            
-            // 🌍 Configurar codificación para caracteres especiales (ñ, tildes, etc.)
-            addBytes(commandList, SET_CHARSET_SPAIN);
-            addBytes(commandList, SET_CHARSET_LATIN1);
+            // 🌍 La página de códigos (ñ, tildes, etc.) la elige el writer según el texto
+            writer.initialize();
             
-            addBytes(commandList, JUSTIFY_CENTER);
+            addBytes(writer, JUSTIFY_CENTER);
             
             // === ENCABEZADO - Cliente si existe - Ajustado por tamaño de papel ===
             String clientName = getClientName(orderData);
             if (clientName != null && !clientName.isEmpty()) {
                 if (isSmallPaper) {
                     // 📱 Para papel 58mm: usar solo EMPHASIZED (texto moderado)
-                    addBytes(commandList, MODE_EMPHASIZED);
+                    addBytes(writer, MODE_EMPHASIZED);
                     
                     // Limitar nombre del cliente a 32 caracteres para 58mm
                     String clientNameFormatted;
@@ -69,47 +64,47 @@ public class OrderPrintFormatter {
                     } else {
                         clientNameFormatted = clientName;
                     }
-                    addText(commandList, clientNameFormatted + "\n");
+                    addText(writer, clientNameFormatted + "\n");
                 } else {
                     // 🖨️ Para papel 80mm: texto grande normal
-                    addBytes(commandList, MODE_DOUBLE_WIDTH_EMPHASIZED);
-                    addText(commandList, clientName + "\n");
+                    addBytes(writer, MODE_DOUBLE_WIDTH_EMPHASIZED);
+                    addText(writer, clientName + "\n");
                 }
-                addBytes(commandList, MODE_NORMAL); // Reset
+                addBytes(writer, MODE_NORMAL); // Reset
             }
             
             // Fecha de la orden
             String orderDate = getOrderDate(orderData);
             if (orderDate != null) {
-                addText(commandList, orderDate + "\n");
+                addText(writer, orderDate + "\n");
             }
             
             // Si existe el phone de la empresa, imprimirlo (RÉPLICA PHP)
             String phone = getOrderPhone(orderData);
             if (phone != null && !phone.isEmpty()) {
-                addText(commandList, "CEL: " + phone + "\n");
+                addText(writer, "CEL: " + phone + "\n");
             }
             
             // Agregar la direccion de shipping_address si existe (RÉPLICA PHP)
             String shippingAddress = getShippingAddress(orderData);
             if (shippingAddress != null && !shippingAddress.isEmpty()) {
-                addText(commandList, "DIRECCION: " + shippingAddress + "\n");
+                addText(writer, "DIRECCION: " + shippingAddress + "\n");
             }
             
             // === SEPARADOR GRUESO ===
-            addBytes(commandList, JUSTIFY_LEFT);
+            addBytes(writer, JUSTIFY_LEFT);
             String separator = isSmallPaper ? repeatChar('-', 32) : repeatChar('-', 48);
-            addText(commandList, separator + "\n");
+            addText(writer, separator + "\n");
             
             // ENCABEZADOS DE COLUMNAS - Ajustado para tamaño de papel (RÉPLICA PHP)
-            addBytes(commandList, MODE_EMPHASIZED);
+            addBytes(writer, MODE_EMPHASIZED);
             if (isSmallPaper) {
-                addText(commandList, "CANT  ITEM\n"); // Más compacto para 58mm
+                addText(writer, "CANT  ITEM\n"); // Más compacto para 58mm
             } else {
-                addText(commandList, "CANT     ITEM\n"); // Formato normal para 80mm
+                addText(writer, "CANT     ITEM\n"); // Formato normal para 80mm
             }
-            addBytes(commandList, MODE_NORMAL); // Reset
-            addText(commandList, separator + "\n");
+            addBytes(writer, MODE_NORMAL); // Reset
+            addText(writer, separator + "\n");
             
             // === PRODUCTOS - FORMATO OPTIMIZADO PARA TAMAÑO DE PAPEL (RÉPLICA PHP) ===
             JSONArray products = getProducts(orderData);
@@ -120,61 +115,69 @@ public class OrderPrintFormatter {
                 for (int i = 0; i < productCount; i++) {
                     currentIndex++;
                     JSONObject product = products.getJSONObject(i);
-                    formatProduct(commandList, product, isSmallPaper);
+                    formatProduct(writer, product, isSmallPaper);
                     
                     // Agregar espacio solo si no es el último producto (RÉPLICA PHP)
                     if (currentIndex < productCount) {
-                        addText(commandList, "\n"); // Pequeño espacio entre productos
+                        addText(writer, "\n"); // Pequeño espacio entre productos
                     }
                 }
             }
             
             // === SEPARADOR FINAL ===
-            addText(commandList, separator + "\n");
+            addText(writer, separator + "\n");
             
             // NOTA GENERAL si existe (RÉPLICA PHP)
             String generalNote = getGeneralNote(orderData);
             if (generalNote != null && !generalNote.isEmpty()) {
-                addBytes(commandList, MODE_EMPHASIZED);
-                addText(commandList, "NOTA: " + generalNote.toUpperCase() + "\n");
-                addBytes(commandList, MODE_NORMAL); // Reset
-                addBytes(commandList, FEED_LINE);
+                addBytes(writer, MODE_EMPHASIZED);
+                addText(writer, "NOTA: " + generalNote.toUpperCase() + "\n");
+                addBytes(writer, MODE_NORMAL); // Reset
+                addBytes(writer, FEED_LINE);
             }
             
             // === PIE DE PÁGINA (RÉPLICA EXACTA PHP) ===
             // Usuario que atiende
             String userName = getUserName(orderData);
             if (userName != null) {
-                addText(commandList, "Atendido por: " + userName + "\n");
+                addText(writer, "Atendido por: " + userName + "\n");
             }
             
             // Timestamp de impresión
             String printDate = getPrintDate(orderData);
             if (printDate != null) {
-                addText(commandList, "Impresión: " + printDate + "\n");
+                addText(writer, "Impresión: " + printDate + "\n");
             }
             
             // ID de orden más visible (RÉPLICA PHP)
             String orderIdDisplay = getOrderIdDisplay(orderData);
             if (orderIdDisplay != null) {
-                addBytes(commandList, MODE_EMPHASIZED);
-                addText(commandList, "ORDEN: " + orderIdDisplay + "\n");
-                addBytes(commandList, MODE_NORMAL); // Reset
+                addBytes(writer, MODE_EMPHASIZED);
+                addText(writer, "ORDEN: " + orderIdDisplay + "\n");
+                addBytes(writer, MODE_NORMAL); // Reset
             }
             
-            addBytes(commandList, FEED_LINE);
-            addBytes(commandList, CUT_PAPER);
+            // 📊 Código de barras para escanear en la estación de despacho
+            EscPosBarcode barcode = EscPosBarcode.fromJson(getBarcodeField(orderData), orderIdDisplay);
+            if (barcode != null) {
+                addBytes(writer, JUSTIFY_CENTER);
+                addBytes(writer, barcode.build(capabilities, paperWidth));
+                addBytes(writer, FEED_LINE);
+                addBytes(writer, JUSTIFY_LEFT);
+            }
+            
+            // GS V A/B avanzan por sí mismos hasta la cuchilla
+            if (!capabilities.getCutMode().feedsBeforeCut()) {
+                addBytes(writer, FEED_LINE);
+            }
+            addBytes(writer, capabilities.getCutCommand());
             
             // Abrir caja si se requiere (RÉPLICA PHP)
             if (openCash) {
-                addBytes(commandList, OPEN_CASH);
+                addBytes(writer, capabilities.getDrawerCommand());
             }
             
-            // Convertir lista a array de bytes
-            byte[] result = new byte[commandList.size()];
-            for (int i = 0; i < commandList.size(); i++) {
-                result[i] = commandList.get(i);
-            }
+            byte[] result = writer.toByteArray();
             
             Log.d(TAG, "Orden formateada correctamente, " + result.length + " bytes");
             return result;
@@ -188,7 +191,7 @@ public class OrderPrintFormatter {
     /**
      * 🍕 Formatear producto individual - RÉPLICA EXACTA del PrinterController.php
      */
-    private static void formatProduct(List<Byte> commandList, JSONObject product, boolean isSmallPaper) {
+    private static void formatProduct(EscPosWriter writer, JSONObject product, boolean isSmallPaper) {
         try {
             int qty = product.optInt("quantity", 1);
             String name = product.optString("name", "Producto");
@@ -199,53 +202,53 @@ public class OrderPrintFormatter {
                 String qtyPadded = String.format("%-2s", String.valueOf(qty));
                 
                 // Usar solo EMPHASIZED para 58mm (sin DOUBLE_WIDTH que corta el texto)
-                addBytes(commandList, MODE_EMPHASIZED);
+                addBytes(writer, MODE_EMPHASIZED);
                 
                 // Calcular espacio disponible: 32 chars - 2 qty - 2 espacios = 28 chars para nombre
                 int maxNameChars = 28;
                 String nameFormatted = name.length() > maxNameChars ? 
                     name.substring(0, maxNameChars) : name;
                 
-                addText(commandList, qtyPadded + "  " + nameFormatted.toUpperCase() + "\n");
-                addBytes(commandList, MODE_NORMAL); // Reset
+                addText(writer, qtyPadded + "  " + nameFormatted.toUpperCase() + "\n");
+                addBytes(writer, MODE_NORMAL); // Reset
                 
                 // Si el nombre fue cortado, imprimir el resto en la siguiente línea (RÉPLICA PHP)
                 if (name.length() > maxNameChars) {
                     String remainingName = name.substring(maxNameChars);
-                    addBytes(commandList, MODE_EMPHASIZED);
-                    addText(commandList, "    " + remainingName.toUpperCase() + "\n");
-                    addBytes(commandList, MODE_NORMAL); // Reset
+                    addBytes(writer, MODE_EMPHASIZED);
+                    addText(writer, "    " + remainingName.toUpperCase() + "\n");
+                    addBytes(writer, MODE_NORMAL); // Reset
                 }
             } else {
                 // 🖨️ FORMATO PARA PAPEL 80MM - Texto grande normal (RÉPLICA PHP)
-                addBytes(commandList, MODE_DOUBLE_WIDTH_EMPHASIZED);
+                addBytes(writer, MODE_DOUBLE_WIDTH_EMPHASIZED);
                 String qtyPadded = String.format("%-2s", String.valueOf(qty));
-                addText(commandList, qtyPadded + "  " + name.toUpperCase() + "\n");
-                addBytes(commandList, MODE_NORMAL); // Reset
+                addText(writer, qtyPadded + "  " + name.toUpperCase() + "\n");
+                addBytes(writer, MODE_NORMAL); // Reset
             }
             
             // Notas del producto si existen (ajustadas por tamaño de papel) (RÉPLICA PHP)
             if (notes != null && !notes.isEmpty()) {
-                addBytes(commandList, MODE_EMPHASIZED);
+                addBytes(writer, MODE_EMPHASIZED);
                 
                 if (isSmallPaper) {
                     // Para 58mm: limitar notas a 28 caracteres por línea (RÉPLICA PHP)
                     int maxNoteChars = 28;
                     List<String> noteLines = wordWrapEscPos(notes, maxNoteChars);
                     for (String noteLine : noteLines) {
-                        addText(commandList, "  * " + noteLine.toUpperCase() + "\n");
+                        addText(writer, "  * " + noteLine.toUpperCase() + "\n");
                     }
                 } else {
                     // Para 80mm: formato normal (RÉPLICA PHP)
-                    addText(commandList, "    * " + notes.toUpperCase() + "\n");
+                    addText(writer, "    * " + notes.toUpperCase() + "\n");
                 }
                 
-                addBytes(commandList, MODE_NORMAL); // Reset
+                addBytes(writer, MODE_NORMAL); // Reset
             }
             
         } catch (Exception e) {
             Log.e(TAG, "Error formateando producto", e);
-            addText(commandList, "Error en producto\n");
+            addText(writer, "Error en producto\n");
         }
     }
     
@@ -356,57 +359,13 @@ public class OrderPrintFormatter {
     
     // === MÉTODOS DE UTILIDAD ===
     
-    private static void addBytes(List<Byte> list, byte[] bytes) {
-        for (byte b : bytes) {
-            list.add(b);
-        }
-    }
-    
-    private static void addText(List<Byte> list, String text) {
-        try {
-            // 🌍 Normalizar caracteres especiales antes de enviar a impresora
-            String normalizedText = normalizeSpanishCharacters(text);
-            
-            // Usar codificación Latin-1 para caracteres especiales (ñ, tildes, etc.)
-            byte[] bytes = normalizedText.getBytes(CHARSET_ENCODING);
-            for (byte b : bytes) {
-                list.add(b);
-            }
-            Log.v(TAG, "Texto añadido con codificación " + CHARSET_ENCODING + ": " + normalizedText);
-        } catch (Exception e) {
-            Log.e(TAG, "Error añadiendo texto con caracteres especiales", e);
-            // Fallback a UTF-8 si falla
-            try {
-                String fallbackText = normalizeSpanishCharacters(text);
-                byte[] fallbackBytes = fallbackText.getBytes("UTF-8");
-                for (byte b : fallbackBytes) {
-                    list.add(b);
-                }
-            } catch (Exception fallbackError) {
-                Log.e(TAG, "Error crítico en codificación", fallbackError);
-            }
-        }
+    private static void addBytes(EscPosWriter writer, byte[] bytes) {
+        writer.write(bytes);
     }
     
-    /**
-     * 🌍 Normalizar caracteres especiales del español para impresoras térmicas
-     */
-    private static String normalizeSpanishCharacters(String text) {
-        if (text == null) return "";
-        
-        // Crear una copia para procesar
-        String normalized = text;
-        
-        // Log para debug
-        if (text.matches(".*[ñÑáéíóúüÁÉÍÓÚÜ¿¡].*")) {
-            Log.d(TAG, "Texto con caracteres especiales detectado: " + text);
-        }
-        
-        // Mantener los caracteres especiales tal como están para Latin-1
-        // La codificación Latin-1 debería manejar correctamente:
-        // ñ, Ñ, á, é, í, ó, ú, ü, Á, É, Í, Ó, Ú, Ü, ¿, ¡
-        
-        return normalized;
+    private static void addText(EscPosWriter writer, String text) {
+        // 🌍 Codificación por tabla en la página de códigos activa (ñ, tildes, etc.)
+        writer.text(text);
     }
     
     private static String repeatChar(char c, int times) {
@@ -418,17 +377,10 @@ public class OrderPrintFormatter {
     }
     
     private static byte[] createErrorMessage(String message) {
-        try {
-            String errorText = "ERROR DE IMPRESIÓN\n" + message + "\n\n";
-            // 🌍 Usar codificación Latin-1 para caracteres especiales
-            return errorText.getBytes(CHARSET_ENCODING);
-        } catch (Exception e) {
-            try {
-                return "ERROR CRÍTICO\n\n".getBytes(CHARSET_ENCODING);
-            } catch (Exception fallbackError) {
-                return "ERROR CRITICO\n\n".getBytes();
-            }
-        }
+        return new EscPosWriter(PrinterCapabilities.DEFAULT, 128)
+            .initialize()
+            .text("ERROR DE IMPRESIÓN\n" + message + "\n\n")
+            .toByteArray();
     }
     
     // === EXTRACTORES DE DATOS JSON ===
@@ -588,6 +540,20 @@ public class OrderPrintFormatter {
         }
     }
     
+    /**
+     * 📊 Campo "barcode" en la raíz o dentro de data_json
+     */
+    private static Object getBarcodeField(JSONObject orderData) {
+        Object barcode = orderData.opt("barcode");
+        if (barcode == null) {
+            JSONObject dataJson = orderData.optJSONObject("data_json");
+            if (dataJson != null) {
+                barcode = dataJson.opt("barcode");
+            }
+        }
+        return barcode;
+    }
+    
     /**
      * 🆔 Obtener ID de orden para mostrar - RÉPLICA EXACTA del PrinterController.php
      */
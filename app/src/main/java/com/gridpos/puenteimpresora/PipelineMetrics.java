@@ -0,0 +1,190 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 📈 Métricas del pipeline de impresión (lectura → parseo → formato → conversión → envío)
+ * Un histograma de latencia por etapa, contadores y valores instantáneos (colas, cachés).
+ * Se exportan en GET /metrics como texto de Prometheus o JSON con p50/p90/p99 por etapa.
+ */
+public class PipelineMetrics {
+    private static final String TAG = "PipelineMetrics";
+
+    private static final String PREFIX = "gridpos_";
+
+    // Límites de las cubetas en segundos, sin notación científica ("0.00005")
+    private static final String[] BUCKET_LABELS = new String[LatencyHistogram.BOUNDS_MICROS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_LABELS.length; i++) {
+            BUCKET_LABELS[i] = BigDecimal.valueOf(LatencyHistogram.BOUNDS_MICROS[i], 6)
+                .stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // 🏷️ Etapas medidas
+    public static final String BODY_READ = "body_read";
+    public static final String PARSE = "parse";
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String RENDER = "render";
+    public static final String FORMAT = "format";
+    public static final String DECODE = "decode";
+    public static final String CONVERT = "convert";
+    public static final String DITHER = "dither";
+    public static final String QR = "qr";
+    public static final String TRANSPORT_WRITE = "transport_write";
+    public static final String SEND = "send";
+
+    /**
+     * 📊 Valores leídos al exportar (profundidad de colas, cachés...)
+     * Las claves son series de Prometheus sin prefijo, p. ej. queue_depth{printer="usb"};
+     * las terminadas en _total se exportan como contador
+     */
+    public interface Source {
+        void collect(Map<String, Number> out);
+    }
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private static final List<Source> sources = new CopyOnWriteArrayList<>();
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * ⏱️ Registrar la duración de una etapa iniciada en startNanos (System.nanoTime())
+     */
+    public static void record(String stage, long startNanos) {
+        stage(stage).record(System.nanoTime() - startNanos);
+    }
+
+    public static LatencyHistogram stage(String stage) {
+        LatencyHistogram histogram = stages.get(stage);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = stages.putIfAbsent(stage, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * ➕ Sumar a un contador (el nombre debe terminar en _total)
+     */
+    public static void increment(String counter, long delta) {
+        AtomicLong value = counters.get(counter);
+        if (value == null) {
+            AtomicLong created = new AtomicLong();
+            value = counters.putIfAbsent(counter, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        value.addAndGet(delta);
+    }
+
+    public static void increment(String counter) {
+        increment(counter, 1);
+    }
+
+    public static void addSource(Source source) {
+        sources.add(source);
+    }
+
+    public static void removeSource(Source source) {
+        sources.remove(source);
+    }
+
+    /**
+     * 📜 Formato de exposición de texto de Prometheus (0.0.4)
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String family = PREFIX + "stage_duration_seconds";
+        out.append("# HELP ").append(family).append(" Duración de cada etapa del pipeline de impresión\n");
+        out.append("# TYPE ").append(family).append(" histogram\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(stages).entrySet()) {
+            String label = "stage=\"" + entry.getKey() + "\"";
+            LatencyHistogram histogram = entry.getValue();
+            long[] counts = histogram.snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < BUCKET_LABELS.length ? BUCKET_LABELS[i] : "+Inf";
+                out.append(family).append("_bucket{").append(label).append(",le=\"").append(le)
+                    .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(family).append("_sum{").append(label).append("} ")
+                .append(histogram.getSumNanos() / 1e9).append('\n');
+            out.append(family).append("_count{").append(label).append("} ")
+                .append(cumulative).append('\n');
+        }
+
+        Map<String, Number> samples = collectSamples();
+        String lastFamily = null;
+        for (Map.Entry<String, Number> sample : samples.entrySet()) {
+            String series = sample.getKey();
+            int brace = series.indexOf('{');
+            String name = PREFIX + (brace >= 0 ? series.substring(0, brace) : series);
+            if (!name.equals(lastFamily)) {
+                out.append("# TYPE ").append(name).append(name.endsWith("_total") ? " counter\n" : " gauge\n");
+                lastFamily = name;
+            }
+            out.append(PREFIX).append(series).append(' ').append(sample.getValue()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * 📊 Mismas métricas en JSON: percentiles por etapa, contadores y valores
+     */
+    public static JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONObject stageJson = new JSONObject();
+            for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(stages).entrySet()) {
+                stageJson.put(entry.getKey(), entry.getValue().toJson());
+            }
+            json.put("stages", stageJson);
+
+            JSONObject values = new JSONObject();
+            for (Map.Entry<String, Number> sample : collectSamples().entrySet()) {
+                values.put(sample.getKey(), sample.getValue());
+            }
+            json.put("values", values);
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando métricas", e);
+        }
+        return json;
+    }
+
+    /**
+     * 📋 Contadores propios más los valores de cada fuente, ordenados por serie
+     */
+    private static Map<String, Number> collectSamples() {
+        Map<String, Number> samples = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            samples.put(counter.getKey(), counter.getValue().get());
+        }
+        for (Source source : sources) {
+            try {
+                source.collect(samples);
+            } catch (Exception e) {
+                Log.w(TAG, "Error leyendo fuente de métricas", e);
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,484 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 🧾 Trabajo de impresión con estado observable
+ * Recorre QUEUED → RENDERING → SENDING → PRINTED (o FAILED / PAPER_OUT)
+ */
+public class PrintJob {
+    private static final String TAG = "PrintJob";
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * 📄 Tipo de contenido del trabajo
+     */
+    public enum Type {
+        ORDER,  // Orden de cocina (JSON)
+        SALE,   // Factura de venta (JSON)
+        IMAGE,  // Imagen codificada (PNG/JPEG)
+        RAW,    // Comandos ESC/POS ya generados
+        DRAWER, // Solo apertura de caja
+        MONO_RASTER // Raster 1-bit empaquetado (GS v 0 armado con el perfil al imprimir)
+    }
+
+    // 🖼️ Papel por defecto de las imágenes: 58 mm = 384 puntos en el perfil por defecto,
+    // el ancho con el que se convertían antes (en papel de 80 mm sale centrada)
+    public static final int IMAGE_PAPER_WIDTH = 58;
+
+    /**
+     * 🚦 Carril de prioridad (menor ordinal = se imprime primero)
+     * La preferencia se aplica entre trabajos: nunca se interrumpe uno en curso
+     */
+    public enum Lane {
+        DRAWER,   // 💰 Apertura de caja
+        RECEIPT,  // 🧾 Facturas e imágenes para el cliente
+        KITCHEN,  // 📦 Órdenes de cocina
+        BULK;     // 🔁 Reimpresiones y trabajos masivos
+
+        public static Lane forType(Type type) {
+            switch (type) {
+                case DRAWER:
+                    return DRAWER;
+                case ORDER:
+                    return KITCHEN;
+                default:
+                    return RECEIPT;
+            }
+        }
+    }
+
+    /**
+     * 🔄 Estados que se notifican a los clientes
+     */
+    public enum State {
+        QUEUED, RENDERING, SENDING, PRINTED, FAILED, PAPER_OUT;
+
+        public boolean isFinal() {
+            return this == PRINTED || this == FAILED;
+        }
+
+        public String wireName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    /**
+     * 📡 Receptor de cambios de estado
+     */
+    public interface Listener {
+        void onStateChanged(PrintJob job, State state, String message);
+
+        /**
+         * ✂️ Avance de la transmisión (segmentos confirmados por el transporte)
+         */
+        default void onProgress(PrintJob job, int sentSegments, int totalSegments) {
+        }
+    }
+
+    private final String id;
+    private final long sequence;
+    private final Type type;
+    private final String json;
+    private final byte[] payload;
+    private final int paperWidth;
+    private final boolean openCash;
+    private final long createdAt;
+    private final JobTrace trace;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch completion = new CountDownLatch(1);
+
+    private volatile Lane lane;
+    private volatile String printerId;
+    private volatile String poolId;
+    private volatile State state;
+    private volatile String message;
+    private volatile byte[] rendered;
+    private volatile int[] segmentBoundaries;
+    private volatile int preambleLength;
+    private volatile byte[][] resumeCommands;
+    private volatile int sentSegments;
+    private volatile int restoredSegmentTotal;
+    private volatile long queuedAtNanos;
+
+    private PrintJob(Type type, String json, byte[] payload, int paperWidth, boolean openCash) {
+        this(null, type, json, payload, paperWidth, openCash);
+    }
+
+    private PrintJob(String id, Type type, String json, byte[] payload, int paperWidth, boolean openCash) {
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.id = id != null ? id : Long.toString(System.currentTimeMillis(), 36) + "-" + sequence;
+        this.type = type;
+        this.lane = Lane.forType(type);
+        this.json = json;
+        this.payload = payload;
+        this.paperWidth = paperWidth;
+        this.openCash = openCash;
+        this.createdAt = System.currentTimeMillis();
+        this.trace = new JobTrace(this.id, type.name().toLowerCase());
+    }
+
+    /**
+     * 📦 Crear trabajo de orden de cocina
+     */
+    public static PrintJob order(String json, int paperWidth, boolean openCash) {
+        return new PrintJob(Type.ORDER, json, null, paperWidth, openCash);
+    }
+
+    /**
+     * 🧾 Crear trabajo de factura
+     */
+    public static PrintJob sale(String json, int paperWidth, boolean openCash) {
+        return new PrintJob(Type.SALE, json, null, paperWidth, openCash);
+    }
+
+    /**
+     * 🖼️ Crear trabajo de imagen (bytes PNG/JPEG ya decodificados de Base64)
+     */
+    public static PrintJob image(byte[] imageBytes) {
+        return image(imageBytes, IMAGE_PAPER_WIDTH);
+    }
+
+    /**
+     * 🖼️ Crear trabajo de imagen escalada al ancho imprimible del papel indicado (mm)
+     */
+    public static PrintJob image(byte[] imageBytes, int paperWidth) {
+        return new PrintJob(Type.IMAGE, null, imageBytes, paperWidth, false);
+    }
+
+    /**
+     * ⚫⚪ Crear trabajo de raster 1-bit; el ancho se valida contra el papel al imprimir
+     */
+    public static PrintJob monoRaster(MonoRasterImage image, int paperWidth) {
+        return new PrintJob(Type.MONO_RASTER, null, image.toPayload(), paperWidth, false);
+    }
+
+    /**
+     * ⚙️ Crear trabajo con comandos ESC/POS ya generados
+     */
+    public static PrintJob raw(byte[] escPos) {
+        PrintJob job = new PrintJob(Type.RAW, null, escPos, 80, false);
+        job.rendered = escPos;
+        return job;
+    }
+
+    /**
+     * 💾 Reconstruir un trabajo del journal conservando su ID original
+     */
+    static PrintJob restore(String id, Type type, Lane lane, String json, byte[] payload,
+                            int paperWidth, boolean openCash, String printerId) {
+        PrintJob job = new PrintJob(id, type, json, payload, paperWidth, openCash);
+        job.lane = lane;
+        job.printerId = printerId;
+        if (type == Type.RAW) {
+            job.rendered = payload;
+        }
+        return job;
+    }
+
+    /**
+     * 💰 Crear trabajo que solo abre la caja registradora
+     */
+    public static PrintJob drawer() {
+        return new PrintJob(Type.DRAWER, null, null, 80, true);
+    }
+
+    /**
+     * 🎯 Crear trabajo desde un JSON de impresión (detecta orden, factura o apertura de caja)
+     * Con "reprint": true el trabajo va al carril de reimpresiones y con "printer"
+     * (p. ej. "tcp:192.168.1.50:9100") a esa impresora en lugar de la por defecto
+     */
+    public static PrintJob fromJson(String jsonData) throws Exception {
+        PrintJob job = fromJsonData(jsonData);
+        JSONObject data = new JSONObject(jsonData);
+        if (data.optBoolean("reprint", false)) {
+            job.lane = Lane.BULK;
+        }
+        String printer = data.optString("printer", "").trim();
+        if (!printer.isEmpty()) {
+            job.printerId = printer;
+        }
+        return job;
+    }
+
+    private static PrintJob fromJsonData(String jsonData) throws Exception {
+        JSONObject data = new JSONObject(jsonData);
+        boolean openCash = data.optBoolean("open_cash", false);
+
+        if ("open_cash".equals(data.optString("action")) && !data.has("data_json")) {
+            return drawer();
+        }
+
+        JSONObject dataJson = data.optJSONObject("data_json");
+        boolean isSale = dataJson != null && !dataJson.has("order_data")
+            && (dataJson.has("sale_data") || dataJson.has("company_info"));
+
+        if (isSale) {
+            return sale(jsonData, data.optInt("paper_width", 80), openCash);
+        }
+
+        // Orden (también es el fallback)
+        int paperWidth = 80;
+        JSONObject printSettings = data.optJSONObject("print_settings");
+        if (printSettings != null) {
+            paperWidth = printSettings.optInt("paper_width", 80);
+        }
+        return order(jsonData, paperWidth, openCash);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public int getPaperWidth() {
+        return paperWidth;
+    }
+
+    public boolean isOpenCash() {
+        return openCash;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public void setLane(Lane lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * 🖨️ Impresora destino (null = impresora por defecto)
+     */
+    public String getPrinterId() {
+        return printerId;
+    }
+
+    public void setPrinterId(String printerId) {
+        this.printerId = printerId;
+    }
+
+    /**
+     * ⚖️ Grupo de impresoras del que salió printerId (null = impresora fija)
+     */
+    public String getPoolId() {
+        return poolId;
+    }
+
+    void setPoolId(String poolId) {
+        this.poolId = poolId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * 🕒 Línea de tiempo del trabajo (GET /jobs/{id}/trace)
+     */
+    public JobTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * ⏱️ Momento (System.nanoTime()) en que entró a la cola actual
+     */
+    long getQueuedAtNanos() {
+        return queuedAtNanos;
+    }
+
+    void setQueuedAtNanos(long queuedAtNanos) {
+        this.queuedAtNanos = queuedAtNanos;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public byte[] getRendered() {
+        return rendered;
+    }
+
+    void setRendered(byte[] rendered) {
+        this.rendered = rendered;
+    }
+
+    /**
+     * ✂️ Guardar los datos ya segmentados (reemplaza los bytes renderizados)
+     */
+    void setSegments(EscPosSegmenter.Result segments) {
+        this.rendered = segments.data;
+        this.segmentBoundaries = segments.boundaries;
+        this.preambleLength = segments.preambleLength;
+        this.resumeCommands = segments.resumeCommands;
+        if (sentSegments > 0 && restoredSegmentTotal != segments.getSegmentCount()) {
+            Log.w(TAG, "⚠️ Trabajo " + id + " cambió al volver a renderizar, se envía completo");
+            sentSegments = 0;
+        }
+    }
+
+    /**
+     * 🔀 Volver a renderizar desde cero al pasar a otra impresora del grupo
+     * (otro perfil de capacidades y sin avance de segmentos)
+     */
+    void resetForReroute() {
+        rendered = type == Type.RAW ? payload : null;
+        segmentBoundaries = null;
+        preambleLength = 0;
+        resumeCommands = null;
+        sentSegments = 0;
+        restoredSegmentTotal = 0;
+    }
+
+    int[] getSegmentBoundaries() {
+        return segmentBoundaries;
+    }
+
+    int getPreambleLength() {
+        return preambleLength;
+    }
+
+    /**
+     * 🔤 Página de códigos y modo vigentes al empezar el segmento (se envían tras el preámbulo)
+     */
+    byte[] getResumeCommands(int segment) {
+        byte[][] commands = resumeCommands;
+        return commands != null && segment < commands.length ? commands[segment] : new byte[0];
+    }
+
+    public int getSegmentCount() {
+        int[] boundaries = segmentBoundaries;
+        return boundaries != null ? boundaries.length - 1 : 0;
+    }
+
+    public int getSentSegments() {
+        return sentSegments;
+    }
+
+    /**
+     * 💾 Restaurar avance registrado en el journal
+     * Solo se respeta si al volver a segmentar sale el mismo número de segmentos
+     */
+    void restoreProgress(int sent, int total) {
+        this.sentSegments = sent;
+        this.restoredSegmentTotal = total;
+    }
+
+    /**
+     * ✂️ Marcar segmento confirmado y notificar a los receptores
+     */
+    void markSegmentSent(int sent) {
+        sentSegments = sent;
+        int total = getSegmentCount();
+        for (Listener listener : listeners) {
+            try {
+                listener.onProgress(this, sent, total);
+            } catch (Exception e) {
+                Log.w(TAG, "Error notificando avance del trabajo " + id, e);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        // Un trabajo que cambia de cola no duplica los receptores del planificador
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 🔄 Cambiar estado y notificar a los receptores
+     */
+    void setState(State newState, String newMessage) {
+        state = newState;
+        message = newMessage;
+        Log.d(TAG, "🔄 Trabajo " + id + " (" + type + "): " + newState
+            + (newMessage != null ? " - " + newMessage : ""));
+        if (newState.isFinal()) {
+            trace.finish(newState.wireName());
+        }
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateChanged(this, newState, newMessage);
+            } catch (Exception e) {
+                Log.w(TAG, "Error notificando estado del trabajo " + id, e);
+            }
+        }
+
+        if (newState.isFinal()) {
+            completion.countDown();
+        }
+    }
+
+    /**
+     * ⏳ Esperar a que el trabajo termine (impreso o fallido)
+     */
+    public boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+        return completion.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 📋 Representación JSON del estado del trabajo
+     */
+    public JSONObject toStatusJson() {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("job_id", id);
+            status.put("type", type.name().toLowerCase());
+            status.put("lane", lane.name().toLowerCase());
+            State current = state;
+            status.put("state", current != null ? current.wireName() : JSONObject.NULL);
+            if (printerId != null) {
+                status.put("printer", printerId);
+            }
+            if (poolId != null) {
+                status.put("pool", poolId);
+            }
+            if (message != null) {
+                status.put("message", message);
+            }
+            int segments = getSegmentCount();
+            if (segments > 0) {
+                status.put("segments_sent", sentSegments);
+                status.put("segments_total", segments);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando estado del trabajo " + id, e);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,105 @@
+package com.gridpos.puenteimpresora;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+/**
+ * 🎨 Convierte un PrintJob en comandos ESC/POS usando los formateadores existentes
+ */
+public class PrintJobRenderer {
+    private static final String TAG = "PrintJobRenderer";
+
+    /**
+     * 🎯 Generar bytes ESC/POS del trabajo (lanza excepción si no hay nada que imprimir)
+     */
+    public static byte[] render(PrintJob job) throws Exception {
+        return render(job, PrinterCapabilities.DEFAULT);
+    }
+
+    /**
+     * 🎯 Generar bytes ESC/POS adaptados a las capacidades de la impresora destino
+     */
+    public static byte[] render(PrintJob job, PrinterCapabilities capabilities) throws Exception {
+        byte[] data;
+        long stageStart = System.nanoTime();
+
+        switch (job.getType()) {
+            case ORDER:
+                JSONObject orderJson = new JSONObject(job.getJson());
+                data = OrderPrintFormatter.formatOrder(orderJson,
+                    job.getPaperWidth(), job.isOpenCash(), withJobOptions(orderJson, capabilities));
+                PipelineMetrics.record(PipelineMetrics.FORMAT, stageStart);
+                break;
+
+            case SALE:
+                JSONObject saleJson = new JSONObject(job.getJson());
+                data = SalePrintFormatter.formatSale(extractSaleData(saleJson),
+                    job.getPaperWidth(), job.isOpenCash(), withJobOptions(saleJson, capabilities));
+                PipelineMetrics.record(PipelineMetrics.FORMAT, stageStart);
+                break;
+
+            case IMAGE:
+                byte[] imageBytes = job.getPayload();
+                Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+                if (bitmap == null) {
+                    throw new IllegalArgumentException("No se pudo decodificar la imagen");
+                }
+                PipelineMetrics.record(PipelineMetrics.DECODE, stageStart);
+                long convertStart = System.nanoTime();
+                data = EscPosImageConverter.bitmapToEscPos(bitmap,
+                    capabilities.getDotWidth(job.getPaperWidth()), capabilities.getCutCommand());
+                PipelineMetrics.record(PipelineMetrics.CONVERT, convertStart);
+                break;
+
+            case MONO_RASTER:
+                MonoRasterImage raster = MonoRasterImage.fromPayload(job.getPayload());
+                data = raster.toEscPos(capabilities.getDotWidth(job.getPaperWidth()), capabilities.getCutCommand());
+                PipelineMetrics.record(PipelineMetrics.CONVERT, stageStart);
+                break;
+
+            case DRAWER:
+                data = capabilities.getDrawerCommand();
+                break;
+
+            case RAW:
+            default:
+                data = job.getPayload();
+                break;
+        }
+
+        if (data == null || data.length == 0) {
+            throw new IllegalStateException("El formateador no generó datos de impresión");
+        }
+
+        Log.d(TAG, "🎨 Trabajo " + job.getId() + " renderizado: " + data.length + " bytes");
+        return data;
+    }
+
+    /**
+     * 🧾 Extraer data_json de la factura (o usar los datos completos como fallback)
+     */
+    private static String extractSaleData(JSONObject saleData) throws Exception {
+        if (saleData.has("data_json")) {
+            JSONObject dataJson = saleData.getJSONObject("data_json");
+            // 📊 El campo "barcode" puede venir en la raíz de la solicitud
+            if (saleData.has("barcode") && !dataJson.has("barcode")) {
+                dataJson.put("barcode", saleData.get("barcode"));
+            }
+            return dataJson.toString();
+        }
+        return saleData.toString();
+    }
+
+    /**
+     * 🔣 "raster_text": true|false en la solicitud fuerza el modo de texto como imagen
+     */
+    private static PrinterCapabilities withJobOptions(JSONObject json, PrinterCapabilities capabilities) {
+        if (json.has("raster_text")) {
+            return capabilities.withRasterText(json.optBoolean("raster_text", false));
+        }
+        return capabilities;
+    }
+}
@@ -0,0 +1,399 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 💾 Journal de trabajos: archivo append-only mapeado en memoria (almacenamiento privado)
+ * Cada trabajo aceptado se escribe ANTES de encolarse y cada cambio de estado después;
+ * al reiniciar se reencolan los que no llegaron a PRINTED/FAILED (al menos una vez).
+ *
+ * Registro: [int largo][byte tipo][cuerpo][int CRC32]  — largo 0 = fin de datos
+ */
+public class PrintJournal implements PrintJob.Listener {
+    private static final String TAG = "PrintJournal";
+
+    private static final byte RECORD_ACCEPT = 1;
+    private static final byte RECORD_STATE = 2;
+    private static final byte RECORD_PROGRESS = 3;
+
+    private static final int HEADER_SIZE = 4 + 1;
+    private static final int TRAILER_SIZE = 4;
+    private static final int INITIAL_SIZE = 256 * 1024;
+    private static final int COMPACT_THRESHOLD = 4 * 1024 * 1024;
+    private static final long BATCH_INTERVAL_MS = 50;
+
+    /**
+     * 🔒 Cuándo forzar los datos a disco
+     * Las escrituras mapeadas sobreviven a que el proceso muera aunque no se fuercen;
+     * forzar solo protege ante cortes de energía o reinicios del sistema.
+     */
+    public enum FsyncPolicy {
+        ALWAYS,  // force() en cada registro
+        BATCH,   // force() como máximo cada BATCH_INTERVAL_MS
+        NEVER;   // lo decide el sistema operativo
+
+        public static FsyncPolicy fromString(String value) {
+            for (FsyncPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            return BATCH;
+        }
+    }
+
+    private final File file;
+    private final FsyncPolicy fsyncPolicy;
+
+    // Registros ACCEPT de los trabajos que aún no terminan (en orden de llegada)
+    private final Map<String, byte[]> pending = new LinkedHashMap<>();
+    // Último avance confirmado de cada trabajo pendiente: {enviados, total}
+    private final Map<String, int[]> progress = new HashMap<>();
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long lastForce;
+    private boolean dirty;
+
+    public PrintJournal(File file, FsyncPolicy fsyncPolicy) {
+        this.file = file;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * 🔄 Abrir el journal y devolver los trabajos pendientes para reencolar
+     * (el archivo se compacta dejando solo esos trabajos)
+     */
+    public synchronized List<PrintJob> replay() throws IOException {
+        pending.clear();
+        progress.clear();
+        if (file.exists()) {
+            readRecords();
+        }
+        compact();
+
+        List<PrintJob> jobs = new ArrayList<>();
+        for (byte[] body : pending.values()) {
+            try {
+                PrintJob job = decodeAccept(body);
+                int[] sent = progress.get(job.getId());
+                if (sent != null) {
+                    job.restoreProgress(sent[0], sent[1]);
+                }
+                jobs.add(job);
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Registro de trabajo ilegible, se descarta", e);
+            }
+        }
+        Log.d(TAG, "💾 Journal abierto: " + jobs.size() + " trabajos pendientes (" + fsyncPolicy + ")");
+        return jobs;
+    }
+
+    /**
+     * 📝 Registrar trabajo aceptado (se omite si ya está en el journal, p. ej. al reencolar)
+     */
+    public synchronized void recordAccepted(PrintJob job) {
+        if (pending.containsKey(job.getId())) {
+            return;
+        }
+        try {
+            byte[] body = encodeAccept(job);
+            append(RECORD_ACCEPT, body);
+            pending.put(job.getId(), body);
+        } catch (IOException e) {
+            Log.e(TAG, "❌ No se pudo registrar el trabajo " + job.getId(), e);
+        }
+    }
+
+    @Override
+    public void onStateChanged(PrintJob job, PrintJob.State state, String message) {
+        recordState(job.getId(), state);
+    }
+
+    @Override
+    public void onProgress(PrintJob job, int sentSegments, int totalSegments) {
+        recordProgress(job.getId(), sentSegments, totalSegments);
+    }
+
+    /**
+     * ✂️ Registrar el último segmento confirmado (para reanudar tras reiniciar)
+     */
+    public synchronized void recordProgress(String jobId, int sentSegments, int totalSegments) {
+        if (!pending.containsKey(jobId)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(jobId);
+            out.writeInt(sentSegments);
+            out.writeInt(totalSegments);
+            append(RECORD_PROGRESS, bytes.toByteArray());
+            progress.put(jobId, new int[] {sentSegments, totalSegments});
+        } catch (IOException e) {
+            Log.e(TAG, "❌ No se pudo registrar avance de " + jobId, e);
+        }
+    }
+
+    /**
+     * 🔄 Registrar transición de estado (los estados finales liberan el trabajo)
+     */
+    public synchronized void recordState(String jobId, PrintJob.State state) {
+        if (!pending.containsKey(jobId)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(jobId);
+            out.writeByte(state.ordinal());
+            append(RECORD_STATE, bytes.toByteArray());
+
+            if (state.isFinal()) {
+                pending.remove(jobId);
+                progress.remove(jobId);
+                if (pending.isEmpty() && buffer.position() > COMPACT_THRESHOLD) {
+                    compact();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ No se pudo registrar estado de " + jobId, e);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 🔒 Forzar a disco lo escrito y cerrar
+     */
+    public synchronized void close() {
+        try {
+            if (buffer != null && dirty) {
+                buffer.force();
+            }
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error cerrando journal", e);
+        } finally {
+            raf = null;
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    // ==================== ESCRITURA ====================
+
+    private void append(byte kind, byte[] body) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Journal cerrado");
+        }
+        int length = HEADER_SIZE + body.length + TRAILER_SIZE;
+        ensureCapacity(length + 4);
+
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(body, 0, body.length);
+
+        buffer.putInt(length);
+        buffer.put(kind);
+        buffer.put(body);
+        buffer.putInt((int) crc.getValue());
+        dirty = true;
+
+        long now = System.currentTimeMillis();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS
+                || (fsyncPolicy == FsyncPolicy.BATCH && now - lastForce >= BATCH_INTERVAL_MS)) {
+            buffer.force();
+            lastForce = now;
+            dirty = false;
+        }
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        int position = buffer.position();
+        long newSize = Math.max((long) buffer.capacity() * 2, position + needed);
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        buffer.position(position);
+        Log.d(TAG, "📈 Journal ampliado a " + (newSize / 1024) + " KB");
+    }
+
+    /**
+     * 🗜️ Reescribir el journal con solo los trabajos pendientes y cambiarlo atómicamente
+     */
+    private void compact() throws IOException {
+        close();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        int size = INITIAL_SIZE;
+        for (byte[] body : pending.values()) {
+            size += HEADER_SIZE + body.length + TRAILER_SIZE + 64;
+        }
+        openMapped(tmp, size, true);
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            append(RECORD_ACCEPT, entry.getValue());
+            int[] sent = progress.get(entry.getKey());
+            if (sent != null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(entry.getKey());
+                out.writeInt(sent[0]);
+                out.writeInt(sent[1]);
+                append(RECORD_PROGRESS, bytes.toByteArray());
+            }
+        }
+        buffer.force();
+        int position = buffer.position();
+        close();
+
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo reemplazar " + file.getName());
+        }
+        openMapped(file, Math.max(size, (int) file.length()), false);
+        buffer.position(position);
+        Log.d(TAG, "🗜️ Journal compactado: " + pending.size() + " pendientes, " + position + " bytes");
+    }
+
+    private void openMapped(File target, long size, boolean truncate) throws IOException {
+        raf = new RandomAccessFile(target, "rw");
+        if (truncate) {
+            raf.setLength(0);
+        }
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        lastForce = System.currentTimeMillis();
+        dirty = false;
+    }
+
+    // ==================== LECTURA ====================
+
+    private void readRecords() throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            ByteBuffer data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            int records = 0;
+
+            while (data.remaining() >= HEADER_SIZE + TRAILER_SIZE) {
+                int start = data.position();
+                int length = data.getInt();
+                if (length < HEADER_SIZE + TRAILER_SIZE || length - 4 > data.remaining()) {
+                    break; // Fin de datos o registro truncado
+                }
+                byte kind = data.get();
+                byte[] body = new byte[length - HEADER_SIZE - TRAILER_SIZE];
+                data.get(body);
+                int storedCrc = data.getInt();
+
+                CRC32 crc = new CRC32();
+                crc.update(kind);
+                crc.update(body, 0, body.length);
+                if ((int) crc.getValue() != storedCrc) {
+                    Log.w(TAG, "⚠️ Registro corrupto en offset " + start + ", se ignora el resto");
+                    break;
+                }
+
+                applyRecord(kind, body);
+                records++;
+            }
+            Log.d(TAG, "📖 Journal leído: " + records + " registros");
+        }
+    }
+
+    private void applyRecord(byte kind, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        String jobId = in.readUTF();
+
+        if (kind == RECORD_ACCEPT) {
+            pending.put(jobId, body);
+        } else if (kind == RECORD_STATE) {
+            int ordinal = in.readUnsignedByte();
+            PrintJob.State[] states = PrintJob.State.values();
+            if (ordinal < states.length && states[ordinal].isFinal()) {
+                pending.remove(jobId);
+                progress.remove(jobId);
+            }
+        } else if (kind == RECORD_PROGRESS && pending.containsKey(jobId)) {
+            progress.put(jobId, new int[] {in.readInt(), in.readInt()});
+        }
+    }
+
+    // ==================== CODIFICACIÓN ====================
+
+    private static byte[] encodeAccept(PrintJob job) throws IOException {
+        byte[] json = job.getJson() != null ? job.getJson().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] payload = job.getPayload();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64
+            + (json != null ? json.length : 0) + (payload != null ? payload.length : 0));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(job.getId());
+        out.writeByte(job.getType().ordinal());
+        out.writeByte(job.getLane().ordinal());
+        out.writeShort(job.getPaperWidth());
+        out.writeBoolean(job.isOpenCash());
+        out.writeUTF(job.getPrinterId() != null ? job.getPrinterId() : "");
+        writeBlock(out, json);
+        writeBlock(out, payload);
+        return bytes.toByteArray();
+    }
+
+    private static PrintJob decodeAccept(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        String id = in.readUTF();
+        PrintJob.Type type = PrintJob.Type.values()[in.readUnsignedByte()];
+        PrintJob.Lane lane = PrintJob.Lane.values()[in.readUnsignedByte()];
+        int paperWidth = in.readShort();
+        boolean openCash = in.readBoolean();
+        String printerId = in.readUTF();
+        byte[] json = readBlock(in);
+        byte[] payload = readBlock(in);
+
+        return PrintJob.restore(id, type, lane,
+            json != null ? new String(json, StandardCharsets.UTF_8) : null, payload,
+            paperWidth, openCash, printerId.isEmpty() ? null : printerId);
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        if (block == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(block.length);
+            out.write(block);
+        }
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+}
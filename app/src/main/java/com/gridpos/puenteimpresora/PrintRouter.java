@@ -0,0 +1,348 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 🧭 Enrutador de trabajos por estación (parrilla, bar, pastelería...)
+ * Evalúa reglas en orden (gana la primera que coincide) y divide una orden en un
+ * subtrabajo por impresora: cada cola imprime su parte en paralelo.
+ *
+ * Formato (routing.json, GET/POST /routing):
+ * {
+ *   "default": "usb",
+ *   "rules": [
+ *     {"station": "bar", "printer": "tcp:192.168.1.51:9100"},
+ *     {"category": "Bebidas", "printer": "tcp:192.168.1.51:9100"},
+ *     {"tag": "postre", "printer": "tcp:192.168.1.52:9100"},
+ *     {"type": "sale", "printer": "usb"}
+ *   ]
+ * }
+ * "station" se compara con print_settings.station (toda la orden), "type" con el tipo
+ * de documento y "category"/"tag" con cada producto.
+ * "pools" define grupos de impresoras intercambiables ({"caja": ["usb", "tcp:..."]}):
+ * una regla o "default" pueden apuntar al nombre del grupo (ver PrinterPool).
+ */
+public class PrintRouter {
+    private static final String TAG = "PrintRouter";
+
+    /**
+     * 📏 Una regla: criterio → impresora destino
+     */
+    static class Rule {
+        final String field;   // station | type | category | tag
+        final String value;   // en minúsculas
+        final String printer;
+
+        Rule(String field, String value, String printer) {
+            this.field = field;
+            this.value = value;
+            this.printer = printer;
+        }
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put(field, value);
+            json.put("printer", printer);
+            return json;
+        }
+    }
+
+    private static final String[] FIELDS = {"station", "type", "category", "tag"};
+
+    private final File file;
+    private volatile List<Rule> rules = Collections.emptyList();
+    private volatile String defaultPrinter;
+    private volatile Map<String, List<String>> pools = Collections.emptyMap();
+
+    public PrintRouter(File file) {
+        this.file = file;
+        try {
+            JSONObject config = load(file);
+            if (config != null) {
+                apply(config);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Reglas de enrutamiento ilegibles, se ignoran: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 💾 Reemplazar las reglas (valida antes de guardar; lanza excepción si son inválidas)
+     */
+    public synchronized void setConfig(JSONObject config) throws Exception {
+        apply(config);
+        save(toJson());
+        Log.i(TAG, "🧭 Reglas de enrutamiento actualizadas: " + rules.size());
+    }
+
+    private void apply(JSONObject config) throws Exception {
+        List<Rule> parsed = new ArrayList<>();
+        JSONArray array = config.optJSONArray("rules");
+        for (int i = 0; array != null && i < array.length(); i++) {
+            JSONObject entry = array.getJSONObject(i);
+            String printer = entry.optString("printer", "").trim();
+            if (printer.isEmpty()) {
+                throw new IllegalArgumentException("Regla " + i + " sin \"printer\"");
+            }
+            String field = null;
+            for (String candidate : FIELDS) {
+                if (entry.has(candidate)) {
+                    field = candidate;
+                    break;
+                }
+            }
+            if (field == null) {
+                throw new IllegalArgumentException("Regla " + i + " sin station, type, category ni tag");
+            }
+            parsed.add(new Rule(field, normalize(entry.getString(field)), printer));
+        }
+        Map<String, List<String>> parsedPools = new LinkedHashMap<>();
+        JSONObject poolConfig = config.optJSONObject("pools");
+        if (poolConfig != null) {
+            for (Iterator<String> names = poolConfig.keys(); names.hasNext(); ) {
+                String name = names.next();
+                JSONArray members = poolConfig.getJSONArray(name);
+                List<String> printers = new ArrayList<>();
+                for (int i = 0; i < members.length(); i++) {
+                    printers.add(members.getString(i).trim());
+                }
+                if (printers.isEmpty()) {
+                    throw new IllegalArgumentException("Grupo " + name + " sin impresoras");
+                }
+                parsedPools.put(name, Collections.unmodifiableList(printers));
+            }
+        }
+        String fallback = config.optString("default", "").trim();
+        pools = Collections.unmodifiableMap(parsedPools);
+        rules = Collections.unmodifiableList(parsed);
+        defaultPrinter = fallback.isEmpty() ? null : fallback;
+    }
+
+    /**
+     * ⚖️ Grupos de impresoras definidos en la configuración
+     */
+    public Map<String, List<String>> getPools() {
+        return pools;
+    }
+
+    public boolean hasRules() {
+        return !rules.isEmpty() || defaultPrinter != null;
+    }
+
+    /**
+     * 🧭 Resolver la impresora de cada parte del trabajo
+     * Un trabajo con "printer" explícito (o ya enrutado) no se toca. Si los productos
+     * de una orden van a varias impresoras se devuelve un subtrabajo por impresora;
+     * la apertura de caja queda en el de la impresora por defecto.
+     */
+    public List<PrintJob> route(PrintJob job) {
+        if (job.getPrinterId() != null || !hasRules()) {
+            return Collections.singletonList(job);
+        }
+        try {
+            String documentPrinter = matchDocument(job);
+            if (documentPrinter != null || job.getType() != PrintJob.Type.ORDER) {
+                job.setPrinterId(documentPrinter != null ? documentPrinter : defaultPrinter);
+                return Collections.singletonList(job);
+            }
+            return splitOrder(job);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ No se pudo enrutar " + job.getId() + ", va a la impresora por defecto", e);
+            return Collections.singletonList(job);
+        }
+    }
+
+    /**
+     * 🏷️ Reglas que aplican al documento completo: estación y tipo
+     */
+    private String matchDocument(PrintJob job) throws Exception {
+        String station = null;
+        if (job.getJson() != null) {
+            JSONObject settings = new JSONObject(job.getJson()).optJSONObject("print_settings");
+            station = settings != null ? normalize(settings.optString("station", "")) : null;
+        }
+        String type = job.getType().name().toLowerCase(Locale.ROOT);
+        for (Rule rule : rules) {
+            if ("station".equals(rule.field) && rule.value.equals(station)) {
+                return rule.printer;
+            }
+            if ("type".equals(rule.field) && rule.value.equals(type)) {
+                return rule.printer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ✂️ Agrupar los productos por impresora y crear un subtrabajo por grupo
+     */
+    private List<PrintJob> splitOrder(PrintJob job) throws Exception {
+        JSONObject order = new JSONObject(job.getJson());
+        JSONArray products = order.optJSONArray("products");
+        if (products == null || products.length() == 0) {
+            job.setPrinterId(defaultPrinter);
+            return Collections.singletonList(job);
+        }
+
+        // null = impresora por defecto del planificador
+        Map<String, JSONArray> groups = new LinkedHashMap<>();
+        for (int i = 0; i < products.length(); i++) {
+            JSONObject product = products.optJSONObject(i);
+            String printer = product != null ? matchProduct(product) : null;
+            if (printer == null) {
+                printer = defaultPrinter;
+            }
+            JSONArray group = groups.get(printer);
+            if (group == null) {
+                group = new JSONArray();
+                groups.put(printer, group);
+            }
+            group.put(products.get(i));
+        }
+
+        if (groups.size() == 1) {
+            job.setPrinterId(groups.keySet().iterator().next());
+            return Collections.singletonList(job);
+        }
+
+        // 💰 La caja se abre desde la impresora por defecto (la del mostrador) si recibe parte
+        String drawerPrinter = groups.containsKey(defaultPrinter) ? defaultPrinter : groups.keySet().iterator().next();
+        List<PrintJob> parts = new ArrayList<>(groups.size());
+        for (Map.Entry<String, JSONArray> group : groups.entrySet()) {
+            order.put("products", group.getValue());
+            boolean openCash = job.isOpenCash() && equalsPrinter(group.getKey(), drawerPrinter);
+            PrintJob part = PrintJob.order(order.toString(), job.getPaperWidth(), openCash);
+            part.setLane(job.getLane());
+            part.setPrinterId(group.getKey());
+            part.getTrace().inheritFrom(job.getTrace());
+            parts.add(part);
+        }
+        Log.d(TAG, "🧭 Orden " + job.getId() + " dividida en " + parts.size() + " impresoras");
+        return parts;
+    }
+
+    private static boolean equalsPrinter(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private String matchProduct(JSONObject product) {
+        String category = categoryOf(product);
+        List<String> tags = tagsOf(product);
+        for (Rule rule : rules) {
+            if ("category".equals(rule.field) && rule.value.equals(category)) {
+                return rule.printer;
+            }
+            if ("tag".equals(rule.field) && tags.contains(rule.value)) {
+                return rule.printer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 🔍 "category" como texto u objeto {name}, o "category_name"
+     */
+    private static String categoryOf(JSONObject product) {
+        JSONObject category = product.optJSONObject("category");
+        if (category != null) {
+            return normalize(category.optString("name", ""));
+        }
+        String value = product.optString("category", "");
+        if (value.isEmpty()) {
+            value = product.optString("category_name", "");
+        }
+        return normalize(value);
+    }
+
+    /**
+     * 🔍 "tags" como arreglo o texto separado por comas, o "tag" suelto
+     */
+    private static List<String> tagsOf(JSONObject product) {
+        List<String> tags = new ArrayList<>();
+        JSONArray array = product.optJSONArray("tags");
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                tags.add(normalize(array.optString(i, "")));
+            }
+        } else {
+            for (String tag : product.optString("tags", "").split(",")) {
+                tags.add(normalize(tag));
+            }
+        }
+        String single = product.optString("tag", "");
+        if (!single.isEmpty()) {
+            tags.add(normalize(single));
+        }
+        return tags;
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("default", defaultPrinter != null ? defaultPrinter : JSONObject.NULL);
+            JSONArray array = new JSONArray();
+            for (Rule rule : rules) {
+                array.put(rule.toJson());
+            }
+            json.put("rules", array);
+            JSONObject poolConfig = new JSONObject();
+            for (Map.Entry<String, List<String>> pool : pools.entrySet()) {
+                poolConfig.put(pool.getKey(), new JSONArray(pool.getValue()));
+            }
+            json.put("pools", poolConfig);
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando reglas de enrutamiento", e);
+        }
+        return json;
+    }
+
+    private static JSONObject load(File file) throws Exception {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(content.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 💾 Escribir en un temporal y renombrar (igual que PrinterProfileStore)
+     */
+    private void save(JSONObject config) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(config.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("No se pudo reemplazar " + file.getName());
+        }
+    }
+}
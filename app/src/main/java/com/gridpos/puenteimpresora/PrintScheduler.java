@@ -0,0 +1,266 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 🗂️ Planificador de impresión: una cola FIFO con carriles de prioridad por impresora
+ * Los trabajos van a job.getPrinterId() o a la impresora por defecto
+ */
+public class PrintScheduler {
+    private static final String TAG = "PrintScheduler";
+
+    private static final long POOL_HEALTH_INTERVAL_MS = 2000;
+
+    private final Map<String, PrintSpooler> spoolers = new ConcurrentHashMap<>();
+    private final List<PrintJob.Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile String defaultPrinterId;
+    private volatile PrintJournal journal;
+    private volatile PrintRouter router;
+    private final Map<String, PrinterPool> pools = new ConcurrentHashMap<>();
+    private Thread poolHealthThread;
+
+    /**
+     * ➕ Registrar impresora (la primera queda como impresora por defecto)
+     */
+    public PrintSpooler registerPrinter(PrinterTransport transport) {
+        PrintSpooler spooler = spoolers.computeIfAbsent(transport.getId(), id -> {
+            PrintSpooler created = new PrintSpooler(transport);
+            created.setFailoverHandler(this::reroute);
+            for (PrintJob.Listener listener : listeners) {
+                created.addListener(listener);
+            }
+            Log.d(TAG, "➕ Impresora registrada: " + id);
+            return created;
+        });
+        if (defaultPrinterId == null) {
+            defaultPrinterId = transport.getId();
+        }
+        return spooler;
+    }
+
+    /**
+     * ➖ Quitar impresora (los trabajos pendientes se marcan como fallidos)
+     */
+    public void unregisterPrinter(String printerId) {
+        PrintSpooler spooler = spoolers.remove(printerId);
+        if (spooler != null) {
+            spooler.failPending("Impresora quitada: " + printerId);
+            spooler.shutdown();
+            Log.d(TAG, "➖ Impresora quitada: " + printerId);
+        }
+        if (printerId.equals(defaultPrinterId)) {
+            defaultPrinterId = spoolers.isEmpty() ? null : spoolers.keySet().iterator().next();
+        }
+    }
+
+    /**
+     * 💾 Persistir cada trabajo aceptado antes de encolarlo (null = sin journal)
+     */
+    public void setJournal(PrintJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 🧭 Reglas por estación para repartir las órdenes entre impresoras (null = sin reglas)
+     */
+    public void setRouter(PrintRouter router) {
+        this.router = router;
+    }
+
+    public PrintRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * 🧭 Dividir el trabajo según las reglas de enrutamiento (sin encolarlo)
+     * Sirve para registrar receptores en cada parte antes de llamar a submit
+     */
+    public List<PrintJob> route(PrintJob job) {
+        PrintRouter current = router;
+        return current != null ? current.route(job) : Collections.singletonList(job);
+    }
+
+    /**
+     * 📥 Enrutar y encolar cada parte en la cola de su impresora
+     */
+    public List<PrintJob> submitRouted(PrintJob job) {
+        List<PrintJob> parts = route(job);
+        for (PrintJob part : parts) {
+            submit(part);
+        }
+        return parts;
+    }
+
+    /**
+     * ⚖️ Reemplazar los grupos de impresoras (nombre → impresoras); un trabajo cuyo
+     * destino es el nombre de un grupo va a la impresora sana con menos carga
+     */
+    public synchronized void setPools(Map<String, List<String>> definitions) {
+        pools.clear();
+        for (Map.Entry<String, List<String>> entry : definitions.entrySet()) {
+            pools.put(entry.getKey(), new PrinterPool(entry.getKey(), entry.getValue(), this));
+            Log.d(TAG, "⚖️ Grupo " + entry.getKey() + ": " + entry.getValue());
+        }
+        if (!pools.isEmpty() && poolHealthThread == null) {
+            poolHealthThread = new Thread(this::runPoolHealthChecks, "PrinterPoolHealth");
+            poolHealthThread.setDaemon(true);
+            poolHealthThread.start();
+        }
+    }
+
+    public PrinterPool getPool(String name) {
+        return name != null ? pools.get(name) : null;
+    }
+
+    /**
+     * 🩺 Cada pocos segundos, mover los trabajos en espera de impresoras caídas o en pausa
+     */
+    private void runPoolHealthChecks() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POOL_HEALTH_INTERVAL_MS);
+                for (PrinterPool pool : pools.values()) {
+                    int moved = pool.checkHealth();
+                    if (moved > 0) {
+                        Log.w(TAG, "🔀 Grupo " + pool.getName() + ": " + moved + " trabajos reasignados");
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Error revisando grupos de impresoras", e);
+            }
+        }
+    }
+
+    /**
+     * 🔀 Un trabajo de grupo que su impresora no pudo imprimir pasa a otra sana
+     */
+    private boolean reroute(PrintJob job, String reason) {
+        PrinterPool pool = getPool(job.getPoolId());
+        String target = pool != null ? pool.selectHealthyExcept(job.getPrinterId()) : null;
+        if (target == null) {
+            return false;
+        }
+        pool.moveTo(job, target, reason);
+        return true;
+    }
+
+    public void setDefaultPrinter(String printerId) {
+        this.defaultPrinterId = printerId;
+    }
+
+    public String getDefaultPrinterId() {
+        return defaultPrinterId;
+    }
+
+    public PrintSpooler getSpooler(String printerId) {
+        return printerId != null ? spoolers.get(printerId) : null;
+    }
+
+    /**
+     * 📡 Receptor para los eventos de todos los trabajos de todas las impresoras
+     */
+    public void addListener(PrintJob.Listener listener) {
+        listeners.add(listener);
+        for (PrintSpooler spooler : spoolers.values()) {
+            spooler.addListener(listener);
+        }
+    }
+
+    /**
+     * 📥 Encolar trabajo en la impresora que le corresponde
+     */
+    public PrintJob submit(PrintJob job) {
+        PrintJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.recordAccepted(job);
+            job.addListener(currentJournal);
+        }
+
+        String printerId = job.getPrinterId() != null ? job.getPrinterId() : defaultPrinterId;
+        PrinterPool pool = getPool(job.getPoolId() != null ? job.getPoolId() : printerId);
+        if (pool != null) {
+            job.setPoolId(pool.getName());
+            printerId = pool.select();
+        }
+        PrintSpooler spooler = getSpooler(printerId);
+        if (spooler == null) {
+            job.setState(PrintJob.State.FAILED, "Impresora no registrada: " + printerId);
+            return job;
+        }
+        job.setPrinterId(printerId);
+        return spooler.submit(job);
+    }
+
+    /**
+     * 📏 Total de trabajos en espera en todas las impresoras
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (PrintSpooler spooler : spoolers.values()) {
+            depth += spooler.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * 📊 Métricas de todas las colas en JSON
+     */
+    public JSONObject toStatusJson() {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("default_printer", defaultPrinterId != null ? defaultPrinterId : JSONObject.NULL);
+            status.put("depth", getQueueDepth());
+            JSONArray printers = new JSONArray();
+            for (PrintSpooler spooler : spoolers.values()) {
+                printers.put(spooler.toStatusJson());
+            }
+            status.put("printers", printers);
+            if (!pools.isEmpty()) {
+                JSONArray poolStatus = new JSONArray();
+                for (PrinterPool pool : pools.values()) {
+                    poolStatus.put(pool.toStatusJson());
+                }
+                status.put("pools", poolStatus);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando métricas del planificador", e);
+        }
+        return status;
+    }
+
+    /**
+     * 📈 Valores de todas las colas para GET /metrics
+     */
+    public void collectMetrics(Map<String, Number> out) {
+        for (PrintSpooler spooler : spoolers.values()) {
+            spooler.collectMetrics(out);
+        }
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            if (poolHealthThread != null) {
+                poolHealthThread.interrupt();
+                poolHealthThread = null;
+            }
+        }
+        for (PrintSpooler spooler : spoolers.values()) {
+            spooler.shutdown();
+        }
+        spoolers.clear();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
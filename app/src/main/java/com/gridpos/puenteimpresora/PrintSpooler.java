@@ -0,0 +1,549 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 🖨️ Cola de impresión de UNA impresora: renderiza y envía los trabajos uno a la vez,
+ * por carril de prioridad (caja → facturas → cocina → reimpresiones) y en orden de
+ * llegada dentro de cada carril. La prioridad se aplica al terminar cada trabajo.
+ */
+public class PrintSpooler {
+    private static final String TAG = "PrintSpooler";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final PrinterTransport transport;
+    private final PriorityBlockingQueue<PrintJob> queue;
+    private final Thread worker;
+    private final List<PrintJob.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // 📊 Métricas de la cola
+    private final AtomicIntegerArray laneDepth = new AtomicIntegerArray(PrintJob.Lane.values().length);
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong printedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile PrinterCapabilities capabilities = PrinterCapabilities.DEFAULT;
+    private volatile ConnectionListener connectionListener;
+    private volatile boolean connectionAnnounced;
+    private volatile FailoverHandler failoverHandler;
+
+    // 🔌 Fallar rápido con la impresora caída; reintentos con espera exponencial
+    private final CircuitBreaker circuitBreaker;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+
+    // ⏸️ Pausa por estado de la impresora (sin papel, tapa abierta...)
+    private final Object pauseLock = new Object();
+    private volatile String pauseReason;
+    private volatile PrintJob currentJob;
+    private volatile boolean running = true;
+
+    /**
+     * 🔗 Aviso de conexión establecida (en el hilo de la cola, antes de renderizar)
+     */
+    public interface ConnectionListener {
+        void onConnected(PrinterTransport transport);
+    }
+
+    /**
+     * 🔀 Pasar un trabajo a otra impresora de su grupo (true si lo aceptó)
+     */
+    public interface FailoverHandler {
+        boolean reroute(PrintJob job, String reason);
+    }
+
+    public PrintSpooler(PrinterTransport transport) {
+        this.transport = transport;
+        this.circuitBreaker = new CircuitBreaker(transport.getId());
+        this.queue = new PriorityBlockingQueue<>(INITIAL_CAPACITY, (a, b) -> {
+            int byLane = Integer.compare(a.getLane().ordinal(), b.getLane().ordinal());
+            return byLane != 0 ? byLane : Long.compare(a.getSequence(), b.getSequence());
+        });
+        this.worker = new Thread(this::runWorker, "PrintSpooler-" + transport.getId());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public PrinterTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * 🧩 Capacidades con las que se renderizan los próximos trabajos
+     */
+    public void setCapabilities(PrinterCapabilities capabilities) {
+        this.capabilities = capabilities != null ? capabilities : PrinterCapabilities.DEFAULT;
+        transport.setMaxChunkSize(this.capabilities.getMaxChunkSize());
+    }
+
+    public PrinterCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * 🔗 Receptor de conexiones (p. ej. para sondear la impresora la primera vez)
+     */
+    public void setConnectionListener(ConnectionListener listener) {
+        this.connectionListener = listener;
+    }
+
+    /**
+     * 🔀 Receptor de trabajos que esta impresora no pudo imprimir (lo fija el planificador)
+     */
+    void setFailoverHandler(FailoverHandler handler) {
+        this.failoverHandler = handler;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.DEFAULT;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 💚 Puede recibir trabajos de su grupo: sin pausa y con el circuito cerrado
+     */
+    public boolean isHealthy() {
+        return pauseReason == null
+            && (transport.isConnected() || circuitBreaker.getState() == CircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * ⚖️ Carga para el balanceo: trabajos en espera más el que se está imprimiendo
+     */
+    public int getLoad() {
+        return queue.size() + (currentJob != null ? 1 : 0);
+    }
+
+    /**
+     * 📡 Registrar receptor para los eventos de todos los trabajos
+     */
+    public void addListener(PrintJob.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PrintJob.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 📥 Encolar trabajo (retorna inmediatamente)
+     */
+    public PrintJob submit(PrintJob job) {
+        for (PrintJob.Listener listener : listeners) {
+            job.addListener(listener);
+        }
+        job.setState(PrintJob.State.QUEUED, null);
+        job.setQueuedAtNanos(System.nanoTime());
+        job.getTrace().mark(JobTrace.Stage.ENQUEUE);
+        JobTraceStore.register(job.getTrace());
+
+        laneDepth.incrementAndGet(job.getLane().ordinal());
+        queue.offer(job);
+
+        int depth = queue.size();
+        maxDepth.accumulateAndGet(depth, Math::max);
+        Log.d(TAG, "📥 Trabajo " + job.getId() + " en carril " + job.getLane()
+            + " (" + transport.getId() + ", profundidad " + depth + ")");
+        return job;
+    }
+
+    private void runWorker() {
+        while (running) {
+            PrintJob job;
+            try {
+                awaitResumed(null);
+                job = queue.take();
+            } catch (InterruptedException | InterruptedIOException e) {
+                break;
+            }
+            laneDepth.decrementAndGet(job.getLane().ordinal());
+            PipelineMetrics.record(PipelineMetrics.QUEUE_WAIT, job.getQueuedAtNanos());
+            job.getTrace().mark(JobTrace.Stage.DEQUEUE);
+            job.getTrace().setPrinter(transport.getId());
+            currentJob = job;
+            try {
+                process(job);
+            } finally {
+                currentJob = null;
+            }
+        }
+        Log.d(TAG, "🛑 Cola " + transport.getId() + " detenida");
+    }
+
+    /**
+     * ⚙️ Procesar un trabajo: renderizar, segmentar, conectar si hace falta y enviar
+     * Si la conexión falla a mitad, se reconecta y se reanuda desde el siguiente segmento.
+     * Conexiones y envíos fallidos gastan el mismo presupuesto de la política por trabajo.
+     */
+    private void process(PrintJob job) {
+        RetryBudget budget = new RetryBudget(retryPolicy);
+        try {
+            // Conectar primero: el aviso de conexión puede actualizar el perfil con el que se renderiza
+            if (transport.isConnected()) {
+                if (!connectionAnnounced) {
+                    // Conectada antes de crear la cola (USB ya enchufado): avisar una vez aquí
+                    announceConnected();
+                }
+            } else if (!connectWithRetry(budget)) {
+                failOrReroute(job, circuitBreaker.getState() == CircuitBreaker.State.CLOSED
+                    ? "Impresora no conectada" : "Impresora no disponible (se reintenta en segundo plano)");
+                return;
+            }
+
+            job.getTrace().mark(JobTrace.Stage.RENDER);
+            if (job.getRendered() == null) {
+                job.setState(PrintJob.State.RENDERING, null);
+                long renderStart = System.nanoTime();
+                job.setRendered(PrintJobRenderer.render(job, capabilities));
+                PipelineMetrics.record(PipelineMetrics.RENDER, renderStart);
+            }
+            if (job.getSegmentBoundaries() == null) {
+                job.setSegments(EscPosSegmenter.segment(job.getRendered(), capabilities));
+            }
+            job.getTrace().mark(JobTrace.Stage.CONVERT);
+
+            job.setState(PrintJob.State.SENDING, job.getSentSegments() > 0
+                ? "Reanudando desde segmento " + job.getSentSegments() : null);
+
+            long sendStart = System.nanoTime();
+            while (true) {
+                try {
+                    sendSegments(job);
+                    PipelineMetrics.record(PipelineMetrics.SEND, sendStart);
+                    break;
+                } catch (IOException writeError) {
+                    if (writeError instanceof InterruptedIOException) {
+                        throw writeError;
+                    }
+                    // Un envío cortado cuenta para el circuito igual que una conexión fallida
+                    circuitBreaker.recordFailure();
+                    transport.disconnect();
+                    Log.w(TAG, "⚠️ Error enviando " + job.getId() + " en segmento " + job.getSentSegments()
+                        + "/" + job.getSegmentCount() + ", reconectando: " + writeError.getMessage());
+                    if (!budget.retryAfterFailure()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Cola detenida durante un reintento");
+                        }
+                        throw writeError;
+                    }
+                    if (!connectWithRetry(budget)) {
+                        failOrReroute(job, "Impresora no conectada (" + job.getSentSegments() + "/"
+                            + job.getSegmentCount() + " segmentos enviados)");
+                        return;
+                    }
+                }
+            }
+
+            circuitBreaker.recordSuccess();
+            printedCount.incrementAndGet();
+            job.setState(PrintJob.State.PRINTED, null);
+
+        } catch (InterruptedIOException e) {
+            // Cola detenida durante una pausa: el trabajo queda pendiente para el journal
+            Log.w(TAG, "🛑 Trabajo " + job.getId() + " interrumpido en pausa");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error procesando trabajo " + job.getId(), e);
+            fail(job, e.getMessage());
+        }
+    }
+
+    /**
+     * ✂️ Enviar los segmentos pendientes; al reanudar se repite antes el preámbulo
+     * (inicialización) por si la impresora se reinició, y después la página de códigos,
+     * alineación, negrita y tamaño vigentes en ese segmento, que el ESC @ acaba de borrar
+     */
+    private void sendSegments(PrintJob job) throws IOException {
+        byte[] data = job.getRendered();
+        int[] boundaries = job.getSegmentBoundaries();
+        int total = boundaries.length - 1;
+        int next = job.getSentSegments();
+
+        if (next > 0) {
+            if (job.getPreambleLength() > 0) {
+                write(job, data, 0, job.getPreambleLength());
+            }
+            byte[] mode = job.getResumeCommands(next);
+            if (mode.length > 0) {
+                write(job, mode, 0, mode.length);
+            }
+        }
+        for (int segment = next; segment < total; segment++) {
+            awaitResumed(job);
+            int start = boundaries[segment];
+            write(job, data, start, boundaries[segment + 1] - start);
+            job.markSegmentSent(segment + 1);
+        }
+        // El transporte aceptó el último bloque (USB/TCP no confirman la impresión física)
+        job.getTrace().markLatest(JobTrace.Stage.LAST_BYTE_ACKED);
+    }
+
+    private void write(PrintJob job, byte[] data, int offset, int length) throws IOException {
+        long writeStart = System.nanoTime();
+        transport.write(data, offset, length);
+        PipelineMetrics.record(PipelineMetrics.TRANSPORT_WRITE, writeStart);
+        bytesWritten.addAndGet(length);
+        job.getTrace().mark(JobTrace.Stage.FIRST_BYTE_SENT);
+    }
+
+    /**
+     * ⏸️ Detener el envío en la próxima frontera de segmento (lo llama el monitor de estado)
+     */
+    public void pause(String reason) {
+        synchronized (pauseLock) {
+            pauseReason = reason != null ? reason : "En pausa";
+        }
+        Log.w(TAG, "⏸️ Cola " + transport.getId() + " en pausa: " + pauseReason);
+    }
+
+    /**
+     * ▶️ Reanudar el envío
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            pauseReason = null;
+            pauseLock.notifyAll();
+        }
+        Log.i(TAG, "▶️ Cola " + transport.getId() + " reanudada");
+    }
+
+    public boolean isPaused() {
+        return pauseReason != null;
+    }
+
+    public String getPauseReason() {
+        return pauseReason;
+    }
+
+    /**
+     * ⏳ Esperar mientras la cola esté en pausa; el trabajo en curso pasa a PAPER_OUT
+     * y vuelve a SENDING al reanudar
+     */
+    private void awaitResumed(PrintJob job) throws InterruptedIOException {
+        if (pauseReason == null) {
+            return;
+        }
+        synchronized (pauseLock) {
+            if (pauseReason == null) {
+                return;
+            }
+            if (job != null) {
+                job.setState(PrintJob.State.PAPER_OUT, pauseReason);
+            }
+            while (pauseReason != null && running) {
+                try {
+                    pauseLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Cola detenida en pausa");
+                }
+            }
+        }
+        if (job != null) {
+            job.setState(PrintJob.State.SENDING, "Reanudando tras pausa");
+        }
+    }
+
+    /**
+     * 🔁 Conectar con los intentos que le queden al trabajo mientras el circuito lo permita
+     */
+    private boolean connectWithRetry(RetryBudget budget) {
+        while (true) {
+            if (!circuitBreaker.allowRequest()) {
+                return false;
+            }
+            if (connect()) {
+                return true;
+            }
+            if (!budget.retryAfterFailure()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 🎟️ Intentos de un trabajo: getMaxAttempts() en total entre conexiones y envíos,
+     * con la espera de la política entre uno y otro
+     */
+    private static class RetryBudget {
+        private final RetryPolicy policy;
+        private int failures;
+
+        RetryBudget(RetryPolicy policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * ⏳ Registrar un intento fallido y esperar antes del siguiente
+         * (false si no quedan intentos o el hilo fue interrumpido)
+         */
+        boolean retryAfterFailure() {
+            failures++;
+            return failures < policy.getMaxAttempts() && policy.sleepBefore(failures);
+        }
+    }
+
+    /**
+     * 🧪 Intento de recuperación en segundo plano (lo llama el monitor de estado):
+     * un solo intento, y solo si el circuito lo permite
+     */
+    public boolean probeConnection() {
+        if (transport.isConnected()) {
+            // Se reconectó por otro camino (USB reenchufado, reconexión manual)
+            circuitBreaker.recordSuccess();
+            return true;
+        }
+        return circuitBreaker.allowRequest() && connect();
+    }
+
+    private boolean connect() {
+        if (!transport.connect()) {
+            circuitBreaker.recordFailure();
+            return false;
+        }
+        circuitBreaker.recordSuccess();
+        announceConnected();
+        return true;
+    }
+
+    /**
+     * 🔗 Avisar la conexión al receptor (sondeo del perfil en modo AUTO)
+     */
+    private void announceConnected() {
+        connectionAnnounced = true;
+        ConnectionListener listener = connectionListener;
+        if (listener != null) {
+            try {
+                listener.onConnected(transport);
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Error en aviso de conexión de " + transport.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 🔀 Con grupo de impresoras, pasar el trabajo a otra sana en lugar de fallarlo
+     */
+    private void failOrReroute(PrintJob job, String message) {
+        FailoverHandler handler = failoverHandler;
+        if (job.getPoolId() != null && handler != null && handler.reroute(job, message)) {
+            return;
+        }
+        fail(job, message);
+    }
+
+    private void fail(PrintJob job, String message) {
+        failedCount.incrementAndGet();
+        job.setState(PrintJob.State.FAILED, message);
+    }
+
+    /**
+     * 📏 Trabajos en espera (sin contar el que se está imprimiendo)
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueDepth(PrintJob.Lane lane) {
+        return laneDepth.get(lane.ordinal());
+    }
+
+    /**
+     * 📊 Métricas de la cola en JSON
+     */
+    public JSONObject toStatusJson() {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("printer", transport.getId());
+            status.put("connected", transport.isConnected());
+            status.put("depth", queue.size());
+            status.put("max_depth", maxDepth.get());
+
+            JSONObject lanes = new JSONObject();
+            for (PrintJob.Lane lane : PrintJob.Lane.values()) {
+                lanes.put(lane.name().toLowerCase(), laneDepth.get(lane.ordinal()));
+            }
+            status.put("lanes", lanes);
+
+            PrintJob current = currentJob;
+            status.put("current_job", current != null ? current.getId() : JSONObject.NULL);
+            status.put("paused", pauseReason != null);
+            status.put("healthy", isHealthy());
+            status.put("circuit", circuitBreaker.toJson());
+            status.put("printed", printedCount.get());
+            status.put("failed", failedCount.get());
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando métricas de la cola", e);
+        }
+        return status;
+    }
+
+    /**
+     * 📈 Valores de la cola para GET /metrics (series con la etiqueta de la impresora)
+     */
+    public void collectMetrics(Map<String, Number> out) {
+        String label = "{printer=\"" + transport.getId() + "\"}";
+        out.put("queue_depth" + label, queue.size());
+        out.put("queue_max_depth" + label, maxDepth.get());
+        out.put("printer_connected" + label, transport.isConnected() ? 1 : 0);
+        out.put("printer_paused" + label, pauseReason != null ? 1 : 0);
+        out.put("printer_circuit_open" + label,
+            circuitBreaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1);
+        out.put("jobs_printed_total" + label, printedCount.get());
+        out.put("jobs_failed_total" + label, failedCount.get());
+        out.put("bytes_written_total" + label, bytesWritten.get());
+    }
+
+    /**
+     * 🛑 Detener la cola. Los trabajos en espera no cambian de estado:
+     * siguen en el journal y se reencolan al reiniciar
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        // Descontar cada trabajo de su carril: /metrics y el balanceo leen laneDepth
+        for (PrintJob pending; (pending = queue.poll()) != null; ) {
+            laneDepth.decrementAndGet(pending.getLane().ordinal());
+        }
+    }
+
+    /**
+     * 🔀 Sacar de la cola los trabajos en espera del grupo (para repartirlos en otra impresora)
+     */
+    List<PrintJob> drainPooled(String poolId) {
+        List<PrintJob> drained = new ArrayList<>();
+        for (Object pending : queue.toArray()) {
+            PrintJob job = (PrintJob) pending;
+            if (poolId.equals(job.getPoolId()) && queue.remove(job)) {
+                laneDepth.decrementAndGet(job.getLane().ordinal());
+                drained.add(job);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * ❌ Marcar como fallidos los trabajos en espera (al quitar la impresora)
+     */
+    public void failPending(String reason) {
+        for (PrintJob pending; (pending = queue.poll()) != null; ) {
+            laneDepth.decrementAndGet(pending.getLane().ordinal());
+            fail(pending, reason);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.gridpos.puenteimpresora;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 🧩 Perfil de capacidades de una impresora: qué comandos entiende y con qué
+ * tamaños trabaja. Los formateadores, el segmentador y el transporte lo consultan
+ * para usar el juego de comandos más rápido que soporta cada modelo.
+ */
+public class PrinterCapabilities {
+
+    // 🔤 Páginas de códigos en orden de preferencia (CP850 primero: la más común en español)
+    private static final List<CodePageEncoder> FULL_CODE_PAGES = Collections.unmodifiableList(Arrays.asList(
+        CodePageEncoder.CP850, CodePageEncoder.CP858, CodePageEncoder.WPC1252,
+        CodePageEncoder.CP437, CodePageEncoder.CP866));
+    private static final List<CodePageEncoder> BASIC_CODE_PAGES = Collections.unmodifiableList(Arrays.asList(
+        CodePageEncoder.CP850, CodePageEncoder.CP437));
+
+    /**
+     * ✂️ Variantes de corte (GS V)
+     */
+    public enum CutMode {
+        FULL(new byte[] {0x1D, 0x56, 0x00}),                  // GS V 0
+        PARTIAL(new byte[] {0x1D, 0x56, 0x01}),               // GS V 1
+        FEED_FULL(new byte[] {0x1D, 0x56, 0x41, 0x03}),       // GS V A 3: avanza y corta
+        FEED_PARTIAL(new byte[] {0x1D, 0x56, 0x42, 0x03});    // GS V B 3
+
+        private final byte[] command;
+
+        CutMode(byte[] command) {
+            this.command = command;
+        }
+
+        /**
+         * 🔍 Los modos con avance (GS V A/B) no necesitan saltos de línea previos
+         */
+        public boolean feedsBeforeCut() {
+            return this == FEED_FULL || this == FEED_PARTIAL;
+        }
+    }
+
+    /**
+     * 🎯 Capacidades por defecto (impresora ESC/POS moderna)
+     */
+    public static final PrinterCapabilities DEFAULT = new Builder().build();
+
+    /**
+     * 🛟 Capacidades mínimas: QR y códigos de barras en imagen, bandas raster
+     * pequeñas y transferencias USB cortas
+     */
+    public static final PrinterCapabilities BASIC = new Builder()
+        .nativeQr(false)
+        .nativeBarcode(false)
+        .codePages(BASIC_CODE_PAGES)
+        .cutMode(CutMode.FULL)
+        .maxChunkSize(512)
+        .bufferSize(2048)
+        .build();
+
+    private static final PrinterCapabilities THREEDNSTAR = new Builder()
+        .maxRasterRows(128)
+        .build();
+
+    private static final PrinterCapabilities EPSON = new Builder()
+        .maxRasterRows(256)
+        .maxChunkSize(16384)
+        .bufferSize(8192)
+        .build();
+
+    private static final PrinterCapabilities CITIZEN = new Builder()
+        .maxRasterRows(256)
+        .bufferSize(8192)
+        .build();
+
+    // Star en emulación ESC/POS: sin CP866 y bandas medianas
+    private static final PrinterCapabilities STAR = new Builder()
+        .codePages(Arrays.asList(
+            CodePageEncoder.CP850, CodePageEncoder.CP858, CodePageEncoder.WPC1252, CodePageEncoder.CP437))
+        .maxRasterRows(128)
+        .build();
+
+    // Configuración manual: como la genérica, pero abre el cajón por ambos pines
+    private static final PrinterCapabilities CUSTOM = BASIC.toBuilder()
+        .drawerPins(0, 1)
+        .build();
+
+    private final boolean nativeQr;
+    private final boolean nativeBarcode;
+    private final List<CodePageEncoder> codePages;
+    private final boolean rasterText;
+    private final int dotWidth80;
+    private final int dotWidth58;
+    private final int maxRasterRows;
+    private final CutMode cutMode;
+    private final int[] drawerPins;
+    private final int maxChunkSize;
+    private final int bufferSize;
+
+    private PrinterCapabilities(Builder builder) {
+        if (builder.codePages == null || builder.codePages.isEmpty()) {
+            throw new IllegalArgumentException("Se requiere al menos una página de códigos");
+        }
+        this.nativeQr = builder.nativeQr;
+        this.nativeBarcode = builder.nativeBarcode;
+        this.codePages = builder.codePages;
+        this.rasterText = builder.rasterText;
+        this.dotWidth80 = builder.dotWidth80;
+        this.dotWidth58 = builder.dotWidth58;
+        this.maxRasterRows = Math.max(1, builder.maxRasterRows);
+        this.cutMode = builder.cutMode;
+        this.drawerPins = builder.drawerPins.clone();
+        this.maxChunkSize = Math.max(64, builder.maxChunkSize);
+        this.bufferSize = Math.max(256, builder.bufferSize);
+    }
+
+    /**
+     * 🔍 Perfil según el tipo de impresora seleccionado
+     * Las genéricas y personalizadas usan QR y códigos de barras en imagen porque
+     * muchos clones no implementan GS ( k ni GS k formato B, y solo se les ofrecen
+     * las páginas de códigos que casi todos traen (CP850 y CP437)
+     */
+    public static PrinterCapabilities forType(PrinterType type) {
+        if (type == null) {
+            return DEFAULT;
+        }
+        switch (type) {
+            case THREEDNSTAR:
+                return THREEDNSTAR;
+            case ESCPOS:
+                return BASIC;
+            case EPSON:
+                return EPSON;
+            case CITIZEN:
+                return CITIZEN;
+            case STAR:
+                return STAR;
+            case CUSTOM:
+                return CUSTOM;
+            default:
+                return DEFAULT;
+        }
+    }
+
+    /**
+     * 🔗 La impresora genera el QR con GS ( k
+     */
+    public boolean supportsNativeQr() {
+        return nativeQr;
+    }
+
+    /**
+     * 📊 La impresora genera códigos de barras 1D con GS k
+     */
+    public boolean supportsNativeBarcode() {
+        return nativeBarcode;
+    }
+
+    /**
+     * 🔤 Páginas de códigos soportadas, en orden de preferencia
+     */
+    public List<CodePageEncoder> getCodePages() {
+        return codePages;
+    }
+
+    /**
+     * 🔣 Dibujar como imagen el texto que ninguna página de códigos soporta (emoji, CJK)
+     */
+    public boolean rendersUnsupportedText() {
+        return rasterText;
+    }
+
+    /**
+     * 📏 Puntos imprimibles por línea para el ancho de papel (mm)
+     */
+    public int getDotWidth(int paperWidth) {
+        return paperWidth == 58 ? dotWidth58 : dotWidth80;
+    }
+
+    /**
+     * ⚫⚪ Filas máximas por comando GS v 0 (las imágenes más altas se envían en bandas)
+     */
+    public int getMaxRasterRows() {
+        return maxRasterRows;
+    }
+
+    public CutMode getCutMode() {
+        return cutMode;
+    }
+
+    /**
+     * ✂️ Comando de corte del modelo
+     */
+    public byte[] getCutCommand() {
+        return cutMode.command.clone();
+    }
+
+    /**
+     * 💰 ESC p m 25 250 por cada pin configurado (0 = pin 2, 1 = pin 5)
+     */
+    public byte[] getDrawerCommand() {
+        byte[] command = new byte[drawerPins.length * 5];
+        for (int i = 0; i < drawerPins.length; i++) {
+            command[i * 5] = 0x1B;
+            command[i * 5 + 1] = 0x70;
+            command[i * 5 + 2] = (byte) drawerPins[i];
+            command[i * 5 + 3] = 0x19;
+            command[i * 5 + 4] = (byte) 0xFA;
+        }
+        return command;
+    }
+
+    /**
+     * 🔌 Bytes máximos por transferencia USB
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * 📦 Buffer de recepción de la impresora (tamaño objetivo de cada segmento)
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 🔣 Copia con el modo de texto como imagen activado o desactivado
+     */
+    public PrinterCapabilities withRasterText(boolean enabled) {
+        if (enabled == rasterText) {
+            return this;
+        }
+        return toBuilder().rasterText(enabled).build();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.nativeQr = nativeQr;
+        builder.nativeBarcode = nativeBarcode;
+        builder.codePages = codePages;
+        builder.rasterText = rasterText;
+        builder.dotWidth80 = dotWidth80;
+        builder.dotWidth58 = dotWidth58;
+        builder.maxRasterRows = maxRasterRows;
+        builder.cutMode = cutMode;
+        builder.drawerPins = drawerPins.clone();
+        builder.maxChunkSize = maxChunkSize;
+        builder.bufferSize = bufferSize;
+        return builder;
+    }
+
+    /**
+     * 🏗️ Constructor de perfiles (valores por defecto = impresora ESC/POS moderna de 203 dpi)
+     */
+    public static class Builder {
+        private boolean nativeQr = true;
+        private boolean nativeBarcode = true;
+        private List<CodePageEncoder> codePages = FULL_CODE_PAGES;
+        private boolean rasterText = false;
+        private int dotWidth80 = 576;
+        private int dotWidth58 = 384;
+        private int maxRasterRows = EscPosSegmenter.BAND_ROWS;
+        private CutMode cutMode = CutMode.FEED_FULL;
+        private int[] drawerPins = {0};
+        private int maxChunkSize = 4096;
+        private int bufferSize = EscPosSegmenter.TARGET_SEGMENT_BYTES;
+
+        public Builder nativeQr(boolean nativeQr) {
+            this.nativeQr = nativeQr;
+            return this;
+        }
+
+        public Builder nativeBarcode(boolean nativeBarcode) {
+            this.nativeBarcode = nativeBarcode;
+            return this;
+        }
+
+        public Builder codePages(List<CodePageEncoder> codePages) {
+            this.codePages = Collections.unmodifiableList(new ArrayList<>(codePages));
+            return this;
+        }
+
+        public Builder rasterText(boolean rasterText) {
+            this.rasterText = rasterText;
+            return this;
+        }
+
+        public Builder dotWidth(int dotWidth80, int dotWidth58) {
+            this.dotWidth80 = dotWidth80;
+            this.dotWidth58 = dotWidth58;
+            return this;
+        }
+
+        public Builder maxRasterRows(int maxRasterRows) {
+            this.maxRasterRows = maxRasterRows;
+            return this;
+        }
+
+        public Builder cutMode(CutMode cutMode) {
+            this.cutMode = cutMode;
+            return this;
+        }
+
+        public Builder drawerPins(int... drawerPins) {
+            this.drawerPins = drawerPins.length > 0 ? drawerPins.clone() : new int[] {0};
+            return this;
+        }
+
+        public Builder maxChunkSize(int maxChunkSize) {
+            this.maxChunkSize = maxChunkSize;
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public PrinterCapabilities build() {
+            return new PrinterCapabilities(this);
+        }
+    }
+}
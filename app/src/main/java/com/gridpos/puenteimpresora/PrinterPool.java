@@ -0,0 +1,136 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ⚖️ Grupo lógico de impresoras intercambiables (p. ej. "caja" = USB + red)
+ * Cada trabajo va a la impresora sana con menos carga; si una se atasca o se
+ * desconecta, sus trabajos en espera pasan a otra del grupo.
+ */
+public class PrinterPool {
+    private static final String TAG = "PrinterPool";
+
+    private final String name;
+    private final List<String> members;
+    private final PrintScheduler scheduler;
+    private final AtomicLong failovers = new AtomicLong();
+
+    PrinterPool(String name, List<String> members, PrintScheduler scheduler) {
+        this.name = name;
+        this.members = Collections.unmodifiableList(new ArrayList<>(members));
+        this.scheduler = scheduler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * 🎯 Impresora sana con menos trabajos; a igual carga gana la primera de la lista
+     * Si ninguna está sana se usa la de menor carga (el trabajo espera en su cola)
+     */
+    public String select() {
+        String best = select(null, true);
+        return best != null ? best : select(null, false);
+    }
+
+    /**
+     * 🔀 Otra impresora sana del grupo (null si no hay)
+     */
+    public String selectHealthyExcept(String printerId) {
+        return select(printerId, true);
+    }
+
+    private String select(String excluded, boolean healthyOnly) {
+        String best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (String member : members) {
+            PrintSpooler spooler = scheduler.getSpooler(member);
+            if (spooler == null || member.equals(excluded) || (healthyOnly && !spooler.isHealthy())) {
+                continue;
+            }
+            int load = spooler.getLoad();
+            if (load < bestLoad) {
+                best = member;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 🩺 Revisar las impresoras del grupo y repartir los trabajos en espera de las
+     * que no están sanas entre las demás; retorna cuántos trabajos se movieron
+     */
+    int checkHealth() {
+        int moved = 0;
+        for (String member : members) {
+            PrintSpooler spooler = scheduler.getSpooler(member);
+            if (spooler == null || spooler.isHealthy() || spooler.getQueueDepth() == 0
+                || selectHealthyExcept(member) == null) {
+                continue;
+            }
+            for (PrintJob job : spooler.drainPooled(name)) {
+                String target = selectHealthyExcept(member);
+                if (target == null) {
+                    // Nadie más disponible: devolverlo a su cola
+                    spooler.submit(job);
+                    continue;
+                }
+                moveTo(job, target, "Impresora " + member + " no disponible");
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 🔀 Pasar un trabajo a otra impresora del grupo (se renderiza de nuevo con su perfil)
+     */
+    void moveTo(PrintJob job, String target, String reason) {
+        String from = job.getPrinterId();
+        job.resetForReroute();
+        job.setPrinterId(target);
+        failovers.incrementAndGet();
+        job.getTrace().markRerouted(from);
+        Log.w(TAG, "🔀 Grupo " + name + ": trabajo " + job.getId() + " de " + from + " a " + target
+            + " (" + reason + ")");
+        scheduler.getSpooler(target).submit(job);
+    }
+
+    public JSONObject toStatusJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("name", name);
+            JSONArray printers = new JSONArray();
+            for (String member : members) {
+                PrintSpooler spooler = scheduler.getSpooler(member);
+                JSONObject entry = new JSONObject();
+                entry.put("printer", member);
+                entry.put("registered", spooler != null);
+                if (spooler != null) {
+                    entry.put("healthy", spooler.isHealthy());
+                    entry.put("load", spooler.getLoad());
+                }
+                printers.put(entry);
+            }
+            json.put("members", printers);
+            json.put("failovers", failovers.get());
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando grupo " + name, e);
+        }
+        return json;
+    }
+}
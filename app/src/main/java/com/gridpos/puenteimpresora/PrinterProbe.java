@@ -0,0 +1,204 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 🔎 Sondeo de la impresora por el canal de lectura (DLE EOT, GS I)
+ * Se ejecuta una vez por equipo al conectar en modo AUTO: identifica fabricante,
+ * modelo y firmware y de ahí sale el perfil de capacidades (PrinterProfileStore
+ * lo guarda en disco por VID/PID/serie).
+ */
+public class PrinterProbe {
+    private static final String TAG = "PrinterProbe";
+
+    private static final int RESPONSE_TIMEOUT_MS = 300;
+    private static final int DRAIN_TIMEOUT_MS = 20;
+
+    private static final byte[] DLE_EOT_PRINTER = {0x10, 0x04, 0x01};   // Estado de la impresora
+    private static final byte[] GS_I_MODEL_ID = {0x1D, 0x49, 0x01};     // ID de modelo (1 byte)
+    private static final byte[] GS_I_TYPE_ID = {0x1D, 0x49, 0x02};      // ID de tipo (bit 1 = cortador)
+    private static final byte[] GS_I_FIRMWARE = {0x1D, 0x49, 0x41};     // "_" + texto + NUL
+    private static final byte[] GS_I_MAKER = {0x1D, 0x49, 0x42};
+    private static final byte[] GS_I_MODEL_NAME = {0x1D, 0x49, 0x43};
+
+    /**
+     * 📋 Resultado del sondeo
+     */
+    public static class Result {
+        public final boolean responded;
+        public final int status;
+        public final int modelId;
+        public final int typeId;
+        public final String manufacturer;
+        public final String model;
+        public final String firmware;
+
+        Result(boolean responded, int status, int modelId, int typeId,
+               String manufacturer, String model, String firmware) {
+            this.responded = responded;
+            this.status = status;
+            this.modelId = modelId;
+            this.typeId = typeId;
+            this.manufacturer = manufacturer;
+            this.model = model;
+            this.firmware = firmware;
+        }
+
+        /**
+         * 🔍 Tipo de impresora según fabricante/modelo reportados (null = desconocido)
+         */
+        public PrinterType detectType() {
+            String identity = ((manufacturer != null ? manufacturer : "") + " "
+                + (model != null ? model : "")).toUpperCase(Locale.ROOT);
+            if (identity.contains("3NSTAR")) {
+                return PrinterType.THREEDNSTAR;
+            }
+            if (identity.contains("EPSON")) {
+                return PrinterType.EPSON;
+            }
+            if (identity.contains("CITIZEN")) {
+                return PrinterType.CITIZEN;
+            }
+            if (identity.contains("STAR")) {
+                return PrinterType.STAR;
+            }
+            if (responded && manufacturer == null && model == null) {
+                // Responde estado pero no GS I extendido: clon ESC/POS básico
+                return PrinterType.ESCPOS;
+            }
+            return null;
+        }
+
+        /**
+         * 🧩 Perfil de capacidades que corresponde al equipo sondeado
+         */
+        public PrinterCapabilities toCapabilities() {
+            PrinterType type = detectType();
+            return type != null ? PrinterCapabilities.forType(type) : PrinterCapabilities.DEFAULT;
+        }
+
+        public String describe() {
+            if (!responded) {
+                return "sin respuesta (solo salida)";
+            }
+            PrinterType type = detectType();
+            return (manufacturer != null ? manufacturer : "?") + " " + (model != null ? model : "?")
+                + (firmware != null ? " fw " + firmware : "")
+                + " → " + (type != null ? type.getDisplayName() : "perfil por defecto");
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("responded", responded);
+                json.put("status", status);
+                json.put("model_id", modelId);
+                json.put("type_id", typeId);
+                json.put("manufacturer", manufacturer);
+                json.put("model", model);
+                json.put("firmware", firmware);
+                PrinterType type = detectType();
+                json.put("detected_type", type != null ? type.name() : JSONObject.NULL);
+            } catch (Exception e) {
+                Log.w(TAG, "Error serializando sondeo", e);
+            }
+            return json;
+        }
+
+        public static Result fromJson(JSONObject json) {
+            return new Result(
+                json.optBoolean("responded", false),
+                json.optInt("status", -1),
+                json.optInt("model_id", -1),
+                json.optInt("type_id", -1),
+                optText(json, "manufacturer"),
+                optText(json, "model"),
+                optText(json, "firmware"));
+        }
+
+        private static String optText(JSONObject json, String key) {
+            return json.isNull(key) ? null : json.optString(key, null);
+        }
+    }
+
+    /**
+     * 🎯 Sondear la impresora; nunca lanza excepción (sin canal de lectura → responded=false)
+     */
+    public static Result probe(PrinterTransport transport) {
+        if (!transport.supportsRead()) {
+            Log.d(TAG, "🔎 " + transport.getId() + " no tiene canal de lectura, se omite el sondeo");
+            return new Result(false, -1, -1, -1, null, null, null);
+        }
+
+        // Consultas atómicas respecto a los segmentos que envía la cola
+        synchronized (transport) {
+            try {
+                drain(transport);
+                int status = queryByte(transport, DLE_EOT_PRINTER);
+                int modelId = queryByte(transport, GS_I_MODEL_ID);
+                int typeId = queryByte(transport, GS_I_TYPE_ID);
+                String manufacturer = queryText(transport, GS_I_MAKER);
+                String model = queryText(transport, GS_I_MODEL_NAME);
+                String firmware = queryText(transport, GS_I_FIRMWARE);
+
+                boolean responded = status >= 0 || modelId >= 0 || manufacturer != null;
+                Result result = new Result(responded, status, modelId, typeId, manufacturer, model, firmware);
+                Log.i(TAG, "🔎 Sondeo de " + transport.getDeviceKey() + ": " + result.describe());
+                return result;
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Sondeo interrumpido: " + e.getMessage());
+                return new Result(false, -1, -1, -1, null, null, null);
+            }
+        }
+    }
+
+    /**
+     * 📥 Descartar respuestas viejas (estados automáticos) antes de consultar
+     */
+    private static void drain(PrinterTransport transport) throws Exception {
+        byte[] buffer = new byte[64];
+        for (int i = 0; i < 8 && transport.read(buffer, DRAIN_TIMEOUT_MS) > 0; i++) {
+            // descartar
+        }
+    }
+
+    private static int queryByte(PrinterTransport transport, byte[] command) throws Exception {
+        transport.write(command);
+        byte[] buffer = new byte[16];
+        int received = transport.read(buffer, RESPONSE_TIMEOUT_MS);
+        return received > 0 ? buffer[0] & 0xFF : -1;
+    }
+
+    /**
+     * 📥 Respuestas de texto de GS I: encabezado 0x5F, texto y NUL final
+     */
+    private static String queryText(PrinterTransport transport, byte[] command) throws Exception {
+        transport.write(command);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        boolean started = false;
+        while (true) {
+            int received = transport.read(buffer, RESPONSE_TIMEOUT_MS);
+            if (received <= 0) {
+                return null;
+            }
+            for (int i = 0; i < received; i++) {
+                int b = buffer[i] & 0xFF;
+                if (!started) {
+                    started = b == 0x5F;
+                } else if (b == 0x00) {
+                    String value = new String(text.toByteArray(), StandardCharsets.US_ASCII).trim();
+                    return value.isEmpty() ? null : value;
+                } else if (text.size() < 80) {
+                    text.write(b);
+                }
+            }
+        }
+    }
+}
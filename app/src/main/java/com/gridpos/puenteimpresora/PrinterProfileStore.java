@@ -0,0 +1,84 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 💾 Caché en disco de los sondeos de impresora, por VID/PID/serie
+ * Así el sondeo (DLE EOT / GS I) solo corre la primera vez que se conecta cada equipo.
+ */
+public class PrinterProfileStore {
+    private static final String TAG = "PrinterProfileStore";
+
+    private final File file;
+    private final JSONObject profiles;
+
+    public PrinterProfileStore(File file) {
+        this.file = file;
+        this.profiles = load(file);
+    }
+
+    public synchronized PrinterProbe.Result get(String deviceKey) {
+        JSONObject entry = profiles.optJSONObject(deviceKey);
+        return entry != null ? PrinterProbe.Result.fromJson(entry) : null;
+    }
+
+    public synchronized void put(String deviceKey, PrinterProbe.Result result) {
+        try {
+            JSONObject entry = result.toJson();
+            entry.put("probed_at", System.currentTimeMillis());
+            profiles.put(deviceKey, entry);
+            save();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ No se pudo guardar el perfil de " + deviceKey, e);
+        }
+    }
+
+    public synchronized JSONObject toStatusJson() {
+        try {
+            return new JSONObject(profiles.toString());
+        } catch (Exception e) {
+            return new JSONObject();
+        }
+    }
+
+    private static JSONObject load(File file) {
+        if (!file.exists()) {
+            return new JSONObject();
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(content.toByteArray(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Caché de perfiles ilegible, se descarta: " + e.getMessage());
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * 💾 Escribir en un temporal y renombrar: un corte de luz no deja el archivo a medias
+     */
+    private void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(profiles.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("No se pudo reemplazar " + file.getName());
+        }
+    }
+}
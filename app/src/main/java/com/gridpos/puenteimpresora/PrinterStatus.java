@@ -0,0 +1,136 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+/**
+ * 🚦 Estado de la impresora leído con DLE EOT 1-4 (foto inmutable)
+ */
+public class PrinterStatus {
+    private static final String TAG = "PrinterStatus";
+
+    /**
+     * 🔍 Estado sin datos: impresora desconectada o sin canal de lectura
+     */
+    public static final PrinterStatus UNKNOWN = new PrinterStatus(false, -1, -1, -1, -1, 0);
+
+    private final boolean responded;
+    private final int printer;   // DLE EOT 1
+    private final int offline;   // DLE EOT 2
+    private final int error;     // DLE EOT 3
+    private final int paper;     // DLE EOT 4
+    private final long timestamp;
+
+    PrinterStatus(boolean responded, int printer, int offline, int error, int paper, long timestamp) {
+        this.responded = responded;
+        this.printer = printer;
+        this.offline = offline;
+        this.error = error;
+        this.paper = paper;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 🔍 Los bytes de estado válidos tienen bit 1 y 4 en 1, y bit 0 y 7 en 0
+     */
+    static boolean isStatusByte(int value) {
+        return value >= 0 && (value & 0x93) == 0x12;
+    }
+
+    public boolean isKnown() {
+        return responded;
+    }
+
+    public boolean isOnline() {
+        return responded && (printer & 0x08) == 0;
+    }
+
+    public boolean isCoverOpen() {
+        return offline >= 0 && (offline & 0x04) != 0;
+    }
+
+    public boolean isPaperOut() {
+        return (paper >= 0 && (paper & 0x60) != 0) || (offline >= 0 && (offline & 0x20) != 0);
+    }
+
+    public boolean isPaperNearEnd() {
+        return paper >= 0 && (paper & 0x0C) != 0;
+    }
+
+    public boolean isCutterError() {
+        return error >= 0 && (error & 0x08) != 0;
+    }
+
+    /**
+     * 🔥 Error que se recupera solo (p. ej. cabezal sobrecalentado)
+     */
+    public boolean isAutoRecoverableError() {
+        return error >= 0 && (error & 0x40) != 0;
+    }
+
+    public boolean isUnrecoverableError() {
+        return error >= 0 && (error & 0x20) != 0;
+    }
+
+    /**
+     * ⏸️ La cola debe esperar antes de enviar más datos
+     */
+    public boolean blocksPrinting() {
+        return isPaperOut() || isCoverOpen() || isCutterError()
+            || isAutoRecoverableError() || isUnrecoverableError();
+    }
+
+    /**
+     * 💬 Motivo legible de la pausa (null si puede imprimir)
+     */
+    public String getBlockingReason() {
+        if (isPaperOut()) {
+            return "Sin papel";
+        }
+        if (isCoverOpen()) {
+            return "Tapa abierta";
+        }
+        if (isAutoRecoverableError()) {
+            return "Cabezal sobrecalentado";
+        }
+        if (isCutterError()) {
+            return "Error del cortador";
+        }
+        if (isUnrecoverableError()) {
+            return "Error irrecuperable";
+        }
+        return null;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean sameConditionAs(PrinterStatus other) {
+        return other != null && responded == other.responded && isOnline() == other.isOnline()
+            && isPaperOut() == other.isPaperOut() && isPaperNearEnd() == other.isPaperNearEnd()
+            && isCoverOpen() == other.isCoverOpen() && blocksPrinting() == other.blocksPrinting();
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("known", responded);
+            if (responded) {
+                json.put("online", isOnline());
+                json.put("paper_out", isPaperOut());
+                json.put("paper_near_end", isPaperNearEnd());
+                json.put("cover_open", isCoverOpen());
+                json.put("cutter_error", isCutterError());
+                json.put("overheat", isAutoRecoverableError());
+                json.put("unrecoverable_error", isUnrecoverableError());
+                json.put("blocking_reason", getBlockingReason() != null ? getBlockingReason() : JSONObject.NULL);
+                json.put("updated_at", timestamp);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando estado de la impresora", e);
+        }
+        return json;
+    }
+}
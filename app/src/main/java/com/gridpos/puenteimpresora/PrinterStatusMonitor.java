@@ -0,0 +1,167 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 🚦 Monitor de estado en segundo plano (DLE EOT 1-4 por el canal de lectura)
+ * Pausa la cola de la impresora con papel agotado, tapa abierta o error y la
+ * reanuda sola cuando el problema se resuelve: no se siguen enviando tickets a
+ * una impresora detenida que los guarda en buffer o los descarta.
+ * Sondea más seguido mientras la cola está pausada para reanudar rápido.
+ */
+public class PrinterStatusMonitor {
+    private static final String TAG = "PrinterStatusMonitor";
+
+    private static final long POLL_INTERVAL_MS = 2000;
+    private static final long PAUSED_POLL_INTERVAL_MS = 500;
+    // Impresoras con endpoint IN que no contestan: no bloquear la cola con timeouts seguidos
+    private static final long SILENT_POLL_INTERVAL_MS = 30000;
+    private static final int RESPONSE_TIMEOUT_MS = 200;
+
+    private static final byte[][] STATUS_QUERIES = {
+        {0x10, 0x04, 0x01}, // Impresora
+        {0x10, 0x04, 0x02}, // Causa de fuera de línea
+        {0x10, 0x04, 0x03}, // Causa de error
+        {0x10, 0x04, 0x04}, // Sensor de papel
+    };
+
+    /**
+     * 📡 Cambios de estado (en el hilo del monitor)
+     */
+    public interface Listener {
+        void onStatusChanged(PrinterStatusMonitor monitor, PrinterStatus status);
+    }
+
+    private final PrinterTransport transport;
+    private final PrintSpooler spooler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+
+    private volatile PrinterStatus status = PrinterStatus.UNKNOWN;
+    private volatile boolean running = true;
+    private boolean pausedByMonitor;
+
+    public PrinterStatusMonitor(PrintSpooler spooler) {
+        this.spooler = spooler;
+        this.transport = spooler.getTransport();
+        this.thread = new Thread(this::run, "StatusMonitor-" + transport.getId());
+        this.thread.setDaemon(true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        thread.start();
+        Log.d(TAG, "🚦 Monitor de estado iniciado para " + transport.getId());
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    public PrinterStatus getStatus() {
+        return status;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                PrinterStatus current = poll();
+                update(current);
+                boolean silent = !current.isKnown() && transport.isConnected() && transport.supportsRead();
+                Thread.sleep(pausedByMonitor ? PAUSED_POLL_INTERVAL_MS
+                    : silent ? SILENT_POLL_INTERVAL_MS : POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Error consultando estado: " + e.getMessage());
+            }
+        }
+        Log.d(TAG, "🛑 Monitor de estado detenido para " + transport.getId());
+    }
+
+    /**
+     * 📥 Consultar DLE EOT 1-4; respuestas inválidas o ausentes quedan en -1
+     */
+    private PrinterStatus poll() {
+        if (!transport.isConnected()
+            && (pausedByMonitor || spooler.getCircuitBreaker().isProbeDue())) {
+            // Cola detenida o circuito abierto: probar la conexión aquí, fuera del camino de impresión
+            spooler.probeConnection();
+        }
+        if (!transport.isConnected() || !transport.supportsRead()) {
+            return PrinterStatus.UNKNOWN;
+        }
+        int[] values = new int[STATUS_QUERIES.length];
+        boolean responded = false;
+        byte[] buffer = new byte[16];
+
+        // Atómico respecto a los segmentos de la cola (DLE EOT es de tiempo real)
+        synchronized (transport) {
+            for (int i = 0; i < STATUS_QUERIES.length; i++) {
+                values[i] = -1;
+                try {
+                    transport.write(STATUS_QUERIES[i]);
+                    int received = transport.read(buffer, RESPONSE_TIMEOUT_MS);
+                    // La última respuesta es la de esta consulta (puede haber estados viejos antes)
+                    int value = received > 0 ? buffer[received - 1] & 0xFF : -1;
+                    if (PrinterStatus.isStatusByte(value)) {
+                        values[i] = value;
+                        responded = true;
+                    }
+                } catch (Exception e) {
+                    return PrinterStatus.UNKNOWN;
+                }
+            }
+        }
+        return new PrinterStatus(responded, values[0], values[1], values[2], values[3],
+            System.currentTimeMillis());
+    }
+
+    private void update(PrinterStatus current) {
+        PrinterStatus previous = status;
+        status = current;
+
+        // ⏸️/▶️ Back-pressure: solo se reanuda lo que pausó el monitor, y solo con
+        // un estado leído (sin respuesta se mantiene la pausa para no perder tickets)
+        if (current.isKnown() && current.blocksPrinting() && !pausedByMonitor) {
+            pausedByMonitor = true;
+            spooler.pause(current.getBlockingReason());
+        } else if (current.isKnown() && !current.blocksPrinting() && pausedByMonitor) {
+            pausedByMonitor = false;
+            spooler.resume();
+        }
+
+        if (!current.sameConditionAs(previous)) {
+            for (Listener listener : listeners) {
+                listener.onStatusChanged(this, current);
+            }
+        }
+    }
+
+    /**
+     * 📊 Estado actual + pausa de la cola en JSON
+     */
+    public JSONObject toStatusJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("printer", transport.getId());
+            json.put("connected", transport.isConnected());
+            json.put("readable", transport.supportsRead());
+            json.put("status", status.toJson());
+            json.put("paused", spooler.isPaused());
+            json.put("pause_reason", spooler.getPauseReason() != null ? spooler.getPauseReason() : JSONObject.NULL);
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando estado del monitor", e);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,62 @@
+package com.gridpos.puenteimpresora;
+
+import java.io.IOException;
+
+/**
+ * 🔌 Transporte hacia una impresora física (USB, red, etc.)
+ */
+public interface PrinterTransport {
+
+    /**
+     * 🏷️ Identificador estable de la impresora
+     */
+    String getId();
+
+    /**
+     * 🔗 Establecer conexión (bloqueante), true si quedó conectada
+     */
+    boolean connect();
+
+    boolean isConnected();
+
+    /**
+     * 📤 Enviar bytes ESC/POS a la impresora
+     */
+    void write(byte[] data) throws IOException;
+
+    /**
+     * ✂️ Enviar un segmento; retorna solo cuando el transporte aceptó todos sus bytes
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * 📥 La impresora puede responder (endpoint IN, socket bidireccional)
+     */
+    default boolean supportsRead() {
+        return false;
+    }
+
+    /**
+     * 📥 Leer respuesta de la impresora; retorna los bytes recibidos (0 si venció el tiempo)
+     * Para consultar de forma atómica, sincronizar sobre el transporte: escribir y leer dentro
+     * del mismo bloque evita que un segmento de otro trabajo se intercale.
+     */
+    default int read(byte[] buffer, int timeoutMs) throws IOException {
+        throw new IOException("Lectura no soportada por " + getId());
+    }
+
+    /**
+     * 🏷️ Identificador del equipo físico (para cachear su perfil)
+     */
+    default String getDeviceKey() {
+        return getId();
+    }
+
+    /**
+     * 🔌 Bytes máximos por transferencia (según el perfil de la impresora)
+     */
+    default void setMaxChunkSize(int bytes) {
+    }
+
+    void disconnect();
+}
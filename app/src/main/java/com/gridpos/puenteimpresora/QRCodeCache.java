@@ -0,0 +1,131 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 🗃️ Caché LRU de QR listos para enviar (nativo GS ( k o raster GS v 0)
+ * Clave: modo + papel o puntos + tamaño + ECC + contenido. Las reimpresiones y los QR
+ * promocionales del pie no vuelven a codificarse.
+ * Los arreglos devueltos son compartidos: solo lectura.
+ */
+public class QRCodeCache {
+    private static final String TAG = "QRCodeCache";
+
+    private static final int MAX_ENTRIES = 64;
+    private static final int MAX_BYTES = 512 * 1024;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static int cachedBytes = 0;
+
+    private static final LinkedHashMap<String, byte[]> cache =
+        new LinkedHashMap<String, byte[]>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                if (size() > MAX_ENTRIES) {
+                    cachedBytes -= eldest.getValue().length;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    /**
+     * 🔗 QR nativo (GS ( k) para el papel indicado
+     */
+    public static byte[] nativeQr(String content, int paperWidth, int ecc) {
+        int moduleSize = EscPosQRCode.moduleSizeForPaper(paperWidth);
+        String key = "N|" + paperWidth + "|" + moduleSize + "|" + ecc + "|" + content;
+
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        byte[] commands = EscPosQRCode.build(content, moduleSize, ecc);
+        PipelineMetrics.record(PipelineMetrics.QR, start);
+        return store(key, commands);
+    }
+
+    /**
+     * ⚫⚪ QR raster (GS v 0) para una línea de dotWidth puntos
+     * La clave va por puntos, no por papel: dos perfiles con el mismo papel pueden diferir
+     */
+    public static byte[] rasterQr(String content, int dotWidth, ErrorCorrectionLevel ecc) throws WriterException {
+        int maxDots = QRRasterEncoder.maxDotsForWidth(dotWidth);
+        String key = "R|" + maxDots + "|" + ecc + "|" + content;
+
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        byte[] commands = QRRasterEncoder.encode(content, maxDots, ecc).toRasterCommand();
+        PipelineMetrics.record(PipelineMetrics.QR, start);
+        return store(key, commands);
+    }
+
+    private static synchronized byte[] lookup(String key) {
+        byte[] cached = cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private static synchronized byte[] store(String key, byte[] commands) {
+        byte[] previous = cache.put(key, commands);
+        cachedBytes += commands.length - (previous != null ? previous.length : 0);
+
+        // Desalojar los menos usados si se pasa del límite de memoria
+        Iterator<Map.Entry<String, byte[]>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > MAX_BYTES && cache.size() > 1 && eldest.hasNext()) {
+            cachedBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+        Log.d(TAG, "🗃️ QR en caché (" + cache.size() + " entradas, " + cachedBytes + " bytes)");
+        return commands;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static synchronized void clear() {
+        cache.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * 📊 Métricas de la caché en JSON
+     */
+    public static synchronized JSONObject toStatusJson() {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("entries", cache.size());
+            status.put("bytes", cachedBytes);
+            status.put("hits", hits.get());
+            status.put("misses", misses.get());
+        } catch (Exception e) {
+            Log.w(TAG, "Error serializando métricas de la caché QR", e);
+        }
+        return status;
+    }
+}
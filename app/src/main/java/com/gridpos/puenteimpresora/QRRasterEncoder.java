@@ -0,0 +1,111 @@
+package com.gridpos.puenteimpresora;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * ⚫⚪ QR a raster 1-bit sin Bitmap ni Canvas (Java puro, probable en JVM)
+ * Cada módulo de la matriz ZXing se escala por un factor ENTERO y se escribe
+ * directo en filas GS v 0, así ningún módulo sale deformado.
+ */
+public class QRRasterEncoder {
+
+    // Zona de silencio en módulos (el estándar pide 4; 2 basta en papel térmico)
+    private static final int QUIET_ZONE = 2;
+
+    // El QR ocupa hasta 5/12 del ancho imprimible (240 de 576 puntos en 80 mm)
+    private static final int WIDTH_NUMERATOR = 5;
+    private static final int WIDTH_DENOMINATOR = 12;
+
+    /**
+     * 📦 Raster generado: filas de widthBytes bytes, MSB = punto izquierdo, 1 = negro
+     */
+    public static class Raster {
+        public final int widthDots;
+        public final int height;
+        public final int widthBytes;
+        public final byte[] rows;
+
+        Raster(int widthDots, int height, byte[] rows) {
+            this.widthDots = widthDots;
+            this.height = height;
+            this.widthBytes = (widthDots + 7) / 8;
+            this.rows = rows;
+        }
+
+        /**
+         * 🖨️ Comando GS v 0 listo para enviar
+         */
+        public byte[] toRasterCommand() {
+            byte[] command = new byte[8 + rows.length];
+            command[0] = 0x1D;
+            command[1] = 0x76;
+            command[2] = 0x30;
+            command[3] = 0x00;
+            command[4] = (byte) (widthBytes & 0xFF);
+            command[5] = (byte) ((widthBytes >> 8) & 0xFF);
+            command[6] = (byte) (height & 0xFF);
+            command[7] = (byte) ((height >> 8) & 0xFF);
+            System.arraycopy(rows, 0, command, 8, rows.length);
+            return command;
+        }
+    }
+
+    /**
+     * 📐 Ancho máximo recomendado para una línea de dotWidth puntos
+     * (PrinterCapabilities.getDotWidth del papel)
+     */
+    public static int maxDotsForWidth(int dotWidth) {
+        return dotWidth * WIDTH_NUMERATOR / WIDTH_DENOMINATOR;
+    }
+
+    /**
+     * 🎯 Codificar contenido como QR rasterizado con el mayor factor entero que quepa en maxDots
+     */
+    public static Raster encode(String content, int maxDots, ErrorCorrectionLevel ecc) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        QRCode code = Encoder.encode(content, ecc, hints);
+        return rasterize(code.getMatrix(), maxDots);
+    }
+
+    /**
+     * ⚫⚪ Escalar la matriz de módulos a filas de 1 bit
+     */
+    static Raster rasterize(ByteMatrix matrix, int maxDots) {
+        int modules = matrix.getWidth();
+        int totalModules = modules + 2 * QUIET_ZONE;
+        int scale = Math.max(1, maxDots / totalModules);
+
+        int size = totalModules * scale;
+        int widthBytes = (size + 7) / 8;
+        byte[] rows = new byte[widthBytes * size];
+        int offset = QUIET_ZONE * scale;
+
+        // Armar una fila por módulo y copiarla 'scale' veces
+        for (int y = 0; y < modules; y++) {
+            int rowStart = (offset + y * scale) * widthBytes;
+            for (int x = 0; x < modules; x++) {
+                if (matrix.get(x, y) != 1) {
+                    continue;
+                }
+                int dot = offset + x * scale;
+                for (int i = 0; i < scale; i++, dot++) {
+                    rows[rowStart + (dot >> 3)] |= (byte) (0x80 >>> (dot & 7));
+                }
+            }
+            for (int i = 1; i < scale; i++) {
+                System.arraycopy(rows, rowStart, rows, rowStart + i * widthBytes, widthBytes);
+            }
+        }
+
+        return new Raster(size, size, rows);
+    }
+}
@@ -0,0 +1,257 @@
+package com.gridpos.puenteimpresora;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * 📦 Lector de cuerpos HTTP con soporte para Content-Encoding gzip/deflate
+ * Descomprime en streaming directamente desde el socket, sin copias intermedias
+ */
+public class RequestBodyReader {
+    private static final String TAG = "RequestBodyReader";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Tope del cuerpo ya descomprimido: unos KB de gzip pueden inflarse a cientos de MB
+    public static final long MAX_BODY_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * 🚫 El cuerpo (descomprimido) supera MAX_BODY_BYTES: responder 413
+     */
+    public static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public BodyTooLargeException(long limit) {
+            super("El cuerpo de la petición supera el máximo de " + (limit / (1024 * 1024)) + " MB");
+        }
+    }
+
+    /**
+     * 📏 Cuerpo comprimido sin Content-Length: responder 411
+     * Sin longitud no hay fin de cuerpo en una conexión keep-alive y la lectura bloquearía el handler
+     */
+    public static class LengthRequiredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LengthRequiredException() {
+            super("Los cuerpos comprimidos requieren Content-Length");
+        }
+    }
+
+    /**
+     * 🔍 Verificar si el cuerpo viene comprimido (gzip o deflate)
+     */
+    public static boolean isCompressed(NanoHTTPD.IHTTPSession session) {
+        String encoding = getContentEncoding(session);
+        return "gzip".equals(encoding) || "x-gzip".equals(encoding) || "deflate".equals(encoding);
+    }
+
+    /**
+     * 📥 Abrir el cuerpo de la petición, limitado a Content-Length y descomprimido si aplica
+     * Lo leído (ya descomprimido) no puede pasar de MAX_BODY_BYTES; un cuerpo comprimido
+     * sin Content-Length se rechaza con LengthRequiredException
+     */
+    public static InputStream openBody(NanoHTTPD.IHTTPSession session) throws IOException {
+        long contentLength = getContentLength(session);
+        if (contentLength < 0 && isCompressed(session)) {
+            throw new LengthRequiredException();
+        }
+        InputStream body = new BoundedInputStream(session.getInputStream(), contentLength);
+
+        String encoding = getContentEncoding(session);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            Log.d(TAG, "📦 Cuerpo gzip (" + contentLength + " bytes comprimidos)");
+            return new SizeLimitedInputStream(new GZIPInputStream(body, BUFFER_SIZE), MAX_BODY_BYTES);
+        }
+        if ("deflate".equals(encoding)) {
+            Log.d(TAG, "📦 Cuerpo deflate (" + contentLength + " bytes comprimidos)");
+            return new SizeLimitedInputStream(openDeflate(body), MAX_BODY_BYTES);
+        }
+        if (contentLength > MAX_BODY_BYTES) {
+            throw new BodyTooLargeException(MAX_BODY_BYTES);
+        }
+        return new SizeLimitedInputStream(body, MAX_BODY_BYTES);
+    }
+
+    /**
+     * 📝 Leer el cuerpo completo como texto UTF-8 (JSON o Base64)
+     */
+    public static String readText(NanoHTTPD.IHTTPSession session) throws IOException {
+        // El buffer crece con lo leído: no reservar según un Content-Length que manda el cliente
+        StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+        char[] chars = new char[BUFFER_SIZE];
+        try (Reader reader = new InputStreamReader(openBody(session), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                builder.append(chars, 0, read);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 📥 Leer el cuerpo completo como bytes (formatos binarios)
+     */
+    public static byte[] readBytes(NanoHTTPD.IHTTPSession session) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = openBody(session)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 🔧 Deflate: soporta tanto zlib (RFC 1950) como deflate crudo (RFC 1951)
+     */
+    private static InputStream openDeflate(InputStream body) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(body, BUFFER_SIZE);
+        buffered.mark(2);
+        int cmf = buffered.read();
+        int flg = buffered.read();
+        buffered.reset();
+
+        // Encabezado zlib: método 8 y checksum (CMF*256 + FLG) múltiplo de 31
+        boolean zlibWrapped = cmf != -1 && flg != -1
+            && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlibWrapped), BUFFER_SIZE);
+    }
+
+    private static String getContentEncoding(NanoHTTPD.IHTTPSession session) {
+        Map<String, String> headers = session.getHeaders();
+        String encoding = headers != null ? headers.get("content-encoding") : null;
+        return encoding != null ? encoding.trim().toLowerCase() : "";
+    }
+
+    private static long getContentLength(NanoHTTPD.IHTTPSession session) {
+        Map<String, String> headers = session.getHeaders();
+        String length = headers != null ? headers.get("content-length") : null;
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "⚠️ Content-Length inválido: " + length);
+            return -1;
+        }
+    }
+
+    /**
+     * 🔒 Stream que falla con BodyTooLargeException al pasar del límite de bytes leídos
+     */
+    static class SizeLimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long read) throws BodyTooLargeException {
+            count += read;
+            if (count > limit) {
+                throw new BodyTooLargeException(limit);
+            }
+        }
+    }
+
+    /**
+     * 🔒 Stream limitado a Content-Length para no bloquear conexiones keep-alive
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit < 0 ? Long.MAX_VALUE : limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // El socket pertenece a NanoHTTPD, no cerrarlo aquí
+        }
+    }
+}
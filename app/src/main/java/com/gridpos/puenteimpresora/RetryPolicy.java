@@ -0,0 +1,56 @@
+package com.gridpos.puenteimpresora;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 🔁 Reintentos acotados con espera exponencial y jitter (inmutable)
+ * El jitter evita que varias colas reconecten al mismo tiempo contra la misma red.
+ */
+public class RetryPolicy {
+
+    /**
+     * 🎯 3 intentos: 250 ms, 500 ms (±20%), con tope de 4 s
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, 4000, 0.2);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double jitter;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, double jitter) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * ⏳ Espera antes del intento siguiente a "attempt" (1 = tras el primer fallo)
+     */
+    public long delayFor(int attempt) {
+        long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        if (jitter > 0) {
+            double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            delay = (long) (delay * factor);
+        }
+        return Math.max(0, delay);
+    }
+
+    /**
+     * ⏳ Dormir la espera del intento (false si el hilo fue interrumpido)
+     */
+    public boolean sleepBefore(int attempt) {
+        try {
+            Thread.sleep(delayFor(attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -18,7 +19,6 @@ public class SalePrintFormatter {
     private static final String TAG = "SalePrintFormatter";
     
     // 🎯 Comandos ESC/POS optimizados para facturas (compatibilidad mejorada)
-    private static final byte[] INITIALIZE = {27, 64}; // ESC @
     private static final byte[] JUSTIFY_CENTER = {27, 97, 1}; // ESC a 1 (centrado)
     private static final byte[] JUSTIFY_LEFT = {27, 97, 0}; // ESC a 0 (izquierda)
     private static final byte[] JUSTIFY_RIGHT = {27, 97, 2}; // ESC a 2 (derecha)
@@ -32,29 +32,30 @@ public class SalePrintFormatter {
     private static final byte[] MODE_DOUBLE_WIDTH_EMPHASIZED = {29, 33, 48}; // GS ! 48
     private static final byte[] FEED_LINE = {10}; // LF
     private static final byte[] CUT_PAPER = {29, 86, 65, 3}; // GS V A 3
-    private static final byte[] OPEN_CASH = {27, 112, 0, 25, (byte) 250}; // ESC p 0 25 250
-    
-    // 🌍 Comandos para caracteres especiales
-    private static final byte[] SET_CHARSET_SPAIN = {27, 82, 10}; // ESC R 10
-    private static final byte[] SET_CHARSET_LATIN1 = {27, 116, 2}; // ESC t 2
-    private static final String CHARSET_ENCODING = "ISO-8859-1";
     
     /**
      * 📄 Formatear datos de factura completa a comandos ESC/POS
      */
     public static byte[] formatSale(String jsonData, int paperWidth, boolean openCash) {
+        return formatSale(jsonData, paperWidth, openCash, PrinterCapabilities.DEFAULT);
+    }
+
+    /**
+     * 📄 Formatear factura según las capacidades de la impresora destino
+     */
+    public static byte[] formatSale(String jsonData, int paperWidth, boolean openCash,
+                                    PrinterCapabilities capabilities) {
         try {
             JSONObject data = new JSONObject(jsonData);
             boolean isSmallPaper = paperWidth == 58;
             
             Log.d(TAG, "🧾 Formateando factura - Papel: " + paperWidth + "mm");
             
-            StringBuilder output = new StringBuilder();
+            EscPosWriter output = new EscPosWriter(capabilities).setPaperWidth(paperWidth);
             
             // === INICIALIZACIÓN ===
-            addCommand(output, INITIALIZE);
-            addCommand(output, SET_CHARSET_SPAIN);
-            addCommand(output, SET_CHARSET_LATIN1);
+            // 🌍 La página de códigos se elige una vez según el texto (ESC t n solo si cambia)
+            output.initialize();
             addCommand(output, JUSTIFY_CENTER);
             
             // === ENCABEZADO DE EMPRESA ===
@@ -83,20 +84,22 @@ public class SalePrintFormatter {
             formatAdditionalInfo(output, data, isSmallPaper);
             
             // === PIE DE PÁGINA ===
-            formatFooter(output, data, isSmallPaper);
+            formatFooter(output, data, isSmallPaper, capabilities);
             
             // === FINALIZACIÓN ===
-            addCommand(output, FEED_LINE);
-            addCommand(output, FEED_LINE);
-            addCommand(output, CUT_PAPER);
+            // GS V A/B avanzan por sí mismos hasta la cuchilla
+            if (!capabilities.getCutMode().feedsBeforeCut()) {
+                addCommand(output, FEED_LINE);
+                addCommand(output, FEED_LINE);
+            }
+            addCommand(output, capabilities.getCutCommand());
             
             // 💰 Abrir caja si se solicita
             if (openCash) {
-                addCommand(output, OPEN_CASH);
+                addCommand(output, capabilities.getDrawerCommand());
             }
             
-            // Convertir a bytes con codificación apropiada
-            return output.toString().getBytes(CHARSET_ENCODING);
+            return output.toByteArray();
             
         } catch (Exception e) {
             Log.e(TAG, "❌ Error formateando factura: " + e.getMessage(), e);
@@ -107,7 +110,7 @@ public class SalePrintFormatter {
     /**
      * 🏢 Formatear encabezado de empresa
      */
-    private static void formatCompanyHeader(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatCompanyHeader(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             // 🖼️ Logo de la empresa (si existe)
             String logoBase64 = data.optString("logo_base64", null);
@@ -161,7 +164,7 @@ public class SalePrintFormatter {
     /**
      * 📋 Formatear información de venta
      */
-    private static void formatSaleInfo(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatSaleInfo(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             JSONObject saleData = data.optJSONObject("sale_data");
             if (saleData == null) return;
@@ -185,7 +188,7 @@ public class SalePrintFormatter {
     /**
      * 👤 Formatear información de cliente
      */
-    private static void formatClientInfo(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatClientInfo(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             JSONObject clientInfo = data.optJSONObject("client_info");
             if (clientInfo == null) return;
@@ -217,7 +220,7 @@ public class SalePrintFormatter {
     /**
      * 📦 Formatear productos
      */
-    private static void formatProducts(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatProducts(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             JSONArray products = data.optJSONArray("products");
             if (products == null || products.length() == 0) return;
@@ -272,7 +275,7 @@ public class SalePrintFormatter {
     /**
      * 📱 Formatear producto para papel 58mm
      */
-    private static void formatProduct58mm(StringBuilder output, String name, int quantity, 
+    private static void formatProduct58mm(EscPosWriter output, String name, int quantity, 
                                         double totalValue, String notes, double discount) {
         try {
             // Truncar nombre a 20 caracteres para 58mm
@@ -303,7 +306,7 @@ public class SalePrintFormatter {
     /**
      * 🖨️ Formatear producto para papel 80mm
      */
-    private static void formatProduct80mm(StringBuilder output, String name, int quantity, 
+    private static void formatProduct80mm(EscPosWriter output, String name, int quantity, 
                                         double totalValue, String notes, double discount) {
         try {
             // Formatear línea: NOMBRE CANTIDAD VALOR
@@ -331,7 +334,7 @@ public class SalePrintFormatter {
     /**
      * 💰 Formatear totales
      */
-    private static void formatTotals(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatTotals(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             JSONObject totals = data.optJSONObject("totals");
             if (totals == null) return;
@@ -385,7 +388,7 @@ public class SalePrintFormatter {
     /**
      * ℹ️ Formatear información adicional
      */
-    private static void formatAdditionalInfo(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatAdditionalInfo(EscPosWriter output, JSONObject data, boolean isSmallPaper) {
         try {
             // Observaciones de la venta
             JSONObject saleData = data.optJSONObject("sale_data");
@@ -479,7 +482,8 @@ public class SalePrintFormatter {
     /**
      * 📋 Formatear pie de página
      */
-    private static void formatFooter(StringBuilder output, JSONObject data, boolean isSmallPaper) {
+    private static void formatFooter(EscPosWriter output, JSONObject data, boolean isSmallPaper,
+                                     PrinterCapabilities capabilities) {
         try {
             addCommand(output, FEED_LINE);
             
@@ -507,6 +511,15 @@ public class SalePrintFormatter {
                     addCommand(output, FEED_LINE);
                     addCommand(output, MODE_NORMAL);
                 }
+                
+                // 📊 Código de barras de la venta (campo "barcode")
+                EscPosBarcode barcode = EscPosBarcode.fromJson(data.opt("barcode"), saleId);
+                if (barcode != null) {
+                    setCenterAlignment(output);
+                    addCommand(output, barcode.build(capabilities, isSmallPaper ? 58 : 80));
+                    addCommand(output, FEED_LINE);
+                    setLeftAlignment(output);
+                }
             }
             
             // 🔗 QR del CUFE (si existe factura electrónica)
@@ -528,8 +541,13 @@ public class SalePrintFormatter {
                 Log.d(TAG, "🔗 Generando QR para CUFE: " + cufeQR);
                 addCommand(output, FEED_LINE);
                 
-                // Imprimir QR centrado
-                formatQRCode(output, cufeQR);
+                // Imprimir QR centrado (nativo si la impresora lo soporta)
+                int dotWidth = capabilities.getDotWidth(isSmallPaper ? 58 : 80);
+                if (capabilities.supportsNativeQr()) {
+                    formatNativeQRCode(output, cufeQR, isSmallPaper, dotWidth);
+                } else {
+                    formatQRCode(output, cufeQR, dotWidth);
+                }
                 
                 // Mostrar CUFE en texto de forma más compacta y legible
                 if (validCufe) {
@@ -559,16 +577,14 @@ public class SalePrintFormatter {
     /**
      * 🔧 Agregar comando ESC/POS al output
      */
-    private static void addCommand(StringBuilder output, byte[] command) {
-        for (byte b : command) {
-            output.append((char) (b & 0xFF));
-        }
+    private static void addCommand(EscPosWriter output, byte[] command) {
+        output.write(command);
     }
     
     /**
      * 🎯 Centrar texto con múltiples comandos para mejor compatibilidad
      */
-    private static void setCenterAlignment(StringBuilder output) {
+    private static void setCenterAlignment(EscPosWriter output) {
         addCommand(output, JUSTIFY_CENTER); // Comando principal
         addCommand(output, CENTER_ALT);     // Comando alternativo
     }
@@ -576,7 +592,7 @@ public class SalePrintFormatter {
     /**
      * 📏 Centrar texto manualmente con espacios (fallback)
      */
-    private static void addCenteredText(StringBuilder output, String text, int paperWidth) {
+    private static void addCenteredText(EscPosWriter output, String text, int paperWidth) {
         if (text == null || text.isEmpty()) return;
         
         int maxChars = paperWidth == 58 ? 32 : 48; // Caracteres por línea según papel
@@ -598,52 +614,17 @@ public class SalePrintFormatter {
     /**
      * 🎯 Alinear a la izquierda con múltiples comandos
      */
-    private static void setLeftAlignment(StringBuilder output) {
+    private static void setLeftAlignment(EscPosWriter output) {
         addCommand(output, JUSTIFY_LEFT); // Comando principal
         addCommand(output, LEFT_ALT);     // Comando alternativo
     }
     
     /**
-     * 📝 Agregar texto normalizado
+     * 📝 Agregar texto codificado en la página de códigos de la sesión
      */
-    private static void addText(StringBuilder output, String text) {
+    private static void addText(EscPosWriter output, String text) {
         if (text == null || text.isEmpty()) return;
-        
-        // Usar TextEncodingHelper para manejar caracteres especiales
-        try {
-            byte[] encodedText = TextEncodingHelper.encodeTextForThermalPrinter(text);
-            for (byte b : encodedText) {
-                output.append((char) (b & 0xFF));
-            }
-        } catch (Exception e) {
-            // Fallback: usar texto simple
-            output.append(normalizeSpanishCharacters(text));
-        }
-    }
-    
-    /**
-     * 🔄 Normalizar caracteres españoles (fallback)
-     */
-    private static String normalizeSpanishCharacters(String text) {
-        if (text == null) return "";
-        
-        return text
-            .replace("ñ", "n")
-            .replace("Ñ", "N")
-            .replace("á", "a")
-            .replace("é", "e")
-            .replace("í", "i")
-            .replace("ó", "o")
-            .replace("ú", "u")
-            .replace("ü", "u")
-            .replace("Á", "A")
-            .replace("É", "E")
-            .replace("Í", "I")
-            .replace("Ó", "O")
-            .replace("Ú", "U")
-            .replace("Ü", "U")
-            .replace("¿", "?")
-            .replace("¡", "!");
+        output.text(text);
     }
     
     /**
@@ -651,9 +632,9 @@ public class SalePrintFormatter {
      */
     private static byte[] createErrorMessage() {
         try {
-            StringBuilder error = new StringBuilder();
+            EscPosWriter error = new EscPosWriter(PrinterCapabilities.DEFAULT, 256);
             
-            addCommand(error, INITIALIZE);
+            error.initialize();
             addCommand(error, JUSTIFY_CENTER);
             addCommand(error, MODE_EMPHASIZED);
             addText(error, "ERROR EN FACTURA");
@@ -666,7 +647,7 @@ public class SalePrintFormatter {
             addCommand(error, FEED_LINE);
             addCommand(error, CUT_PAPER);
             
-            return error.toString().getBytes(CHARSET_ENCODING);
+            return error.toByteArray();
             
         } catch (Exception e) {
             Log.e(TAG, "Error creando mensaje de error: " + e.getMessage());
@@ -693,7 +674,7 @@ public class SalePrintFormatter {
     /**
      * 🖼️ Formatear logo de la empresa (Base64 a imagen ESC/POS)
      */
-    private static void formatLogo(StringBuilder output, String logoBase64) {
+    private static void formatLogo(EscPosWriter output, String logoBase64) {
         try {
             Log.d(TAG, "🖼️ Procesando logo de empresa...");
             
@@ -716,7 +697,7 @@ public class SalePrintFormatter {
                 // Convertir a ESC/POS usando SimpleImageConverter
                 byte[] logoCommands = SimpleImageConverter.convertBitmapSimple(logoBitmap);
                 if (logoCommands != null && logoCommands.length > 0) {
-                    output.append(new String(logoCommands, CHARSET_ENCODING));
+                    addCommand(output, logoCommands);
                     addCommand(output, FEED_LINE);
                 }
                 
@@ -731,29 +712,37 @@ public class SalePrintFormatter {
     }
     
     /**
-     * 🔗 Formatear código QR (URL a QR ESC/POS)
+     * 🔗 QR nativo con GS ( k (la impresora genera el símbolo)
+     */
+    private static void formatNativeQRCode(EscPosWriter output, String qrUrl, boolean isSmallPaper, int dotWidth) {
+        try {
+            byte[] qrCommands = QRCodeCache.nativeQr(qrUrl, isSmallPaper ? 58 : 80, EscPosQRCode.ECC_M);
+            setCenterAlignment(output);
+            addCommand(output, qrCommands);
+            addCommand(output, FEED_LINE);
+            setLeftAlignment(output);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ QR nativo no disponible, usando imagen: " + e.getMessage());
+            formatQRCode(output, qrUrl, dotWidth);
+        }
+    }
+
+    /**
+     * 🔗 Formatear código QR como imagen raster (impresoras sin GS ( k)
+     * Los módulos se escalan por un factor entero directo a GS v 0, sin Bitmap
      */
-    private static void formatQRCode(StringBuilder output, String qrUrl) {
+    private static void formatQRCode(EscPosWriter output, String qrUrl, int dotWidth) {
         try {
-            Log.d(TAG, "🔗 Generando QR para URL: " + qrUrl);
+            Log.d(TAG, "🔗 Generando QR raster para URL: " + qrUrl);
             
-            // Generar QR tamaño óptimo para no cortarse (120x120px)
-            Bitmap qrBitmap = QRCodeGenerator.generateQRCode(qrUrl, 120, 120); // Tamaño conservador
+            byte[] qrCommands = QRCodeCache.rasterQr(qrUrl, dotWidth, ErrorCorrectionLevel.M);
             
-            if (qrBitmap != null) {
-                // Convertir QR a ESC/POS con centrado mejorado
-                byte[] qrCommands = SimpleImageConverter.convertBitmapSimple(qrBitmap);
-                if (qrCommands != null && qrCommands.length > 0) {
-                    setCenterAlignment(output); // Centrado mejorado
-                    output.append(new String(qrCommands, CHARSET_ENCODING));
-                    addCommand(output, FEED_LINE);
-                    setLeftAlignment(output); // Volver a izquierda
-                }
-                
-                Log.d(TAG, "✅ QR generado correctamente");
-            } else {
-                Log.w(TAG, "⚠️ No se pudo generar el QR");
-            }
+            setCenterAlignment(output);
+            addCommand(output, qrCommands);
+            addCommand(output, FEED_LINE);
+            setLeftAlignment(output); // Volver a izquierda
+            
+            Log.d(TAG, "✅ QR generado correctamente: " + qrCommands.length + " bytes");
             
         } catch (Exception e) {
             Log.e(TAG, "❌ Error generando QR: " + e.getMessage());
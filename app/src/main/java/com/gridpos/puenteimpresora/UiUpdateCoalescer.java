@@ -0,0 +1,163 @@
+package com.gridpos.puenteimpresora;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.Toast;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 🖼️ Agrupador de actualizaciones de UI
+ * Cualquier hilo deja la última actualización de cada widget (la anterior se descarta)
+ * y el hilo principal las aplica juntas en un frame de Choreographer, como mucho cada
+ * minIntervalMs. Los toasts se acumulan en contadores ("✅ Ticket impreso (×14)") y se
+ * muestra uno solo por ventana, así la cola de impresión nunca inunda el looper.
+ */
+public class UiUpdateCoalescer {
+    private static final String TAG = "UiUpdateCoalescer";
+
+    // Un toast corto dura ~2 s: no mostrar otro antes
+    private static final long TOAST_WINDOW_MS = 2000;
+    private static final int MAX_TOAST_LINES = 3;
+
+    private final Context context;
+    private final Choreographer choreographer;
+    private final long minIntervalNanos;
+    private final Map<String, Runnable> pendingUpdates = new LinkedHashMap<>();
+    private final Map<String, Integer> pendingToasts = new LinkedHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    // Solo hilo principal
+    private long lastFlushNanos;
+    private long lastToastNanos;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (stopped) {
+                return;
+            }
+            long waitNanos = minIntervalNanos - (frameTimeNanos - lastFlushNanos);
+            if (waitNanos > 0) {
+                choreographer.postFrameCallbackDelayed(this, waitNanos / 1000000 + 1);
+                return;
+            }
+            lastFlushNanos = frameTimeNanos;
+            scheduled.set(false);
+            flush(frameTimeNanos);
+        }
+    };
+
+    /**
+     * 🎯 Crear en el hilo principal (Choreographer es por hilo)
+     */
+    public UiUpdateCoalescer(Context context, long minIntervalMs) {
+        this.context = context;
+        this.choreographer = Choreographer.getInstance();
+        this.minIntervalNanos = minIntervalMs * 1000000;
+    }
+
+    /**
+     * 🔄 Programar la actualización de un widget; reemplaza la pendiente con la misma clave
+     */
+    public void post(String key, Runnable update) {
+        synchronized (pendingUpdates) {
+            pendingUpdates.put(key, update);
+        }
+        schedule(0);
+    }
+
+    /**
+     * 🍞 Sumar un toast; mensajes iguales dentro de la ventana se muestran una vez con su cuenta
+     */
+    public void toast(String message) {
+        synchronized (pendingToasts) {
+            Integer count = pendingToasts.get(message);
+            pendingToasts.put(message, count == null ? 1 : count + 1);
+        }
+        schedule(0);
+    }
+
+    public void stop() {
+        stopped = true;
+        choreographer.removeFrameCallback(frameCallback);
+        synchronized (pendingUpdates) {
+            pendingUpdates.clear();
+        }
+        synchronized (pendingToasts) {
+            pendingToasts.clear();
+        }
+    }
+
+    private void schedule(long delayMs) {
+        if (!stopped && scheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallbackDelayed(frameCallback, delayMs);
+        }
+    }
+
+    private void flush(long frameTimeNanos) {
+        List<Runnable> updates;
+        synchronized (pendingUpdates) {
+            updates = new ArrayList<>(pendingUpdates.values());
+            pendingUpdates.clear();
+        }
+        for (Runnable update : updates) {
+            try {
+                update.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error aplicando actualización de UI", e);
+            }
+        }
+
+        long toastWaitMs = TOAST_WINDOW_MS - (frameTimeNanos - lastToastNanos) / 1000000;
+        String text = null;
+        synchronized (pendingToasts) {
+            if (!pendingToasts.isEmpty()) {
+                if (toastWaitMs <= 0) {
+                    text = buildToastText();
+                    pendingToasts.clear();
+                } else {
+                    schedule(toastWaitMs);
+                }
+            }
+        }
+        if (text != null) {
+            lastToastNanos = frameTimeNanos;
+            try {
+                Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+                Log.d(TAG, "Toast mostrado: " + text);
+            } catch (Exception e) {
+                Log.e(TAG, "Error mostrando toast", e);
+            }
+        }
+    }
+
+    /**
+     * 📋 Un renglón por mensaje distinto, con "(×N)" si se repitió
+     */
+    private String buildToastText() {
+        StringBuilder text = new StringBuilder();
+        int lines = 0;
+        for (Map.Entry<String, Integer> entry : pendingToasts.entrySet()) {
+            if (lines == MAX_TOAST_LINES) {
+                text.append("\n… y ").append(pendingToasts.size() - lines).append(" más");
+                break;
+            }
+            if (lines > 0) {
+                text.append('\n');
+            }
+            text.append(entry.getKey());
+            if (entry.getValue() > 1) {
+                text.append(" (×").append(entry.getValue()).append(')');
+            }
+            lines++;
+        }
+        return text.toString();
+    }
+}
@@ -18,7 +18,7 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
 
-public class UsbPrinterManager {
+public class UsbPrinterManager implements PrinterTransport {
     private static final String TAG = "UsbPrinterManager";
     private static final String ACTION_USB_PERMISSION = "com.gridpos.puenteimpresora.USB_PERMISSION";
     
@@ -27,7 +27,9 @@ public class UsbPrinterManager {
     private UsbDevice printerDevice;
     private UsbDeviceConnection connection;
     private UsbEndpoint endpointOut;
+    private UsbEndpoint endpointIn; // Respuestas de estado (null si la impresora es solo de salida)
     private boolean hasPermission = false;
+    private volatile int maxChunkSize = 4096;
 
     public UsbPrinterManager(Context context) {
         this.context = context;
@@ -219,6 +221,7 @@ public class UsbPrinterManager {
                 connection.close();
                 return false;
             }
+            endpointIn = findEndpointIn(usbInterface);
 
             Log.d(TAG, "Conexión USB establecida exitosamente");
             return true;
@@ -235,14 +238,30 @@ public class UsbPrinterManager {
             throw new IOException("Impresora no conectada");
         }
 
-        int transferred = connection.bulkTransfer(endpointOut, data, data.length, 5000);
-        if (transferred < 0) {
-            throw new IOException("Error al enviar datos a la impresora");
+        printBytes(data, 0, data.length);
+        Log.d(TAG, "Datos enviados a la impresora: " + data.length + " bytes");
+    }
+
+    /**
+     * ✂️ Enviar una porción del buffer, repitiendo si la transferencia queda parcial
+     */
+    public synchronized void printBytes(byte[] data, int offset, int length) throws IOException {
+        if (connection == null || endpointOut == null) {
+            throw new IOException("Impresora no conectada");
         }
 
-        Log.d(TAG, "Datos enviados a la impresora: " + transferred + " bytes");
+        int end = offset + length;
+        while (offset < end) {
+            int chunk = Math.min(maxChunkSize, end - offset);
+            int transferred = connection.bulkTransfer(endpointOut, data, offset, chunk, 5000);
+            if (transferred <= 0) {
+                throw new IOException("Error al enviar datos a la impresora (faltan " + (end - offset) + " bytes)");
+            }
+            offset += transferred;
+        }
     }
 
+    @Override
     public void disconnect() {
         try {
             if (connection != null) {
@@ -253,15 +272,94 @@ public class UsbPrinterManager {
                 connection = null;
             }
             endpointOut = null;
+            endpointIn = null;
             Log.d(TAG, "Conexión USB cerrada");
         } catch (Exception e) {
             Log.e(TAG, "Error al cerrar conexión USB", e);
         }
     }
 
+    @Override
+    public String getId() {
+        return "usb";
+    }
+
+    @Override
+    public boolean connect() {
+        return connectToPrinter();
+    }
+
+    @Override
+    public boolean supportsRead() {
+        return connection != null && endpointIn != null;
+    }
+
+    /**
+     * 📥 Leer la respuesta de la impresora por el endpoint IN (0 si no llegó nada a tiempo)
+     */
+    @Override
+    public synchronized int read(byte[] buffer, int timeoutMs) throws IOException {
+        if (connection == null || endpointIn == null) {
+            throw new IOException("La impresora no tiene canal de lectura");
+        }
+        int received = connection.bulkTransfer(endpointIn, buffer, buffer.length, timeoutMs);
+        return Math.max(0, received);
+    }
+
+    /**
+     * 🏷️ Clave del dispositivo para la caché de perfiles: VID:PID:serie
+     */
+    @Override
+    public String getDeviceKey() {
+        if (printerDevice == null) {
+            return getId();
+        }
+        String serial = null;
+        try {
+            serial = connection != null ? connection.getSerial() : null;
+        } catch (Exception e) {
+            Log.w(TAG, "No se pudo leer el número de serie", e);
+        }
+        return String.format("%04x:%04x:%s", printerDevice.getVendorId(), printerDevice.getProductId(),
+            serial != null ? serial.trim() : "-");
+    }
+
+    /**
+     * 🔍 Endpoint bulk de entrada de la interfaz (para DLE EOT, GS I y ASB)
+     */
+    private static UsbEndpoint findEndpointIn(UsbInterface usbInterface) {
+        for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
+            UsbEndpoint endpoint = usbInterface.getEndpoint(i);
+            if (endpoint.getDirection() == UsbConstants.USB_DIR_IN
+                && endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void setMaxChunkSize(int bytes) {
+        this.maxChunkSize = Math.max(64, bytes);
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        sendRawData(data);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Impresora no conectada");
+        }
+        printBytes(data, offset, length);
+    }
+
     /**
      * 🔍 Verificar si hay una conexión activa con la impresora
      */
+    @Override
     public boolean isConnected() {
         return connection != null && printerDevice != null && endpointOut != null && hasPermission;
     }
@@ -412,6 +510,7 @@ public class UsbPrinterManager {
             // Guardar referencias
             this.printerDevice = targetDevice;
             this.endpointOut = endpoint;
+            this.endpointIn = findEndpointIn(usbInterface);
             this.hasPermission = true;
             
             Log.i(TAG, "✅ Conectado exitosamente a: " + getDeviceDisplayName(targetDevice));
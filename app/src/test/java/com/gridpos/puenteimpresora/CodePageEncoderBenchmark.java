@@ -0,0 +1,120 @@
+package com.gridpos.puenteimpresora;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ⏱️ Comparación de rendimiento: CodePageEncoder / EscPosWriter frente al camino anterior
+ * de TextEncodingHelper (encodeWithBestMethod con búsqueda de Charset por nombre y
+ * encodeTextForThermalPrinter con List&lt;Byte&gt;), copiado tal cual salvo los Log.d.
+ * No es una prueba unitaria: se ejecuta a mano con main() para no volver inestable la suite.
+ */
+public class CodePageEncoderBenchmark {
+
+    private static final String LINE = "Café con leche x2 ........ $8.500  Niño: Ñandú ¡Gracias!\n";
+    private static final int ITERATIONS = 20000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder ticket = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            ticket.append(LINE);
+        }
+        String text = ticket.toString();
+
+        // Mismo resultado que el camino anterior cuando el JDK tiene CP850
+        if (Charset.isSupported("CP850")
+                && !Arrays.equals(baselineEncodeWithBestMethod(text), CodePageEncoder.CP850.encode(text))) {
+            throw new AssertionError("CodePageEncoder.CP850 no coincide con encodeWithBestMethod");
+        }
+
+        byte[] out = new byte[text.length() * CodePageEncoder.MAX_BYTES_PER_CHAR];
+        double chars = (double) text.length() * ITERATIONS;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) { // la primera vuelta calienta el JIT
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += CodePageEncoder.CP850.encode(text, 0, text.length(), out, 0);
+            }
+            long tableNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += baselineEncodeWithBestMethod(text).length;
+            }
+            long bestMethodNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += TextEncodingHelper.encodeTextForThermalPrinter(text).length;
+            }
+            long writerNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += baselineEncodeTextForThermalPrinter(text).length;
+            }
+            long listNanos = System.nanoTime() - start;
+
+            if (round > 0) {
+                System.out.println(String.format(Locale.ROOT,
+                    "📊 ronda %d: CP850 tabla %.2f ns/car, encodeWithBestMethod %.2f ns/car | "
+                        + "encodeTextForThermalPrinter %.2f ns/car, anterior (List<Byte>) %.2f ns/car [%d]",
+                    round, tableNanos / chars, bestMethodNanos / chars,
+                    writerNanos / chars, listNanos / chars, sink));
+            }
+        }
+    }
+
+    /**
+     * 🐢 TextEncodingHelper.encodeWithBestMethod anterior
+     */
+    private static byte[] baselineEncodeWithBestMethod(String text) {
+        try {
+            if (Charset.isSupported("CP850")) {
+                return text.getBytes("CP850");
+            }
+        } catch (Exception e) {
+            // CP850 no disponible
+        }
+        try {
+            if (Charset.isSupported("ISO-8859-1")) {
+                return text.getBytes("ISO-8859-1");
+            }
+        } catch (Exception e) {
+            // ISO-8859-1 no disponible
+        }
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 🐢 TextEncodingHelper.encodeTextForThermalPrinter anterior: ESC @, ESC t 2, ESC R y
+     * el texto, acumulados byte a byte en una List&lt;Byte&gt;
+     */
+    private static byte[] baselineEncodeTextForThermalPrinter(String text) {
+        List<Byte> commandList = new ArrayList<>();
+        addBytes(commandList, TextEncodingHelper.ESC_INIT);
+        addBytes(commandList, TextEncodingHelper.SET_CODEPAGE_CP850);
+        addBytes(commandList, TextEncodingHelper.SET_INTERNATIONAL_CHARSET);
+        if (text.matches(".*[ñÑáéíóúüÁÉÍÓÚÜ¿¡].*")) {
+            // El original solo registraba un Log.d aquí, pero la expresión se evaluaba siempre
+            commandList.size();
+        }
+        addBytes(commandList, baselineEncodeWithBestMethod(text));
+        byte[] result = new byte[commandList.size()];
+        for (int i = 0; i < commandList.size(); i++) {
+            result[i] = commandList.get(i);
+        }
+        return result;
+    }
+
+    private static void addBytes(List<Byte> list, byte[] bytes) {
+        for (byte b : bytes) {
+            list.add(b);
+        }
+    }
+}
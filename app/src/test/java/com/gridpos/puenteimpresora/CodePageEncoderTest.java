@@ -0,0 +1,113 @@
+package com.gridpos.puenteimpresora;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 🔤 Tablas de páginas de códigos: ida y vuelta, comparación con el Charset del JDK,
+ * transliteración y reemplazo por '?'
+ */
+public class CodePageEncoderTest {
+
+    @Test
+    public void everyUpperHalfByteRoundTrips() {
+        for (CodePageEncoder encoder : CodePageEncoder.values()) {
+            for (int b = 0x80; b <= 0xFF; b++) {
+                char c = encoder.decode((byte) b);
+                if (c == '\uFFFD') {
+                    continue; // Posición sin carácter en windows-1252
+                }
+                assertTrue(encoder + " no codifica U+" + Integer.toHexString(c), encoder.canEncode(c));
+                byte[] encoded = encoder.encode(String.valueOf(c));
+                assertEquals(encoder + " 0x" + Integer.toHexString(b), 1, encoded.length);
+                assertEquals(encoder + " 0x" + Integer.toHexString(b), c, encoder.decode(encoded[0]));
+            }
+        }
+    }
+
+    @Test
+    public void tablesMatchJdkCharsets() {
+        assertMatchesCharset(CodePageEncoder.CP437, "IBM437");
+        assertMatchesCharset(CodePageEncoder.CP850, "IBM850");
+        assertMatchesCharset(CodePageEncoder.CP858, "IBM00858");
+        assertMatchesCharset(CodePageEncoder.WPC1252, "windows-1252");
+        assertMatchesCharset(CodePageEncoder.CP866, "IBM866");
+    }
+
+    private static void assertMatchesCharset(CodePageEncoder encoder, String charsetName) {
+        // JDK sin charsets extendidos: la prueba queda como omitida, no como aprobada
+        Assume.assumeTrue(charsetName + " no disponible en este JDK", Charset.isSupported(charsetName));
+        Charset charset = Charset.forName(charsetName);
+        for (int b = 0x80; b <= 0xFF; b++) {
+            char expected = new String(new byte[] {(byte) b}, charset).charAt(0);
+            char actual = encoder.decode((byte) b);
+            if (actual == '\uFFFD') {
+                continue;
+            }
+            assertEquals(encoder + " 0x" + Integer.toHexString(b), expected, actual);
+        }
+    }
+
+    @Test
+    public void asciiPassesThrough() {
+        String text = "Mesa 12 - Total: $45.000\n";
+        for (CodePageEncoder encoder : CodePageEncoder.values()) {
+            assertArrayEquals(text.getBytes(Charset.forName("US-ASCII")), encoder.encode(text));
+        }
+    }
+
+    @Test
+    public void spanishTextUsesNativeBytes() {
+        assertArrayEquals(new byte[] {'a', (byte) 0xA4, 'o'}, CodePageEncoder.CP850.encode("año"));
+        assertArrayEquals(new byte[] {(byte) 0xE1, (byte) 0xF1}, CodePageEncoder.WPC1252.encode("áñ"));
+        assertArrayEquals(new byte[] {(byte) 0xD5}, CodePageEncoder.CP858.encode("€"));
+    }
+
+    @Test
+    public void transliteratesMissingCharacters() {
+        assertEquals("EUR", ascii(CodePageEncoder.CP437.encode("€")));
+        assertEquals("EUR", ascii(CodePageEncoder.CP850.encode("€")));
+        assertEquals("\"hola\"", ascii(CodePageEncoder.CP437.encode("“hola”")));
+        assertEquals("...", ascii(CodePageEncoder.CP850.encode("…")));
+        assertEquals("O", ascii(CodePageEncoder.CP850.encode("Ő")));
+        // Cirílico no tiene tildes latinas: letra base
+        assertEquals("cafe", ascii(CodePageEncoder.CP866.encode("café")));
+        assertFalse(CodePageEncoder.CP866.canEncode("café"));
+        assertTrue(CodePageEncoder.canTransliterate('é'));
+    }
+
+    @Test
+    public void unmappableCharactersBecomeQuestionMarks() {
+        assertEquals("?", ascii(CodePageEncoder.CP850.encode("日")));
+        assertFalse(CodePageEncoder.canTransliterate('日'));
+        // Un emoji (par sustituto) produce un solo '?'
+        assertEquals("ok ?", ascii(CodePageEncoder.CP850.encode("ok 😀")));
+        assertEquals("a?b", ascii(CodePageEncoder.CP850.encode("a\uD83Db")));
+    }
+
+    @Test
+    public void encodesIntoBufferAtOffset() {
+        byte[] out = new byte[16];
+        out[0] = 0x1B;
+        int end = CodePageEncoder.CP850.encode("xñ€y", 1, 3, out, 1);
+        assertEquals(5, end);
+        assertArrayEquals(new byte[] {0x1B, (byte) 0xA4, 'E', 'U', 'R'}, java.util.Arrays.copyOf(out, end));
+    }
+
+    @Test
+    public void selectCommandIsEscT() {
+        assertArrayEquals(new byte[] {0x1B, 0x74, 2}, CodePageEncoder.CP850.selectCommand());
+        assertArrayEquals(new byte[] {0x1B, 0x74, 16}, CodePageEncoder.WPC1252.selectCommand());
+    }
+
+    private static String ascii(byte[] bytes) {
+        return new String(bytes, Charset.forName("ISO-8859-1"));
+    }
+}
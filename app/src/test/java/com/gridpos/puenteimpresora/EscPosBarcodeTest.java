@@ -0,0 +1,123 @@
+package com.gridpos.puenteimpresora;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 📊 Bytes de GS k nativo y del raster de respaldo
+ */
+public class EscPosBarcodeTest {
+
+    @Test
+    public void nativeCode128UsesCodeSetB() {
+        EscPosBarcode barcode = new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "V-1001", 80, 2,
+            EscPosBarcode.Hri.BELOW);
+        byte[] expected = {
+            0x1D, 0x48, 2,        // HRI debajo
+            0x1D, 0x68, 80,       // alto
+            0x1D, 0x77, 2,        // ancho de módulo
+            0x1D, 0x6B, 73, 8, '{', 'B', 'V', '-', '1', '0', '0', '1'
+        };
+        assertArrayEquals(expected, barcode.toNative());
+    }
+
+    @Test
+    public void nativeEan13SendsDigitsOnly() {
+        byte[] out = new EscPosBarcode(EscPosBarcode.Symbology.EAN13, "770123456789", 50, 3,
+            EscPosBarcode.Hri.NONE).toNative();
+        assertEquals(0, out[2]);
+        assertEquals(67, out[11]);
+        assertEquals(12, out[12]);
+        assertEquals('7', out[13]);
+    }
+
+    @Test
+    public void heightAndWidthAreClamped() {
+        byte[] out = new EscPosBarcode(EscPosBarcode.Symbology.ITF, "1234", 900, 20,
+            EscPosBarcode.Hri.BOTH).toNative();
+        assertEquals(3, out[2]);
+        assertEquals((byte) 255, out[5]);
+        assertEquals(6, out[8]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ean13RequiresDigits() {
+        new EscPosBarcode(EscPosBarcode.Symbology.EAN13, "77012345A789", 80, 2, EscPosBarcode.Hri.BELOW);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itfRequiresEvenLength() {
+        new EscPosBarcode(EscPosBarcode.Symbology.ITF, "123", 80, 2, EscPosBarcode.Hri.BELOW);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void code128RejectsNonAscii() {
+        new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "año", 80, 2, EscPosBarcode.Hri.BELOW);
+    }
+
+    @Test
+    public void symbologyAndHriParsing() {
+        assertEquals(EscPosBarcode.Symbology.EAN13, EscPosBarcode.Symbology.fromString("ean-13"));
+        assertEquals(EscPosBarcode.Symbology.CODE128, EscPosBarcode.Symbology.fromString("qr"));
+        assertEquals(EscPosBarcode.Hri.ABOVE, EscPosBarcode.Hri.fromString(" Above "));
+        assertEquals(EscPosBarcode.Hri.BELOW, EscPosBarcode.Hri.fromString(null));
+    }
+
+    @Test
+    public void rasterRepeatsOneRowWithHriBelow() throws Exception {
+        EscPosBarcode barcode = new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "V-1001", 40, 2,
+            EscPosBarcode.Hri.BELOW);
+        byte[] out = barcode.toRaster(384);
+
+        assertEquals(0x1D, out[0]);
+        assertEquals(0x76, out[1]);
+        int widthBytes = (out[4] & 0xFF) | (out[5] & 0xFF) << 8;
+        int height = (out[6] & 0xFF) | (out[7] & 0xFF) << 8;
+        assertEquals(40, height);
+        assertTrue(widthBytes * 8 <= 384);
+
+        byte[] firstRow = Arrays.copyOfRange(out, 8, 8 + widthBytes);
+        assertTrue(!Arrays.equals(firstRow, new byte[widthBytes]));
+        for (int y = 1; y < height; y++) {
+            int start = 8 + y * widthBytes;
+            assertArrayEquals(firstRow, Arrays.copyOfRange(out, start, start + widthBytes));
+        }
+        String hri = new String(out, 8 + widthBytes * height, out.length - 8 - widthBytes * height, "US-ASCII");
+        assertEquals("V-1001\n", hri);
+    }
+
+    @Test
+    public void rasterHriAbovePrecedesImage() throws Exception {
+        byte[] out = new EscPosBarcode(EscPosBarcode.Symbology.ITF, "1234", 10, 1,
+            EscPosBarcode.Hri.ABOVE).toRaster(576);
+        assertArrayEquals(new byte[] {'1', '2', '3', '4', '\n', 0x1D, 0x76}, Arrays.copyOf(out, 7));
+    }
+
+    @Test
+    public void rasterShrinksModulesToFit() throws Exception {
+        EscPosBarcode barcode = new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "ABCDEFGHIJKLMNOP", 10, 6,
+            EscPosBarcode.Hri.NONE);
+        byte[] out = barcode.toRaster(384);
+        assertTrue(((out[4] & 0xFF) | (out[5] & 0xFF) << 8) * 8 <= 384 + 7);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rasterTooWideFails() throws Exception {
+        new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "ABCDEFGHIJKLMNOPQRSTUVWXYZ", 10, 1,
+            EscPosBarcode.Hri.NONE).toRaster(64);
+    }
+
+    @Test
+    public void buildFollowsCapabilities() {
+        EscPosBarcode barcode = new EscPosBarcode(EscPosBarcode.Symbology.CODE128, "V-1001", 40, 2,
+            EscPosBarcode.Hri.NONE);
+        assertArrayEquals(barcode.toNative(), barcode.build(PrinterCapabilities.DEFAULT, 80));
+        byte[] raster = barcode.build(PrinterCapabilities.BASIC, 58);
+        assertEquals(0x76, raster[1]);
+    }
+}
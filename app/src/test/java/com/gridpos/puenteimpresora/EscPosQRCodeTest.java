@@ -0,0 +1,66 @@
+package com.gridpos.puenteimpresora;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 🔗 Bytes de GS ( k para el QR nativo (modelo 2)
+ */
+public class EscPosQRCodeTest {
+
+    @Test
+    public void buildsFullSequence() {
+        byte[] expected = {
+            0x1D, 0x28, 0x6B, 4, 0, 0x31, 0x41, 0x32, 0x00,   // 165: modelo 2
+            0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x43, 4,            // 167: módulo 4
+            0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x45, 49,           // 169: ECC M
+            0x1D, 0x28, 0x6B, 5, 0, 0x31, 0x50, 0x30, 'A', 'B', // 180: almacenar
+            0x1D, 0x28, 0x6B, 3, 0, 0x31, 0x51, 0x30          // 181: imprimir
+        };
+        assertArrayEquals(expected, EscPosQRCode.build("AB", 4, EscPosQRCode.ECC_M));
+    }
+
+    @Test
+    public void storeLengthUsesLowAndHighBytes() {
+        char[] content = new char[300];
+        Arrays.fill(content, 'x');
+        byte[] out = EscPosQRCode.build(new String(content), 3, EscPosQRCode.ECC_L);
+
+        assertEquals(25 + 8 + 300 + 8, out.length);
+        // pL pH = 303 = 0x012F
+        assertEquals(0x2F, out[28] & 0xFF);
+        assertEquals(0x01, out[29] & 0xFF);
+        assertEquals('x', out[33]);
+        assertEquals(0x51, out[out.length - 2]);
+    }
+
+    @Test
+    public void contentIsUtf8() {
+        byte[] out = EscPosQRCode.build("ñ", 4, EscPosQRCode.ECC_M);
+        assertEquals(5, out[28]); // 2 bytes de datos + 3
+        assertEquals((byte) 0xC3, out[33]);
+        assertEquals((byte) 0xB1, out[34]);
+    }
+
+    @Test
+    public void moduleSizeIsClamped() {
+        assertEquals(16, EscPosQRCode.build("A", 40, EscPosQRCode.ECC_M)[16]);
+        assertEquals(1, EscPosQRCode.build("A", 0, EscPosQRCode.ECC_M)[16]);
+        assertEquals(3, EscPosQRCode.moduleSizeForPaper(58));
+        assertEquals(4, EscPosQRCode.moduleSizeForPaper(80));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyContent() {
+        EscPosQRCode.build("", 4, EscPosQRCode.ECC_M);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedContent() {
+        EscPosQRCode.build(new String(new char[7087]).replace('\0', '1'), 4, EscPosQRCode.ECC_M);
+    }
+}
@@ -0,0 +1,269 @@
+package com.gridpos.puenteimpresora;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ✂️ Segmentación ESC/POS: bandas GS v 0, fronteras, preámbulo y comandos truncados
+ */
+public class EscPosSegmenterTest {
+
+    private static final byte[] INIT = {0x1B, '@'};
+    private static final byte[] CODE_PAGE = {0x1B, 't', 2};
+    private static final byte[] DRAWER = {0x1B, 'p', 0, 25, (byte) 250};
+    private static final byte[] CUT = {0x1D, 'V', 66, 0};
+
+    @Test
+    public void plainTextIsOneSegment() {
+        byte[] data = bytes(INIT, ascii("Hola\nMundo\n"));
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data);
+
+        assertArrayEquals(data, result.data);
+        assertArrayEquals(new int[] {0, data.length}, result.boundaries);
+        assertEquals(2, result.preambleLength);
+    }
+
+    @Test
+    public void emptyInputHasOneEmptySegment() {
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(new byte[0]);
+        assertArrayEquals(new int[] {0, 0}, result.boundaries);
+        assertEquals(0, result.preambleLength);
+    }
+
+    @Test
+    public void textBreaksOnlyAfterLineFeedOnceTargetReached() {
+        byte[] data = ascii("12345678\nabcdefghij\nxy\n");
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data, 64, 10);
+
+        // "12345678\n" (9) no llega a 10; se corta tras "abcdefghij\n"
+        assertArrayEquals(new int[] {0, 20, 23}, result.boundaries);
+    }
+
+    @Test
+    public void preambleCoversSetupCommands() {
+        byte[] data = bytes(INIT, CODE_PAGE, ascii("Texto\n"));
+        assertEquals(5, EscPosSegmenter.segment(data).preambleLength);
+    }
+
+    @Test
+    public void preambleStopsBeforeDrawerKick() {
+        byte[] data = bytes(INIT, DRAWER, CODE_PAGE, ascii("Texto\n"));
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data);
+        assertEquals(2, result.preambleLength);
+        assertArrayEquals(data, result.data);
+    }
+
+    @Test
+    public void preambleStopsBeforeCut() {
+        byte[] data = bytes(INIT, CODE_PAGE, CUT);
+        assertEquals(5, EscPosSegmenter.segment(data).preambleLength);
+    }
+
+    @Test
+    public void preambleStopsBeforeRealTimeCommands() {
+        byte[] status = bytes(INIT, new byte[] {0x10, 0x04, 1}, ascii("x"));
+        assertEquals(2, EscPosSegmenter.segment(status).preambleLength);
+
+        byte[] pulse = bytes(CODE_PAGE, new byte[] {0x10, 0x14, 1, 0, 1}, ascii("x"));
+        assertEquals(3, EscPosSegmenter.segment(pulse).preambleLength);
+    }
+
+    @Test
+    public void preambleStopsAtRaster() {
+        byte[] data = bytes(INIT, raster(1, 2));
+        assertEquals(2, EscPosSegmenter.segment(data).preambleLength);
+    }
+
+    @Test
+    public void tallRasterIsRewrittenInBands() {
+        int bytesPerRow = 3;
+        int rows = 150;
+        byte[] image = raster(bytesPerRow, rows);
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(image, 64, 4096);
+
+        int[] bandRows = {64, 64, 22};
+        assertEquals(bandRows.length, result.getSegmentCount());
+        ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+        for (int band = 0; band < bandRows.length; band++) {
+            int start = result.boundaries[band];
+            int end = result.boundaries[band + 1];
+            assertEquals(8 + bytesPerRow * bandRows[band], end - start);
+            assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, (byte) bytesPerRow, 0, (byte) bandRows[band], 0},
+                Arrays.copyOfRange(result.data, start, start + 8));
+            pixels.write(result.data, start + 8, end - start - 8);
+        }
+        assertArrayEquals(Arrays.copyOfRange(image, 8, image.length), pixels.toByteArray());
+    }
+
+    @Test
+    public void rasterGetsItsOwnSegmentsBetweenText() {
+        byte[] before = ascii("Antes\n");
+        byte[] after = ascii("Despues\n");
+        byte[] data = bytes(before, raster(2, 10), after);
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data, 4, 4096);
+
+        int b0 = before.length;
+        int b1 = b0 + 8 + 2 * 4;
+        int b2 = b1 + 8 + 2 * 4;
+        int b3 = b2 + 8 + 2 * 2;
+        assertArrayEquals(new int[] {0, b0, b1, b2, b3, b3 + after.length}, result.boundaries);
+        assertEquals(result.data.length, b3 + after.length);
+    }
+
+    @Test
+    public void bandHeightComesFromCapabilities() {
+        PrinterCapabilities capabilities = PrinterCapabilities.DEFAULT.toBuilder().maxRasterRows(16).build();
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(raster(1, 40), capabilities);
+        assertEquals(3, result.getSegmentCount());
+    }
+
+    @Test
+    public void truncatedRasterIsCopiedUnchanged() {
+        byte[] full = bytes(ascii("A\n"), raster(4, 10));
+        byte[] data = Arrays.copyOf(full, full.length - 5);
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data);
+
+        assertArrayEquals(data, result.data);
+        assertEquals(data.length, result.boundaries[result.boundaries.length - 1]);
+    }
+
+    @Test
+    public void truncatedCommandsAtEndAreCopiedUnchanged() {
+        byte[][] tails = {
+            {0x1B},                          // ESC solo
+            {0x1B, 'p', 0},                  // ESC p sin tiempos
+            {0x1B, '*', 33, 10, 0, 1, 2},    // ESC * con menos puntos
+            {0x1D, '(', 'k', 4},             // GS ( k sin pH
+            {0x1D, 'k', 4, '1', '2'},        // GS k sin NUL
+            {0x1D, 'k', 73, 10, '{', 'B'},   // GS k con menos datos
+            {0x1D, 'v', '0', 0, 1},          // GS v 0 sin cabecera completa
+            {0x10, 0x14, 1},                 // DLE DC4 incompleto
+        };
+        for (byte[] tail : tails) {
+            byte[] data = bytes(INIT, ascii("Total\n"), tail);
+            EscPosSegmenter.Result result = EscPosSegmenter.segment(data);
+            assertArrayEquals(Arrays.toString(tail), data, result.data);
+            assertEquals(data.length, result.boundaries[result.boundaries.length - 1]);
+        }
+    }
+
+    @Test
+    public void commandLengths() {
+        assertEquals(2, EscPosSegmenter.commandLength(INIT, 0));
+        assertEquals(3, EscPosSegmenter.commandLength(CODE_PAGE, 0));
+        assertEquals(5, EscPosSegmenter.commandLength(DRAWER, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1B, '$', 10, 0}, 0));
+        assertEquals(5 + 2 * 3, EscPosSegmenter.commandLength(new byte[] {0x1B, '*', 33, 2, 0}, 0));
+        assertEquals(5 + 2, EscPosSegmenter.commandLength(new byte[] {0x1B, '*', 0, 2, 0}, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1B, 'D', 8, 0, 'x'}, 0));
+
+        assertEquals(5 + 0x0103, EscPosSegmenter.commandLength(new byte[] {0x1D, '(', 'k', 3, 1}, 0));
+        assertEquals(6, EscPosSegmenter.commandLength(new byte[] {0x1D, 'k', 4, '1', '2', 0, 'x'}, 0));
+        assertEquals(4 + 5, EscPosSegmenter.commandLength(new byte[] {0x1D, 'k', 73, 5, '{', 'B', 'a', 'b', 'c'}, 0));
+        assertEquals(3, EscPosSegmenter.commandLength(new byte[] {0x1D, 'V', 0}, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(CUT, 0));
+        assertEquals(4 + 2 * 3 * 8, EscPosSegmenter.commandLength(new byte[] {0x1D, '*', 2, 3}, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1D, 'L', 0, 0}, 0));
+        assertEquals(3, EscPosSegmenter.commandLength(new byte[] {0x1D, '!', 0x11}, 0));
+
+        assertEquals(2, EscPosSegmenter.commandLength(new byte[] {0x1C, '.'}, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1C, 'p', 1, 0}, 0));
+        assertEquals(3, EscPosSegmenter.commandLength(new byte[] {0x10, 0x04, 1}, 0));
+        assertEquals(5, EscPosSegmenter.commandLength(new byte[] {0x10, 0x14, 1, 0, 1}, 0));
+
+        assertEquals(0, EscPosSegmenter.commandLength(ascii("A"), 0));
+        assertEquals(0, EscPosSegmenter.commandLength(ascii("\n"), 0));
+    }
+
+    @Test
+    public void commandLengthAtEndOfBuffer() {
+        assertEquals(1, EscPosSegmenter.commandLength(new byte[] {'x', 0x1B}, 1));
+        assertEquals(1, EscPosSegmenter.commandLength(new byte[] {0x10}, 0));
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1D, '(', 'k', 4}, 0));
+        // GS V 66 sin n: el largo incluye el byte que falta y segment() copia solo lo que hay
+        assertEquals(4, EscPosSegmenter.commandLength(new byte[] {0x1D, 'V', 66}, 0));
+        assertEquals(5, EscPosSegmenter.commandLength(new byte[] {0x1D, 'k', 4, '1', '2'}, 0));
+        assertEquals(5, EscPosSegmenter.commandLength(new byte[] {0x1D, 'v', '0', 0, 1}, 0));
+    }
+
+    @Test
+    public void resumePastFirstNonAsciiLineRestoresCodePageAndMode() {
+        byte[] center = {0x1B, 'a', 1};
+        byte[] boldOn = {0x1B, 'E', 1};
+        byte[] boldOff = {0x1B, 'E', 0};
+        byte[] data = bytes(INIT, ascii("Linea 1 ........\n"),
+            center, boldOn, CODE_PAGE, new byte[] {'A', (byte) 0xA4, 'o', '\n'},
+            boldOff, ascii("Total 12345678\n"), ascii("Gracias\n"));
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data, 64, 10);
+
+        assertArrayEquals(new int[] {0, 19, 32, 50, 58}, result.boundaries);
+        assertEquals(result.boundaries.length, result.resumeCommands.length);
+        assertArrayEquals(new byte[0], result.resumeCommands[1]);
+        assertArrayEquals(bytes(CODE_PAGE, center, boldOn), result.resumeCommands[2]);
+
+        // Lo que recibe la impresora al reanudar desde el segmento 3: preámbulo (ESC @ borra
+        // la página de códigos), modo vigente y el resto del ticket
+        byte[] resumed = bytes(Arrays.copyOfRange(result.data, 0, result.preambleLength),
+            result.resumeCommands[3], Arrays.copyOfRange(result.data, result.boundaries[3], result.data.length));
+        assertArrayEquals(bytes(INIT, CODE_PAGE, center, boldOff, ascii("Gracias\n")), resumed);
+    }
+
+    @Test
+    public void initMidStreamClearsResumeMode() {
+        byte[] data = bytes(INIT, CODE_PAGE, ascii("Primero..\n"), INIT, ascii("Segundo..\n"),
+            ascii("Tercero..\n"));
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data, 64, 10);
+
+        assertEquals(3, result.getSegmentCount());
+        assertArrayEquals(CODE_PAGE, result.resumeCommands[1]);
+        assertArrayEquals(new byte[0], result.resumeCommands[2]);
+    }
+
+    @Test
+    public void rasterBandsCarryResumeMode() {
+        byte[] center = {0x1B, 'a', 1};
+        byte[] data = bytes(INIT, center, raster(2, 5));
+        EscPosSegmenter.Result result = EscPosSegmenter.segment(data, 2, 4096);
+
+        // ESC @ ESC a 1 y luego una banda por cada 2 filas
+        assertEquals(4, result.getSegmentCount());
+        for (int segment = 1; segment < result.getSegmentCount(); segment++) {
+            assertArrayEquals(center, result.resumeCommands[segment]);
+        }
+    }
+
+    /**
+     * ⚫⚪ GS v 0 con un patrón distinto por fila para detectar bandas mal copiadas
+     */
+    private static byte[] raster(int bytesPerRow, int rows) {
+        byte[] command = new byte[8 + bytesPerRow * rows];
+        command[0] = 0x1D;
+        command[1] = 'v';
+        command[2] = '0';
+        command[4] = (byte) (bytesPerRow & 0xFF);
+        command[5] = (byte) (bytesPerRow >> 8);
+        command[6] = (byte) (rows & 0xFF);
+        command[7] = (byte) (rows >> 8);
+        for (int i = 8; i < command.length; i++) {
+            command[i] = (byte) (i * 31);
+        }
+        return command;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] bytes(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
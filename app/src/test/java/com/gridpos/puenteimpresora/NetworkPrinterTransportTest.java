@@ -0,0 +1,167 @@
+package com.gridpos.puenteimpresora;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 🌐 Transporte TCP contra un ServerSocket local: conexión, escritura, lectura y reconexión
+ */
+public class NetworkPrinterTransportTest {
+
+    private ServerSocket server;
+    private NetworkPrinterTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 4, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+        transport = new NetworkPrinterTransport("127.0.0.1", server.getLocalPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void connectsAndWritesAllBytes() throws Exception {
+        assertTrue(transport.connect());
+        assertTrue(transport.isConnected());
+        assertTrue(transport.connect()); // Ya conectado: no abre otro socket
+
+        try (Socket printer = server.accept()) {
+            byte[] data = new byte[100 * 1024 + 17]; // Varios bloques del buffer directo
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 7);
+            }
+            transport.setMaxChunkSize(4096);
+            transport.write(data, 5, data.length - 5);
+            assertArrayEquals(Arrays.copyOfRange(data, 5, data.length), readExactly(printer, data.length - 5));
+        }
+    }
+
+    @Test
+    public void readsPrinterResponse() throws Exception {
+        assertTrue(transport.connect());
+        try (Socket printer = server.accept()) {
+            transport.write(new byte[] {0x10, 0x04, 1}); // DLE EOT 1
+            assertArrayEquals(new byte[] {0x10, 0x04, 1}, readExactly(printer, 3));
+
+            byte[] response = new byte[8];
+            assertEquals(0, transport.read(response, 50)); // Nada todavía
+            printer.getOutputStream().write(0x16);
+            printer.getOutputStream().flush();
+            assertEquals(1, transport.read(response, 2000));
+            assertEquals(0x16, response[0]);
+        }
+    }
+
+    @Test
+    public void reconnectsAfterPrinterClosesConnection() throws Exception {
+        assertTrue(transport.connect());
+        server.accept().close();
+
+        // La impresora cerró: la lectura lo detecta y el transporte queda desconectado
+        try {
+            transport.read(new byte[4], 2000);
+            fail("Se esperaba IOException al cerrar la impresora");
+        } catch (IOException expected) {
+            assertFalse(transport.isConnected());
+        }
+        try {
+            transport.write(new byte[] {'x'});
+            fail("Escribir desconectado debe fallar");
+        } catch (IOException expected) {
+            assertFalse(transport.isConnected());
+        }
+
+        assertTrue(transport.connect());
+        try (Socket printer = server.accept()) {
+            transport.write("otra vez\n".getBytes("US-ASCII"));
+            assertArrayEquals("otra vez\n".getBytes("US-ASCII"), readExactly(printer, 9));
+        }
+    }
+
+    @Test
+    public void writeFailsAndClosesWhenPeerResets() throws Exception {
+        assertTrue(transport.connect());
+        Socket printer = server.accept();
+        printer.setSoLinger(true, 0); // Cerrar con RST
+        printer.close();
+
+        byte[] chunk = new byte[8192];
+        try {
+            for (int i = 0; i < 1000; i++) {
+                transport.write(chunk);
+                Thread.sleep(2);
+            }
+            fail("Escribir a un socket reiniciado debe fallar");
+        } catch (IOException expected) {
+            assertFalse(transport.isConnected());
+        }
+    }
+
+    @Test
+    public void connectIsSingleAttemptWithoutBackoff() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+        NetworkPrinterTransport closed = new NetworkPrinterTransport("127.0.0.1", port);
+
+        long start = System.nanoTime();
+        assertFalse(closed.connect());
+        assertFalse(closed.connect());
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        // Sin esperas internas: dos rechazos en localhost son casi inmediatos
+        assertTrue("Demoró " + elapsedMs + " ms", elapsedMs < 1000);
+        assertFalse(closed.isConnected());
+    }
+
+    @Test
+    public void parsesAddresses() {
+        NetworkPrinterTransport plain = NetworkPrinterTransport.parse(" 192.168.1.50 ");
+        assertEquals("192.168.1.50", plain.getHost());
+        assertEquals(NetworkPrinterTransport.DEFAULT_PORT, plain.getPort());
+        assertEquals("tcp:192.168.1.50:9100", plain.getId());
+
+        NetworkPrinterTransport withPort = NetworkPrinterTransport.parse("cocina.local:9101");
+        assertEquals("cocina.local", withPort.getHost());
+        assertEquals(9101, withPort.getPort());
+
+        assertEquals(9100, NetworkPrinterTransport.parse("bar:abc").getPort());
+        assertNull(NetworkPrinterTransport.parse("  "));
+        assertNull(NetworkPrinterTransport.parse(null));
+    }
+
+    private static byte[] readExactly(Socket socket, int length) throws IOException {
+        socket.setSoTimeout(5000);
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        byte[] buffer = new byte[8192];
+        while (out.size() < length) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, length - out.size()));
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package com.gridpos.puenteimpresora;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ⏱️ Comparación de rendimiento de los caminos de QR: QRCodeWriter con escalado por
+ * píxel (parte Java del camino Bitmap anterior), QRRasterEncoder y GS ( k nativo.
+ * Imprime µs por QR y bytes enviados. No es una prueba unitaria: se ejecuta a mano con
+ * main() para no volver inestable la suite.
+ */
+public class QRCodeBenchmark {
+
+    private static final String URL = "https://catalogo-vpfe.dian.gov.co/document/searchqr?documentkey="
+        + "3f1b2c4d5e6f708192a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d6e7f8091a2b3c4d5e6f7081";
+    private static final int ITERATIONS = 300;
+
+    public static void main(String[] args) throws Exception {
+        int maxDots = QRRasterEncoder.maxDotsForWidth(PrinterCapabilities.DEFAULT.getDotWidth(80));
+        long sink = 0;
+
+        for (int round = 0; round < 2; round++) { // la primera vuelta calienta el JIT
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += bitMatrixToRaster(maxDots).length;
+            }
+            long writerNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += QRRasterEncoder.encode(URL, maxDots, ErrorCorrectionLevel.M).toRasterCommand().length;
+            }
+            long rasterNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += EscPosQRCode.build(URL, 4, EscPosQRCode.ECC_M).length;
+            }
+            long nativeNanos = System.nanoTime() - start;
+
+            if (round == 1) {
+                System.out.println(String.format(Locale.ROOT,
+                    "📊 QR: QRCodeWriter+escalado %.1f µs (%d B), QRRasterEncoder %.1f µs (%d B), GS ( k %.2f µs (%d B) [%d]",
+                    writerNanos / 1000.0 / ITERATIONS, bitMatrixToRaster(maxDots).length,
+                    rasterNanos / 1000.0 / ITERATIONS,
+                    QRRasterEncoder.encode(URL, maxDots, ErrorCorrectionLevel.M).toRasterCommand().length,
+                    nativeNanos / 1000.0 / ITERATIONS, EscPosQRCode.build(URL, 4, EscPosQRCode.ECC_M).length,
+                    sink));
+            }
+        }
+    }
+
+    /**
+     * 🐢 Camino anterior sin Bitmap: matriz ya escalada por ZXing y leída punto a punto
+     */
+    private static byte[] bitMatrixToRaster(int size) throws Exception {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+        hints.put(EncodeHintType.MARGIN, 2);
+        BitMatrix matrix = new QRCodeWriter().encode(URL, BarcodeFormat.QR_CODE, size, size, hints);
+        int widthBytes = (matrix.getWidth() + 7) / 8;
+        byte[] rows = new byte[widthBytes * matrix.getHeight()];
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y)) {
+                    rows[y * widthBytes + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,86 @@
+package com.gridpos.puenteimpresora;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ⚫⚪ QR rasterizado en Java puro: cabecera GS v 0, escala entera y módulos en su lugar
+ */
+public class QRRasterEncoderTest {
+
+    private static final String URL = "https://gridpos.co/factura/FE-000123?cufe=abc123";
+
+    @Test
+    public void rasterFitsPaperWithIntegerScale() throws Exception {
+        for (int paper : new int[] {58, 80}) {
+            int maxDots = QRRasterEncoder.maxDotsForWidth(PrinterCapabilities.DEFAULT.getDotWidth(paper));
+            QRRasterEncoder.Raster raster = QRRasterEncoder.encode(URL, maxDots, ErrorCorrectionLevel.M);
+            int modules = matrix(URL).getWidth() + 4;
+
+            assertTrue(raster.widthDots <= maxDots);
+            assertEquals(raster.widthDots, raster.height);
+            assertEquals(0, raster.widthDots % modules);
+            assertEquals(maxDots / modules, raster.widthDots / modules);
+            assertEquals((raster.widthDots + 7) / 8, raster.widthBytes);
+            assertEquals(raster.widthBytes * raster.height, raster.rows.length);
+        }
+    }
+
+    @Test
+    public void everyDotMatchesItsModule() throws Exception {
+        ByteMatrix matrix = matrix(URL);
+        QRRasterEncoder.Raster raster = QRRasterEncoder.rasterize(matrix, 240);
+        int modules = matrix.getWidth();
+        int scale = raster.widthDots / (modules + 4);
+
+        for (int y = 0; y < raster.height; y++) {
+            for (int x = 0; x < raster.widthBytes * 8; x++) {
+                boolean black = (raster.rows[y * raster.widthBytes + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+                int mx = x / scale - 2;
+                int my = y / scale - 2;
+                boolean expected = x < raster.widthDots
+                    && mx >= 0 && mx < modules && my >= 0 && my < modules
+                    && matrix.get(mx, my) == 1;
+                assertEquals("punto " + x + "," + y, expected, black);
+            }
+        }
+    }
+
+    @Test
+    public void tinyWidthFallsBackToScaleOne() throws Exception {
+        ByteMatrix matrix = matrix("A");
+        QRRasterEncoder.Raster raster = QRRasterEncoder.rasterize(matrix, 8);
+        assertEquals(matrix.getWidth() + 4, raster.widthDots);
+    }
+
+    @Test
+    public void rasterCommandHeader() throws Exception {
+        QRRasterEncoder.Raster raster = QRRasterEncoder.encode(URL, 168, ErrorCorrectionLevel.L);
+        byte[] command = raster.toRasterCommand();
+
+        assertEquals(8 + raster.rows.length, command.length);
+        assertEquals(0x1D, command[0]);
+        assertEquals(0x76, command[1]);
+        assertEquals(0x30, command[2]);
+        assertEquals(0x00, command[3]);
+        assertEquals(raster.widthBytes, (command[4] & 0xFF) | (command[5] & 0xFF) << 8);
+        assertEquals(raster.height, (command[6] & 0xFF) | (command[7] & 0xFF) << 8);
+        assertEquals(raster.rows[raster.rows.length - 1], command[command.length - 1]);
+    }
+
+    static ByteMatrix matrix(String content) throws Exception {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        return Encoder.encode(content, ErrorCorrectionLevel.M, hints).getMatrix();
+    }
+}